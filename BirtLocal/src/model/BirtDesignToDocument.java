@@ -13,16 +13,21 @@ import org.eclipse.birt.report.engine.api.IScalarParameterDefn;
 import org.eclipse.birt.report.engine.api.PDFRenderOption;
 import org.eclipse.birt.report.engine.api.RenderOption;
 import org.eclipse.birt.core.framework.Platform;
+import org.eclipse.birt.report.model.api.ModuleHandle;
+import org.eclipse.birt.report.model.api.ScriptDataSetHandle;
 
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collection;
 import java.util.logging.Level;
 
 public class BirtDesignToDocument {
+    private static final ColumnarJsonCache COLUMNAR = ColumnarJsonCache.fromSystemProperties();
     private final String sourceJson, sourceBirt;
     private String json="";
     
@@ -233,6 +238,19 @@ public class BirtDesignToDocument {
             task.setParameterValue("json", sourceJson);
         } else {
             // Documento senza parametro json url
+            // Righe dalla cache colonnare: gli scripted data set leggono
+            // "JsonRows" senza riparsare il JSON a ogni esecuzione. Il file
+            // viene convertito solo se il design legge davvero le righe
+            if (COLUMNAR != null) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> appContext = new HashMap<>(task.getAppContext());
+                appContext.put("JsonRows", COLUMNAR.lazyRows(Paths.get(sourceJson)));
+                task.setAppContext(appContext);
+                if (readsJsonRows(design)) {
+                    // Il design non usa i parametri stringa: niente copia del JSON
+                    return;
+                }
+            }
             json = new String(Files.readAllBytes(Paths.get(sourceJson)), StandardCharsets.UTF_8);
             
             // Leggi automaticamente i parametri dal design del report
@@ -255,4 +273,26 @@ public class BirtDesignToDocument {
             paramTask.close();
         }
     }
+    
+    /**
+     * Gli scripted data set del design leggono le righe da "JsonRows"
+     */
+    private static boolean readsJsonRows(IReportRunnable design) {
+        if (!(design.getDesignHandle() instanceof ModuleHandle)) {
+            return false;
+        }
+        for (Object item : ((ModuleHandle) design.getDesignHandle()).getAllDataSets()) {
+            if (item instanceof ScriptDataSetHandle) {
+                ScriptDataSetHandle dataSet = (ScriptDataSetHandle) item;
+                if (contains(dataSet.getOpen(), "JsonRows") || contains(dataSet.getFetch(), "JsonRows")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static boolean contains(String script, String name) {
+        return script != null && script.contains(name);
+    }
 }
@@ -0,0 +1,932 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+/**
+ * Cache colonnare binaria dei dataset JSON
+ *
+ * Al primo uso l'array delle righe (la radice se è un array, altrimenti
+ * l'array indicato da rowsPath o il primo campo array della radice) viene
+ * convertito in un file .lcol con una colonna tipizzata per campo: LONG,
+ * DOUBLE, BOOLEAN o STRING (testo con i valori ripetuti salvati una volta
+ * sola), più una bitmap dei null. I campi
+ * annidati diventano stringhe con il loro testo JSON. Le esecuzioni successive
+ * mappano il file in memoria e leggono le colonne senza riparsare il JSON.
+ *
+ * La chiave è il path del file sorgente più dimensione e data di modifica:
+ * quando la sorgente cambia viene creato un nuovo .lcol e quello vecchio
+ * rimosso. Oltre maxBytes nella cartella si eliminano i file usati meno di
+ * recente.
+ *
+ * Il formato è diverso dal .jcol del Server (niente bitmap degli assenti,
+ * annidati come stringhe, interi come Long): magic ed estensione propri, così
+ * le due cache possono stare nella stessa cartella senza leggersi a vicenda.
+ *
+ * Formato (big-endian):
+ *   int magic "LCOL", int versione, int righe, int colonne
+ *   per colonna: int lunghezza + nome UTF-8, byte tipo
+ *   per colonna: int parole + long[] bitmap null, poi i valori
+ *     LONG long[righe], DOUBLE double[righe], BOOLEAN byte[righe],
+ *     STRING int byte testo + (int lunghezza + UTF-8)... + int[righe] offset nel testo
+ *
+ * Il file mappato deve stare sotto i 2GB. Il parser JSON è interno per non
+ * aggiungere dipendenze oltre al runtime BIRT.
+ */
+public class ColumnarJsonCache {
+    private static final Logger LOG = Logger.getLogger(ColumnarJsonCache.class.getName());
+    private static final int MAGIC = 0x4C434F4C;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".lcol";
+
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+
+    private final Path directory;
+    private final String rowsPath;
+    private final long maxBytes;
+
+    /**
+     * @param maxBytes spazio massimo della cartella, 0 per nessun limite
+     */
+    public ColumnarJsonCache(Path directory, String rowsPath, long maxBytes) {
+        this.directory = directory;
+        this.rowsPath = rowsPath;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache in ~/Desktop/BirtPDF/columnar (come l'engine home), o null se
+     * disattivata con -Dreport.json.columnar=false; -Dreport.json.rowsPath
+     * indica l'array delle righe (es. "data.items"),
+     * -Dreport.json.columnarMaxBytes lo spazio massimo (default 1GB)
+     */
+    public static ColumnarJsonCache fromSystemProperties() {
+        if (!Boolean.parseBoolean(System.getProperty("report.json.columnar", "true"))) {
+            return null;
+        }
+        Path directory = Path.of(System.getProperty("report.json.columnarDir",
+            System.getProperty("user.home") + "/Desktop/BirtPDF/columnar"));
+        return new ColumnarJsonCache(directory, System.getProperty("report.json.rowsPath", ""),
+            Long.getLong("report.json.columnarMaxBytes", 1024L * 1024 * 1024));
+    }
+
+    /**
+     * Dataset di un file JSON locale, convertito al primo uso
+     */
+    public Dataset open(Path source) throws IOException {
+        Path file = source.toAbsolutePath().normalize();
+        String sourceId = sha256(file.toString());
+        String version = sha256(Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis() + "|" + rowsPath);
+        return open(sourceId, version, () -> Files.newInputStream(file));
+    }
+
+    /**
+     * Righe del file, convertito e mappato solo al primo hasNext(): per
+     * l'app context ("JsonRows"), così i design che non le leggono non
+     * pagano la conversione
+     */
+    public Iterator<Map<String, Object>> lazyRows(Path source) {
+        return new Iterator<>() {
+            private Iterator<Map<String, Object>> rows;
+
+            private Iterator<Map<String, Object>> rows() {
+                if (rows == null) {
+                    try {
+                        rows = open(source).rows();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Cache colonnare non disponibile per " + source, e);
+                    }
+                }
+                return rows;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return rows().hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                return rows().next();
+            }
+        };
+    }
+
+    private interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private Dataset open(String sourceId, String version, Source source) throws IOException {
+        Path file = directory.resolve(sourceId + "-" + version + EXTENSION);
+        if (!Files.exists(file)) {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, sourceId, ".tmp");
+            try {
+                long start = System.currentTimeMillis();
+                int rows;
+                try (InputStream in = source.open()) {
+                    rows = ingest(in, tmp);
+                }
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                LOG.info("Dataset JSON convertito in " + file.getFileName() + " (" + rows + " righe, "
+                    + Files.size(file) + " bytes, " + (System.currentTimeMillis() - start) + " ms)");
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            removeOldVersions(sourceId, file);
+            prune(file);
+        } else {
+            // Data di modifica come ultimo uso, per prune()
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                LOG.fine("Impossibile aggiornare " + file + ": " + e.getMessage());
+            }
+        }
+        return Dataset.map(file);
+    }
+
+    /**
+     * Elimina le versioni precedenti dello stesso sorgente
+     */
+    private void removeOldVersions(String sourceId, Path current) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, sourceId + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                if (!file.equals(current)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // es. Windows con il file ancora mappato: resta fino al prossimo giro
+                        LOG.fine("Impossibile eliminare " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.fine("Pulizia cache colonnare fallita: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina i file usati meno di recente finché la cartella supera maxBytes
+     */
+    private void prune(Path current) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> list = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : list) {
+                files.add(file);
+                total += Files.size(file);
+            }
+            files.sort(Comparator.comparing(ColumnarJsonCache::lastModified));
+        } catch (IOException | UncheckedIOException e) {
+            LOG.fine("Pulizia cache colonnare fallita: " + e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.equals(current)) {
+                continue;
+            }
+            try {
+                long size = Files.size(file);
+                Files.deleteIfExists(file);
+                total -= size;
+            } catch (IOException e) {
+                LOG.fine("Impossibile eliminare " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Legge le righe del JSON e scrive il file colonnare
+     * @return numero di righe
+     */
+    private int ingest(InputStream in, Path target) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Map<String, ColumnBuilder> columns = new LinkedHashMap<>();
+        try {
+            return ingest(reader, columns, target);
+        } finally {
+            for (ColumnBuilder column : columns.values()) {
+                column.close();
+            }
+        }
+    }
+
+    private int ingest(JsonReader reader, Map<String, ColumnBuilder> columns, Path target) throws IOException {
+        int rows = 0;
+        if (reader.moveToRows(rowsPath)) {
+            while (reader.nextElement()) {
+                if (reader.peek() == '{') {
+                    reader.expect('{');
+                    while (reader.nextField()) {
+                        String name = reader.readString();
+                        reader.expect(':');
+                        column(columns, name).add(rows, reader.readValue());
+                    }
+                } else {
+                    // Array di valori semplici: una colonna "value"
+                    column(columns, "value").add(rows, reader.readValue());
+                }
+                rows++;
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(columns.size());
+            for (ColumnBuilder column : columns.values()) {
+                byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeByte(column.type);
+            }
+            for (ColumnBuilder column : columns.values()) {
+                column.write(out, rows);
+            }
+        }
+        return rows;
+    }
+
+    private ColumnBuilder column(Map<String, ColumnBuilder> columns, String name) {
+        ColumnBuilder column = columns.get(name);
+        if (column == null) {
+            column = new ColumnBuilder(name, directory);
+            columns.put(name, column);
+        }
+        return column;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Dataset colonnare mappato in memoria
+     */
+    public static final class Dataset {
+        private final MappedByteBuffer buffer;
+        private final int rowCount;
+        private final String[] names;
+        private final byte[] types;
+        private final int[] nullOffsets;
+        private final int[] nullWords;
+        private final int[] dataOffsets;
+        private final int[] textOffsets;
+
+        private Dataset(MappedByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("File colonnare non valido");
+            }
+            rowCount = buffer.getInt(8);
+            int columnCount = buffer.getInt(12);
+            names = new String[columnCount];
+            types = new byte[columnCount];
+            nullOffsets = new int[columnCount];
+            nullWords = new int[columnCount];
+            dataOffsets = new int[columnCount];
+            textOffsets = new int[columnCount];
+
+            int position = 16;
+            for (int c = 0; c < columnCount; c++) {
+                int length = buffer.getInt(position);
+                names[c] = utf8(position + 4, length);
+                position += 4 + length;
+                types[c] = buffer.get(position++);
+            }
+            for (int c = 0; c < columnCount; c++) {
+                nullWords[c] = buffer.getInt(position);
+                nullOffsets[c] = position + 4;
+                position += 4 + nullWords[c] * 8;
+                if (types[c] == STRING) {
+                    textOffsets[c] = position + 4;
+                    position += 4 + buffer.getInt(position);
+                }
+                dataOffsets[c] = position;
+                position += rowCount * width(types[c]);
+            }
+        }
+
+        static Dataset map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File colonnare oltre 2GB: " + file);
+                }
+                return new Dataset(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        public int rowCount() {
+            return rowCount;
+        }
+
+        public List<String> columnNames() {
+            return List.of(names);
+        }
+
+        byte type(int column) {
+            return types[column];
+        }
+
+        /**
+         * Valore della cella: Long, Double, Boolean, String o null
+         */
+        public Object value(int row, int column) {
+            if (row < 0 || row >= rowCount) {
+                throw new IndexOutOfBoundsException("Riga " + row);
+            }
+            int word = row >>> 6;
+            if (word < nullWords[column]
+                && (buffer.getLong(nullOffsets[column] + word * 8) & (1L << (row & 63))) != 0) {
+                return null;
+            }
+            int offset = dataOffsets[column] + row * width(types[column]);
+            switch (types[column]) {
+                case LONG:
+                    return buffer.getLong(offset);
+                case DOUBLE:
+                    return buffer.getDouble(offset);
+                case BOOLEAN:
+                    return buffer.get(offset) != 0;
+                case STRING:
+                    int text = textOffsets[column] + buffer.getInt(offset);
+                    return utf8(text + 4, buffer.getInt(text));
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Righe come mappe nome -> valore, lette dalle colonne una alla volta
+         */
+        public Iterator<Map<String, Object>> rows() {
+            return new Iterator<>() {
+                private int row;
+
+                @Override
+                public boolean hasNext() {
+                    return row < rowCount;
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (row >= rowCount) {
+                        throw new NoSuchElementException();
+                    }
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    for (int c = 0; c < names.length; c++) {
+                        values.put(names[c], value(row, c));
+                    }
+                    row++;
+                    return values;
+                }
+            };
+        }
+
+        private String utf8(int offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int width(byte type) {
+            switch (type) {
+                case LONG:
+                case DOUBLE:
+                    return 8;
+                case STRING:
+                    return 4;
+                case BOOLEAN:
+                    return 1;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * Colonna in costruzione: il tipo si allarga se arrivano valori diversi
+     * (LONG -> DOUBLE, qualsiasi altro conflitto -> STRING)
+     */
+    private static final class ColumnBuilder implements Closeable {
+        /** Valori distinti ricordati per non ripeterli nel testo */
+        private static final int MAX_DICTIONARY = 4096;
+
+        final String name;
+        byte type = NULL;
+        private final Path tempDirectory;
+        private final BitSet nulls = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        private byte[] booleans;
+        private int[] offsets;
+        private Map<String, Integer> dictionary;
+        private Path textFile;
+        private DataOutputStream text;
+        private long textSize;
+        private int size;
+
+        ColumnBuilder(String name, Path tempDirectory) {
+            this.name = name;
+            this.tempDirectory = tempDirectory;
+        }
+
+        void add(int row, Object value) throws IOException {
+            // Righe senza questo campo: null
+            for (int r = size; r < row; r++) {
+                nulls.set(r);
+            }
+            size = row + 1;
+            if (value == null) {
+                nulls.set(row);
+                ensureCapacity(row);
+                return;
+            }
+
+            byte wanted = value instanceof Long ? LONG
+                : value instanceof Double ? DOUBLE
+                : value instanceof Boolean ? BOOLEAN
+                : STRING;
+            if (type == NULL) {
+                convert(wanted, row);
+            } else if (type != wanted) {
+                convert(type == LONG && wanted == DOUBLE ? DOUBLE
+                    : type == DOUBLE && wanted == LONG ? DOUBLE
+                    : STRING, row);
+            }
+            ensureCapacity(row);
+
+            switch (type) {
+                case LONG:
+                    longs[row] = (Long) value;
+                    break;
+                case DOUBLE:
+                    doubles[row] = ((Number) value).doubleValue();
+                    break;
+                case BOOLEAN:
+                    booleans[row] = (byte) ((Boolean) value ? 1 : 0);
+                    break;
+                default:
+                    offsets[row] = append(value.toString());
+            }
+        }
+
+        /**
+         * Cambia il tipo della colonna convertendo le righe già lette
+         */
+        private void convert(byte newType, int rows) throws IOException {
+            if (newType == type) {
+                return;
+            }
+            int capacity = Math.max(16, rows + 1);
+            switch (newType) {
+                case LONG:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles = new double[capacity];
+                    for (int r = 0; longs != null && r < Math.min(rows, longs.length); r++) {
+                        doubles[r] = longs[r];
+                    }
+                    break;
+                case BOOLEAN:
+                    booleans = new byte[capacity];
+                    break;
+                default:
+                    // Il testo va su un file temporaneo: in memoria solo gli offset
+                    offsets = new int[capacity];
+                    dictionary = new HashMap<>();
+                    textFile = Files.createTempFile(tempDirectory, "column", ".tmp");
+                    text = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(textFile), 64 * 1024));
+                    for (int r = 0; r < rows; r++) {
+                        if (!nulls.get(r) && type != NULL) {
+                            offsets[r] = append(previousText(r));
+                        }
+                    }
+            }
+            if (newType != LONG) {
+                longs = null;
+            }
+            if (newType != DOUBLE) {
+                doubles = null;
+            }
+            if (newType != BOOLEAN) {
+                booleans = null;
+            }
+            type = newType;
+        }
+
+        private String previousText(int row) {
+            switch (type) {
+                case LONG:
+                    return Long.toString(longs[row]);
+                case DOUBLE:
+                    return Double.toString(doubles[row]);
+                default:
+                    return Boolean.toString(booleans[row] != 0);
+            }
+        }
+
+        /**
+         * Aggiunge il testo (se non già visto) e ne restituisce l'offset
+         */
+        private int append(String value) throws IOException {
+            Integer known = dictionary.get(value);
+            if (known != null) {
+                return known;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (textSize + 4 + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Colonna " + name + " oltre 2GB di testo");
+            }
+            int offset = (int) textSize;
+            text.writeInt(bytes.length);
+            text.write(bytes);
+            textSize += 4 + bytes.length;
+            if (dictionary.size() < MAX_DICTIONARY) {
+                dictionary.put(value, offset);
+            }
+            return offset;
+        }
+
+        private void ensureCapacity(int row) {
+            switch (type) {
+                case LONG:
+                    if (row >= longs.length) {
+                        longs = Arrays.copyOf(longs, Math.max(row + 1, longs.length * 2));
+                    }
+                    break;
+                case DOUBLE:
+                    if (row >= doubles.length) {
+                        doubles = Arrays.copyOf(doubles, Math.max(row + 1, doubles.length * 2));
+                    }
+                    break;
+                case BOOLEAN:
+                    if (row >= booleans.length) {
+                        booleans = Arrays.copyOf(booleans, Math.max(row + 1, booleans.length * 2));
+                    }
+                    break;
+                case STRING:
+                    if (row >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, Math.max(row + 1, offsets.length * 2));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void write(DataOutputStream out, int rows) throws IOException {
+            for (int r = size; r < rows; r++) {
+                nulls.set(r);
+            }
+            long[] words = nulls.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            switch (type) {
+                case LONG:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeLong(r < longs.length ? longs[r] : 0);
+                    }
+                    break;
+                case DOUBLE:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeDouble(r < doubles.length ? doubles[r] : 0);
+                    }
+                    break;
+                case BOOLEAN:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeByte(r < booleans.length ? booleans[r] : 0);
+                    }
+                    break;
+                case STRING:
+                    text.close();
+                    out.writeInt((int) textSize);
+                    Files.copy(textFile, out);
+                    for (int r = 0; r < rows; r++) {
+                        out.writeInt(r < offsets.length ? offsets[r] : 0);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (text != null) {
+                text.close();
+                Files.deleteIfExists(textFile);
+            }
+        }
+    }
+
+    /**
+     * Lettore JSON minimale a eventi: valori semplici come Long, Double,
+     * Boolean, String; oggetti e array annidati come testo JSON
+     */
+    private static final class JsonReader {
+        private final Reader in;
+        private final char[] buffer = new char[64 * 1024];
+        private int position;
+        private int limit;
+
+        JsonReader(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Si posiziona dentro l'array delle righe
+         * @return false se l'array non esiste
+         */
+        boolean moveToRows(String rowsPath) throws IOException {
+            int c = peek();
+            if (c == '[') {
+                expect('[');
+                return rowsPath.isEmpty();
+            }
+            if (c != '{') {
+                return false;
+            }
+            String[] path = rowsPath.isEmpty() ? new String[0] : rowsPath.split("\\.");
+            int depth = 0;
+            expect('{');
+            while (nextField()) {
+                String field = readString();
+                expect(':');
+                boolean wanted = path.length == 0 || field.equals(path[depth]);
+                int value = peek();
+                if (wanted && value == '[' && (path.length == 0 || depth == path.length - 1)) {
+                    expect('[');
+                    return true;
+                }
+                if (wanted && value == '{' && depth < path.length - 1) {
+                    expect('{');
+                    depth++;
+                    continue;
+                }
+                readValue();
+                if (wanted && path.length > 0) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Avanza al prossimo elemento dell'array corrente
+         */
+        boolean nextElement() throws IOException {
+            return next(']');
+        }
+
+        /**
+         * Avanza al prossimo campo dell'oggetto corrente
+         */
+        boolean nextField() throws IOException {
+            return next('}');
+        }
+
+        private boolean next(char close) throws IOException {
+            int c = peek();
+            if (c == close) {
+                position++;
+                return false;
+            }
+            if (c == ',') {
+                position++;
+            } else if (c == -1) {
+                throw new IOException("JSON troncato");
+            }
+            return true;
+        }
+
+        Object readValue() throws IOException {
+            int c = peek();
+            switch (c) {
+                case '"':
+                    return readString();
+                case '{':
+                case '[':
+                    return readComposite();
+                case 't':
+                    literal("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    literal("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    literal("null");
+                    return null;
+                default:
+                    return readNumber();
+            }
+        }
+
+        String readString() throws IOException {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Stringa JSON non terminata");
+                }
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append((char) c);
+                    continue;
+                }
+                int escape = read();
+                switch (escape) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            hex[i] = (char) read();
+                        }
+                        value.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default:
+                        value.append((char) escape);
+                }
+            }
+        }
+
+        private Object readNumber() throws IOException {
+            StringBuilder text = new StringBuilder();
+            int c;
+            while ((c = peekRaw()) != -1 && (Character.isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+                text.append((char) c);
+                position++;
+            }
+            if (text.length() == 0) {
+                throw new IOException("Valore JSON non valido vicino a '" + (char) c + "'");
+            }
+            String number = text.toString();
+            if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    // oltre il range di long: come double
+                }
+            }
+            return Double.parseDouble(number);
+        }
+
+        /**
+         * Oggetto o array annidato copiato come testo JSON
+         */
+        private String readComposite() throws IOException {
+            StringBuilder text = new StringBuilder();
+            int depth = 0;
+            boolean inString = false;
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("JSON troncato");
+                }
+                text.append((char) c);
+                if (inString) {
+                    if (c == '\\') {
+                        text.append((char) read());
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return text.toString();
+                    }
+                }
+            }
+        }
+
+        private void literal(String word) throws IOException {
+            for (int i = 0; i < word.length(); i++) {
+                if (read() != word.charAt(i)) {
+                    throw new IOException("Valore JSON non valido, atteso " + word);
+                }
+            }
+        }
+
+        void expect(char expected) throws IOException {
+            int c = peek();
+            if (c != expected) {
+                throw new IOException("JSON non valido: atteso '" + expected + "', trovato "
+                    + (c == -1 ? "fine file" : "'" + (char) c + "'"));
+            }
+            position++;
+        }
+
+        /**
+         * Prossimo carattere non spazio, senza consumarlo
+         */
+        int peek() throws IOException {
+            int c;
+            while ((c = peekRaw()) != -1 && Character.isWhitespace(c)) {
+                position++;
+            }
+            return c;
+        }
+
+        private int peekRaw() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position];
+        }
+
+        private int read() throws IOException {
+            int c = peekRaw();
+            if (c != -1) {
+                position++;
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import model.ColumnarJsonCache;
+
+class ColumnarJsonCacheTest {
+
+	@TempDir
+	Path dir;
+
+	private Path write(String name, String json) throws Exception {
+		Path file = dir.resolve(name);
+		Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static long count(Path dir) throws Exception {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.count();
+		}
+	}
+
+	@Test
+	void testTypedColumns() throws Exception {
+		Path json = write("data.json", "[{\"id\":1,\"name\":\"a\\\"b\",\"v\":1,\"flag\":true,\"nested\":{\"k\":[1,2]}},"
+			+ "{\"id\":2,\"name\":null,\"v\":2.5,\"flag\":false},"
+			+ "{\"id\":3,\"name\":\"è\",\"extra\":\"x\"}]");
+		ColumnarJsonCache cache = new ColumnarJsonCache(dir.resolve("columnar"), "", 0);
+		ColumnarJsonCache.Dataset data = cache.open(json);
+
+		assertEquals(3, data.rowCount());
+		assertEquals(Arrays.asList("id", "name", "v", "flag", "nested", "extra"), data.columnNames());
+		assertEquals(1L, data.value(0, 0));
+		assertEquals("a\"b", data.value(0, 1));
+		assertNull(data.value(1, 1));
+		assertEquals("è", data.value(2, 1));
+		// LONG promosso a DOUBLE
+		assertEquals(1.0, data.value(0, 2));
+		assertEquals(2.5, data.value(1, 2));
+		assertEquals(Boolean.FALSE, data.value(1, 3));
+		assertNotNull(data.value(0, 4));
+		assertNull(data.value(0, 5));
+		assertEquals("x", data.value(2, 5));
+	}
+
+	@Test
+	void testRowsPath() throws Exception {
+		Path json = write("wrapped.json", "{\"meta\":{\"n\":2},\"data\":{\"items\":[{\"a\":1},{\"a\":2}]}}");
+		ColumnarJsonCache cache = new ColumnarJsonCache(dir.resolve("columnar"), "data.items", 0);
+		Iterator<Map<String, Object>> rows = cache.open(json).rows();
+
+		assertEquals(1L, rows.next().get("a"));
+		assertEquals(2L, rows.next().get("a"));
+		assertFalse(rows.hasNext());
+	}
+
+	@Test
+	void testReusedUntilSourceChanges() throws Exception {
+		Path json = write("users.json", "[{\"a\":1}]");
+		Path columnar = dir.resolve("columnar");
+		ColumnarJsonCache cache = new ColumnarJsonCache(columnar, "", 0);
+		cache.open(json);
+		cache.open(json);
+		assertEquals(1, count(columnar));
+
+		Files.write(json, "[{\"a\":1},{\"a\":2}]".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(json, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+		assertEquals(2, cache.open(json).rowCount());
+		// La versione precedente viene rimossa
+		assertEquals(1, count(columnar));
+	}
+
+	@Test
+	void testLazyRowsConvertOnFirstRead() throws Exception {
+		Path json = write("lazy.json", "[{\"a\":1}]");
+		Path columnar = dir.resolve("columnar");
+		ColumnarJsonCache cache = new ColumnarJsonCache(columnar, "", 0);
+		Iterator<Map<String, Object>> rows = cache.lazyRows(json);
+		assertFalse(Files.exists(columnar));
+
+		assertTrue(rows.hasNext());
+		assertEquals(1L, rows.next().get("a"));
+		assertFalse(rows.hasNext());
+		assertEquals(1, count(columnar));
+	}
+
+	@Test
+	void testPruneOverMaxBytes() throws Exception {
+		Path columnar = dir.resolve("columnar");
+		Path first = write("first.json", "[{\"a\":1}]");
+		Path second = write("second.json", "[{\"a\":2}]");
+		new ColumnarJsonCache(columnar, "", 0).open(first);
+		long size;
+		try (Stream<Path> files = Files.list(columnar)) {
+			Path file = files.findFirst().orElseThrow();
+			size = Files.size(file);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+		}
+
+		// Spazio per un solo file: il meno recente viene eliminato
+		ColumnarJsonCache cache = new ColumnarJsonCache(columnar, "", size);
+		assertEquals(2L, cache.open(second).rows().next().get("a"));
+		assertEquals(1, count(columnar));
+		assertEquals(1L, cache.open(first).rows().next().get("a"));
+		assertEquals(1, count(columnar));
+	}
+
+	@Test
+	void testOwnExtension() throws Exception {
+		Path columnar = dir.resolve("columnar");
+		// Un .jcol del Server nella stessa cartella non viene toccato
+		Files.createDirectories(columnar);
+		Files.write(columnar.resolve("server.jcol"), new byte[] { 1, 2, 3 });
+		new ColumnarJsonCache(columnar, "", 1).open(write("own.json", "[{\"a\":1}]"));
+
+		assertTrue(Files.exists(columnar.resolve("server.jcol")));
+		try (Stream<Path> files = Files.list(columnar)) {
+			assertEquals(1, files.filter(f -> f.toString().endsWith(".lcol")).count());
+		}
+	}
+}
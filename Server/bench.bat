@@ -0,0 +1,62 @@
+@echo off
+title Benchmark BIRT Report Server
+color 0B
+
+REM Benchmark JMH della generazione report (bench\src)
+REM Uso: bench.bat [opzioni JMH], es. bench.bat Warm -p rows=100,10000
+
+echo ================================================================
+echo   BENCHMARK REPORT (JMH)
+echo ================================================================
+echo.
+
+cd /d "%~dp0"
+
+set JMH_VERSION=1.37
+set MAVEN_REPO=https://repo1.maven.org/maven2
+
+REM Verifica Java
+where javac >nul 2>nul
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] javac non trovato! Serve Java JDK 21+
+    exit /b 1
+)
+
+REM Librerie JMH in bench\lib (scaricate la prima volta)
+if not exist "bench\lib" mkdir "bench\lib"
+call :download org/openjdk/jmh/jmh-core/%JMH_VERSION% jmh-core-%JMH_VERSION%.jar || exit /b 1
+call :download org/openjdk/jmh/jmh-generator-annprocess/%JMH_VERSION% jmh-generator-annprocess-%JMH_VERSION%.jar || exit /b 1
+call :download net/sf/jopt-simple/jopt-simple/5.0.4 jopt-simple-5.0.4.jar || exit /b 1
+call :download org/apache/commons/commons-math3/3.6.1 commons-math3-3.6.1.jar || exit /b 1
+
+REM Compila server e benchmark: l'annotation processor JMH genera le classi dei benchmark
+echo [1/2] Compilazione...
+if exist "bench\bin" rmdir /s /q "bench\bin"
+mkdir "bench\bin"
+dir /s /b src\*.java bench\src\*.java > bench\sources.txt
+REM -processorpath non espande "*": elenco esplicito dei jar
+set PROCESSOR_PATH=
+for %%f in (bench\lib\*.jar) do call set "PROCESSOR_PATH=%%PROCESSOR_PATH%%%%f;"
+javac -d bench\bin -cp "lib\*;bench\lib\*" -processorpath "%PROCESSOR_PATH%" @bench\sources.txt
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] Compilazione fallita
+    del bench\sources.txt
+    exit /b 1
+)
+del bench\sources.txt
+
+REM Avvio: -prof gc aggiunge il tasso di allocazione (gc.alloc.rate.norm = byte per report)
+echo [2/2] Esecuzione benchmark...
+echo.
+java %JAVA_OPTS% -cp "bench\bin;lib\*;bench\lib\*" org.openjdk.jmh.Main -prof gc %*
+exit /b %ERRORLEVEL%
+
+:download
+if exist "bench\lib\%2" exit /b 0
+echo [DOWN] %2
+powershell -NoProfile -Command "Invoke-WebRequest -Uri '%MAVEN_REPO%/%1/%2' -OutFile 'bench\lib\%2'"
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] %2 non scaricato: copialo a mano in bench\lib\
+    exit /b 1
+)
+exit /b 0
@@ -0,0 +1,62 @@
+#!/bin/bash
+# Benchmark JMH della generazione report (bench/src)
+# Linux / macOS
+#
+# Uso: ./bench.sh [opzioni JMH]
+#   ./bench.sh                                  tutti i benchmark (lungo)
+#   ./bench.sh Warm -p rows=100,10000           solo engine caldo, 100 e 10k righe
+#   ./bench.sh Cold -p format=PDF -f 20         engine freddo, 20 JVM
+#   ./bench.sh -rf json -rff bench.json         risultati in JSON
+
+echo "================================================================"
+echo "  BENCHMARK REPORT (JMH)"
+echo "================================================================"
+echo ""
+
+# Vai alla directory del progetto
+cd "$(dirname "$0")"
+
+JMH_VERSION=1.37
+MAVEN_REPO=https://repo1.maven.org/maven2
+
+# Verifica Java
+if ! command -v javac &> /dev/null; then
+    echo "[FAIL] javac non trovato! Serve Java JDK 21+"
+    exit 1
+fi
+
+# Librerie JMH in bench/lib (scaricate la prima volta)
+mkdir -p bench/lib
+download() {
+    local path=$1
+    local jar=$(basename "$path")
+    if [ ! -f "bench/lib/$jar" ]; then
+        echo "[DOWN] $jar"
+        if ! curl -sfL -o "bench/lib/$jar" "$MAVEN_REPO/$path"; then
+            echo "[FAIL] $jar non scaricato: copialo a mano in bench/lib/"
+            rm -f "bench/lib/$jar"
+            exit 1
+        fi
+    fi
+}
+download "org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar"
+download "org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar"
+download "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar"
+download "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+
+# Compila server e benchmark: l'annotation processor JMH genera le classi dei benchmark
+echo "[1/2] Compilazione..."
+rm -rf bench/bin
+mkdir -p bench/bin
+# (-processorpath non espande "*": elenco esplicito dei jar)
+PROCESSOR_PATH=$(ls bench/lib/*.jar | tr '\n' ':')
+if ! javac -d bench/bin -cp "lib/*:bench/lib/*" -processorpath "$PROCESSOR_PATH" \
+        $(find src bench/src -name "*.java"); then
+    echo "[FAIL] Compilazione fallita"
+    exit 1
+fi
+
+# Avvio: -prof gc aggiunge il tasso di allocazione (gc.alloc.rate.norm = byte per report)
+echo "[2/2] Esecuzione benchmark..."
+echo ""
+java $JAVA_OPTS -cp "bench/bin:lib/*:bench/lib/*" org.openjdk.jmh.Main -prof gc "$@"
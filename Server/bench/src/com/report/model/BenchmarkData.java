@@ -0,0 +1,85 @@
+package com.report.model;
+
+import com.report.tools.MockJsonServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Design e dati dei benchmark
+ *
+ * I design sono in bench/designs (report.bench.designDir); i dataset JSON
+ * vengono generati una volta per numero di righe in report.bench.dataDir
+ * (default tmp/report-bench) e riusati tra i fork: il contenuto dipende solo
+ * dal numero di righe, quindi i risultati restano confrontabili tra esecuzioni.
+ * Sono gli stessi byte di /rows di MockJsonServer con seed = righe, per
+ * misurare anche la lettura via HTTP (source=http).
+ */
+final class BenchmarkData {
+    final String designName;
+    final byte[] design;
+    final Path json;
+
+    private BenchmarkData(String designName, byte[] design, Path json) {
+        this.designName = designName;
+        this.design = design;
+        this.json = json;
+    }
+
+    /**
+     * Design <name>.rptdesign e dataset di rows righe (generato se manca)
+     */
+    static BenchmarkData prepare(String name, int rows) throws IOException {
+        Path designDir = Paths.get(ServerConfig.setting("report.bench.designDir", "bench/designs"));
+        Path design = designDir.resolve(name + ".rptdesign");
+        if (!Files.isRegularFile(design)) {
+            throw new IOException("Design non trovato: " + design.toAbsolutePath());
+        }
+        Path dataDir = Paths.get(ServerConfig.setting("report.bench.dataDir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "report-bench").toString()));
+        return new BenchmarkData(design.getFileName().toString(), Files.readAllBytes(design), dataset(dataDir, rows));
+    }
+
+    /**
+     * Home BIRT: la stessa del server (report.birtHome)
+     */
+    static String birtHome() {
+        return ServerConfig.load().birtHome.toString();
+    }
+
+    private static Path dataset(Path dir, int rows) throws IOException {
+        Path file = dir.resolve("rows-" + rows + ".json");
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        Files.createDirectories(dir);
+        // Scritto a parte e rinominato: un fork interrotto non lascia file parziali
+        Path temporary = Files.createTempFile(dir, "rows-" + rows, ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            MockJsonServer.write(out, "rows", rows, 0, rows);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * Output scartato: conta solo i byte (restituiti dal benchmark)
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
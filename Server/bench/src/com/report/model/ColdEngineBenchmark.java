@@ -0,0 +1,63 @@
+package com.report.model;
+
+import org.eclipse.birt.report.engine.api.IReportEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateDocument con engine freddo (come la CLI lanciata da server.py)
+ *
+ * Ogni misura è il primo report di una JVM nuova: avvio della Platform,
+ * creazione dell'engine, apertura del design senza cache, run e render.
+ * Una sola misura per fork, senza warmup; i percentili sono calcolati
+ * sui fork (-f per averne di più).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class ColdEngineBenchmark {
+    @Param({"table", "grouped"})
+    public String design;
+
+    @Param({"PDF", "DOC", "XLSX", "HTML"})
+    public String format;
+
+    @Param({"100", "10000", "1000000"})
+    public int rows;
+
+    private BenchmarkData data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // Lettura del design e generazione del dataset fuori dalla misura
+        data = BenchmarkData.prepare(design, rows);
+    }
+
+    @Benchmark
+    public long generate() throws Exception {
+        BenchmarkData.CountingOutputStream out = new BenchmarkData.CountingOutputStream();
+        IReportEngine engine = BirtDesignToDocument.startEngine(BenchmarkData.birtHome());
+        try {
+            new BirtDesignToDocument(data.json.toString(), data.designName, data.design, engine)
+                .generateDocument(format, out);
+        } finally {
+            BirtDesignToDocument.stopEngine(engine);
+        }
+        return out.count;
+    }
+}
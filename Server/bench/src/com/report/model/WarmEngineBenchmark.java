@@ -0,0 +1,107 @@
+package com.report.model;
+
+import com.report.tools.MockJsonServer;
+import org.eclipse.birt.report.engine.api.IReportEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateDocument con engine caldo (come il server Java e il daemon)
+ *
+ * Platform, engine e DesignCache vengono creati una volta per trial; ogni
+ * operazione è un report completo (dati letti dal file JSON, run e render)
+ * con l'output scartato. Con -p source=http i dati arrivano dallo stesso
+ * JSON servito da un MockJsonServer locale (attesa per risposta in
+ * report.bench.mockLatencyMs) e scaricato a ogni report da JsonDataFetcher
+ * senza cache, cioè il percorso HTTP del server. Throughput in report/s e
+ * SampleTime per i percentili di latenza; con -prof gc (default di
+ * bench.sh) anche il tasso di allocazione per operazione.
+ *
+ * Prima delle misure un report di controllo deve avere la stessa dimensione
+ * (entro l'1%) di quello generato dal file: un report vuoto falsa i numeri.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WarmEngineBenchmark {
+    @Param({"table", "grouped"})
+    public String design;
+
+    @Param({"PDF", "DOC", "XLSX", "HTML"})
+    public String format;
+
+    @Param({"100", "10000", "1000000"})
+    public int rows;
+
+    @Param({"file"})
+    public String source;
+
+    private BenchmarkData data;
+    private MockJsonServer mock;
+    private String jsonUrl;
+    private IReportEngine engine;
+    private DesignCache designCache;
+    private JsonDataFetcher dataFetcher;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        data = BenchmarkData.prepare(design, rows);
+        jsonUrl = data.json.toString();
+        if (source.equals("http")) {
+            MockJsonServer.Settings settings = new MockJsonServer.Settings(rows, 0,
+                ServerConfig.longSetting("report.bench.mockLatencyMs", 0), true, "strong", rows);
+            mock = new MockJsonServer(0, settings);
+            mock.start();
+            jsonUrl = mock.url("rows", settings);
+        }
+        engine = BirtDesignToDocument.startEngine(BenchmarkData.birtHome());
+        designCache = DesignCache.fromConfig();
+        // TTL 0: nessuna cache, ogni report scarica i dati
+        dataFetcher = new JsonDataFetcher(0, 0, ServerConfig.longSetting("report.dataFetch.timeoutSeconds", 60));
+
+        long expected = render(data.json.toString());
+        long actual = render(jsonUrl);
+        if (expected == 0 || Math.abs(actual - expected) > expected / 100) {
+            throw new IllegalStateException("Report di controllo non valido (" + source + "): " + actual
+                + " byte, dal file " + expected + " byte");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BirtDesignToDocument.stopEngine(engine);
+        if (mock != null) {
+            mock.stop();
+        }
+    }
+
+    @Benchmark
+    public long generate() throws Exception {
+        return render(jsonUrl);
+    }
+
+    private long render(String json) throws Exception {
+        BenchmarkData.CountingOutputStream out = new BenchmarkData.CountingOutputStream();
+        new BirtDesignToDocument(json, data.designName, data.design, engine)
+            .withDesignCache(designCache)
+            .withDataFetcher(dataFetcher)
+            .generateDocument(format, out);
+        return out.count;
+    }
+}
@@ -56,9 +56,12 @@ REM Crea directory bin se non esiste
 if not exist "bin" mkdir bin
 
 REM Compila con classpath
-javac -d bin -cp "lib\*" src\com\report\model\BirtReportEngine.java 2>compile_errors.txt
+dir /s /b src\*.java > sources.txt
+javac -d bin -cp "lib\*" @sources.txt 2>compile_errors.txt
+set COMPILE_RESULT=%ERRORLEVEL%
+del sources.txt
 
-if %ERRORLEVEL% EQU 0 (
+if %COMPILE_RESULT% EQU 0 (
     echo ================================================================
     echo   COMPILAZIONE COMPLETATA CON SUCCESSO!
     echo ================================================================
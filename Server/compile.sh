@@ -56,7 +56,7 @@ echo ""
 mkdir -p bin
 
 # Compila con classpath
-javac -d bin -cp "lib/*" src/com/report/model/BirtReportEngine.java 2> compile_errors.txt
+javac -d bin -cp "lib/*" $(find src -name "*.java") 2> compile_errors.txt
 
 if [ $? -eq 0 ]; then
     echo "================================================================"
@@ -0,0 +1,29 @@
+@echo off
+title Test di carico BIRT Report Server
+color 0B
+
+REM Test di carico di /api/reports/generate (com.report.tools.LoadTest)
+REM Uso: loadtest.bat --design <file.rptdesign> --json <jsonApiUrl> [opzioni]
+REM      loadtest.bat --help per tutte le opzioni
+
+echo ================================================================
+echo   TEST DI CARICO REPORT
+echo ================================================================
+echo.
+
+cd /d "%~dp0"
+
+REM Verifica prerequisiti
+if not exist "bin\com\report\tools\LoadTest.class" (
+    echo [FAIL] Codice Java non compilato! Esegui prima: compile.bat
+    exit /b 1
+)
+
+where java >nul 2>nul
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] Java non trovato nel PATH! Serve Java 21+
+    exit /b 1
+)
+
+java %JAVA_OPTS% -cp "bin;lib\*" com.report.tools.LoadTest %*
+exit /b %ERRORLEVEL%
@@ -0,0 +1,29 @@
+#!/bin/bash
+# Test di carico di /api/reports/generate (com.report.tools.LoadTest)
+# Linux / macOS
+#
+# Uso: ./loadtest.sh --design <file.rptdesign> --json <jsonApiUrl> [opzioni]
+#   ./loadtest.sh --design Customers.rptdesign --json http://localhost:5080/users --rate 2
+#   ./loadtest.sh --designId <id> --json <url> --formats PDF,XLSX --rate 5 --duration 120 --label server-java
+#   ./loadtest.sh --help                           tutte le opzioni
+
+echo "================================================================"
+echo "  TEST DI CARICO REPORT"
+echo "================================================================"
+echo ""
+
+# Vai alla directory del progetto
+cd "$(dirname "$0")"
+
+# Verifica prerequisiti
+if [ ! -f "bin/com/report/tools/LoadTest.class" ]; then
+    echo "[FAIL] Codice Java non compilato! Esegui prima: ./compile.sh"
+    exit 1
+fi
+
+if ! command -v java &> /dev/null; then
+    echo "[FAIL] Java non trovato nel PATH! Serve Java 21+"
+    exit 1
+fi
+
+java $JAVA_OPTS -cp "bin:lib/*" com.report.tools.LoadTest "$@"
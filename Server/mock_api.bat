@@ -0,0 +1,30 @@
+@echo off
+title API JSON finta
+color 0B
+
+REM API JSON finta per misure senza rete (com.report.tools.MockJsonServer)
+REM Uso: mock_api.bat [--port 5080] [--rows 10] [--width 0] [--latencyMs 0]
+REM                   [--chunked false] [--etag strong|weak|none|changing] [--seed 1]
+REM poi jsonApiUrl=http://localhost:5080/users
+
+echo ================================================================
+echo   API JSON FINTA
+echo ================================================================
+echo.
+
+cd /d "%~dp0"
+
+REM Verifica prerequisiti
+if not exist "bin\com\report\tools\MockJsonServer.class" (
+    echo [FAIL] Codice Java non compilato! Esegui prima: compile.bat
+    exit /b 1
+)
+
+where java >nul 2>nul
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] Java non trovato nel PATH! Serve Java 21+
+    exit /b 1
+)
+
+java %JAVA_OPTS% -cp "bin;lib\*" com.report.tools.MockJsonServer %*
+exit /b %ERRORLEVEL%
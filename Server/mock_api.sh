@@ -0,0 +1,29 @@
+#!/bin/bash
+# API JSON finta per misure senza rete (com.report.tools.MockJsonServer)
+# Linux / macOS
+#
+# Uso: ./mock_api.sh [--port 5080] [--rows 10] [--width 0] [--latencyMs 0]
+#                    [--chunked false] [--etag strong|weak|none|changing] [--seed 1]
+#   ./mock_api.sh --rows 1000 --latencyMs 50
+#   poi jsonApiUrl=http://localhost:5080/users (parametri sovrascrivibili: /users?rows=100000&chunked=true)
+
+echo "================================================================"
+echo "  API JSON FINTA"
+echo "================================================================"
+echo ""
+
+# Vai alla directory del progetto
+cd "$(dirname "$0")"
+
+# Verifica prerequisiti
+if [ ! -f "bin/com/report/tools/MockJsonServer.class" ]; then
+    echo "[FAIL] Codice Java non compilato! Esegui prima: ./compile.sh"
+    exit 1
+fi
+
+if ! command -v java &> /dev/null; then
+    echo "[FAIL] Java non trovato nel PATH! Serve Java 21+"
+    exit 1
+fi
+
+java $JAVA_OPTS -cp "bin:lib/*" com.report.tools.MockJsonServer "$@"
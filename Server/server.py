@@ -14,6 +14,7 @@ from flask import Flask, request, jsonify, send_file
 from flask_cors import CORS
 import os
 import subprocess
+import threading
 import time
 from pathlib import Path
 from datetime import datetime
@@ -36,6 +37,15 @@ LOG_DIR = BASE_DIR / "logs"
 ALLOWED_EXTENSIONS = {'rptdesign'}
 MAX_FILE_SIZE = 50 * 1024 * 1024  # 50MB
 
+# Report engine persistente (BIRT_DAEMON=0 per tornare a una JVM per richiesta)
+USE_DAEMON = os.environ.get('BIRT_DAEMON', '1') != '0'
+REPORT_TIMEOUT = 300  # 5 minuti timeout
+
+# Admission control: report generati in parallelo e richieste in attesa.
+# Oltre il limite /generate risponde subito 429 con Retry-After invece di
+# avviare altre JVM (ognuna occupa centinaia di MB) e mandare l'host in swap.
+JVM_MEMORY_MB = int(os.environ.get('REPORT_JVM_MB', '512'))
+
 # Logger (configurato dopo create_directories)
 logger = None
 
@@ -68,6 +78,192 @@ def allowed_file(filename):
     return '.' in filename and filename.rsplit('.', 1)[1].lower() in ALLOWED_EXTENSIONS
 
 
+def java_classpath():
+    """Costruisce il classpath corretto per il sistema operativo"""
+    if os.name == 'nt':  # Windows
+        classpath_sep = ';'
+        lib_pattern = 'lib\\*'
+    else:  # Linux/macOS
+        classpath_sep = ':'
+        lib_pattern = 'lib/*'
+    
+    return f"bin{classpath_sep}{lib_pattern}"
+
+
+def total_memory_mb():
+    """Memoria fisica dell'host in MB, o None se non si può leggere"""
+    try:
+        return os.sysconf('SC_PAGE_SIZE') * os.sysconf('SC_PHYS_PAGES') // (1024 * 1024)
+    except (ValueError, OSError, AttributeError):
+        return None
+
+
+def default_max_concurrent():
+    """
+    Report contemporanei di default: il daemon esegue un job alla volta,
+    con una JVM per richiesta il minimo tra core e JVM che stanno nel 75%
+    della memoria (REPORT_JVM_MB ciascuna)
+    """
+    if USE_DAEMON:
+        return 1
+    cores = os.cpu_count() or 1
+    memory = total_memory_mb()
+    if memory is None:
+        return cores
+    return max(1, min(cores, int(memory * 0.75) // JVM_MEMORY_MB))
+
+
+class AdmissionControl:
+    """
+    Limita i report in generazione (max_concurrent) e quelli in attesa
+    (max_queue); le richieste oltre il limite vengono respinte subito
+    """
+    
+    def __init__(self, max_concurrent, max_queue):
+        self.max_concurrent = max_concurrent
+        self.max_queue = max_queue
+        self.slots = threading.BoundedSemaphore(max_concurrent)
+        self.lock = threading.Lock()
+        self.admitted = 0
+        self.rejected = 0
+        self.average_seconds = 1.0  # durata media di un report (media mobile)
+    
+    def try_enter(self):
+        """Ammette la richiesta se c'è posto in esecuzione o in coda"""
+        with self.lock:
+            if self.admitted >= self.max_concurrent + self.max_queue:
+                self.rejected += 1
+                return False
+            self.admitted += 1
+            return True
+    
+    def leave(self):
+        with self.lock:
+            self.admitted -= 1
+    
+    def record(self, seconds):
+        """Registra la durata di un report generato"""
+        with self.lock:
+            self.average_seconds += 0.2 * (seconds - self.average_seconds)
+    
+    def retry_after(self):
+        """Secondi per smaltire la coda attuale, tra 1 e 60"""
+        with self.lock:
+            waiting = max(0, self.admitted - self.max_concurrent)
+            seconds = self.average_seconds * (waiting + 1) / self.max_concurrent
+        return int(max(1, min(60, -(-seconds // 1))))
+    
+    def status(self):
+        with self.lock:
+            return {
+                "maxConcurrent": self.max_concurrent,
+                "maxQueue": self.max_queue,
+                "admitted": self.admitted,
+                "rejected": self.rejected
+            }
+
+
+MAX_CONCURRENT = int(os.environ.get('REPORT_MAX_CONCURRENT', '0')) or default_max_concurrent()
+MAX_QUEUE = int(os.environ.get('REPORT_MAX_QUEUE', str(MAX_CONCURRENT * 4)))
+admission = AdmissionControl(MAX_CONCURRENT, MAX_QUEUE)
+
+
+class ReportDaemon:
+    """
+    Processo Java persistente (BirtReportEngine --daemon)
+    
+    La Platform BIRT e l'engine vengono avviati una sola volta; ogni job
+    viene inviato su stdin come riga separata da TAB e la risposta
+    (SUCCESS:<path> o ERROR:<messaggio>) viene letta da stdout.
+    """
+    
+    def __init__(self):
+        self.process = None
+        self.stderr_log = None
+        self.lock = threading.Lock()
+    
+    def _start(self):
+        """Avvia il processo Java e attende la riga READY"""
+        java_cmd = [
+            "java",
+            "-cp", java_classpath(),
+            "com.report.model.BirtReportEngine",
+            "--daemon",
+            str(BIRT_HOME)
+        ]
+        logger.info(f"Avvio report engine daemon: {' '.join(java_cmd)}")
+        
+        if self.stderr_log is None:
+            self.stderr_log = open(LOG_DIR / "engine.log", 'a', encoding='utf-8')
+        
+        self.process = subprocess.Popen(
+            java_cmd,
+            stdin=subprocess.PIPE,
+            stdout=subprocess.PIPE,
+            stderr=self.stderr_log,
+            cwd=os.getcwd(),
+            text=True,
+            encoding='utf-8',
+            errors='replace',
+            bufsize=1
+        )
+        
+        line = self._read_line(REPORT_TIMEOUT)
+        if line != 'READY':
+            self._kill()
+            raise RuntimeError(f"Avvio daemon fallito (risposta: {line!r})")
+        logger.info("✓ Report engine daemon pronto")
+    
+    def _read_line(self, timeout):
+        """Legge una riga da stdout, terminando il processo se scade il timeout"""
+        timer = threading.Timer(timeout, self._kill)
+        timer.start()
+        try:
+            line = self.process.stdout.readline()
+        finally:
+            timer.cancel()
+        if not line:
+            raise RuntimeError("Daemon terminato inaspettatamente")
+        return line.strip()
+    
+    def _kill(self):
+        if self.process is not None and self.process.poll() is None:
+            logger.warning("⚠ Terminazione report engine daemon")
+            self.process.kill()
+    
+    def generate(self, birt_file_path, json_api_url, output_format):
+        """Invia un job al daemon e restituisce il path generato"""
+        fields = [str(birt_file_path), json_api_url, str(OUTPUT_DIR), output_format]
+        if any('\t' in f or '\n' in f for f in fields):
+            raise ValueError("Parametri non validi per il daemon")
+        
+        with self.lock:
+            if self.process is None or self.process.poll() is not None:
+                self._start()
+            
+            self.process.stdin.write('\t'.join(fields) + '\n')
+            self.process.stdin.flush()
+            line = self._read_line(REPORT_TIMEOUT)
+        
+        if line.startswith('SUCCESS:'):
+            return Path(line[len('SUCCESS:'):].strip())
+        raise RuntimeError(line[len('ERROR:'):] if line.startswith('ERROR:') else line)
+    
+    def stop(self):
+        """Chiude il daemon in modo ordinato"""
+        with self.lock:
+            if self.process is not None and self.process.poll() is None:
+                try:
+                    self.process.stdin.write('QUIT\n')
+                    self.process.stdin.flush()
+                    self.process.wait(timeout=30)
+                except Exception:
+                    self.process.kill()
+
+
+report_daemon = ReportDaemon()
+
+
 def generate_birt_report(birt_file_path, json_api_url, output_format):
     """
     Genera un report BIRT chiamando il wrapper Java
@@ -80,16 +276,23 @@ def generate_birt_report(birt_file_path, json_api_url, output_format):
     Returns:
         Path del file generato o None in caso di errore
     """
+    if USE_DAEMON:
+        try:
+            output_file = report_daemon.generate(birt_file_path, json_api_url, output_format)
+            if output_file.exists():
+                logger.info(f"✓ Report generato: {output_file}")
+                return output_file
+            logger.error(f"✗ File di output non trovato: {output_file}")
+            return None
+        except (RuntimeError, ValueError) as e:
+            logger.error(f"✗ Errore generazione report (daemon): {e}")
+            return None
+        except FileNotFoundError:
+            logger.error("✗ Java non trovato! Verifica che Java 21+ sia installato e nel PATH")
+            return None
+    
     try:
-        # Costruisci il classpath corretto per il sistema operativo
-        if os.name == 'nt':  # Windows
-            classpath_sep = ';'
-            lib_pattern = 'lib\\*'
-        else:  # Linux/macOS
-            classpath_sep = ':'
-            lib_pattern = 'lib/*'
-        
-        classpath = f"bin{classpath_sep}{lib_pattern}"
+        classpath = java_classpath()
         
         # Comando Java con tutti i parametri
         java_cmd = [
@@ -112,7 +315,7 @@ def generate_birt_report(birt_file_path, json_api_url, output_format):
             java_cmd,
             capture_output=True,
             text=True,
-            timeout=300,  # 5 minuti timeout
+            timeout=REPORT_TIMEOUT,
             cwd=os.getcwd(),
             encoding='utf-8',
             errors='replace'
@@ -130,13 +333,8 @@ def generate_birt_report(birt_file_path, json_api_url, output_format):
                         logger.info(f"✓ Report generato: {output_file}")
                         return output_file
             
-            # Se non trova SUCCESS, cerca l'ultimo file generato
-            output_files = list(OUTPUT_DIR.glob(f"report*.{output_format.lower()}"))
-            if output_files:
-                latest_file = max(output_files, key=lambda p: p.stat().st_mtime)
-                logger.info(f"✓ Report generato (fallback): {latest_file}")
-                return latest_file
-            
+            # Nessun fallback sull'ultimo report*.ext in OUTPUT_DIR: con richieste
+            # concorrenti potrebbe essere il file di un'altra richiesta
             logger.error("✗ Nessun file di output trovato")
             logger.error(f"STDOUT: {result.stdout}")
             return None
@@ -167,7 +365,8 @@ def health_check():
         "java": "21+",
         "birt": "4.21",
         "python": "3.14",
-        "timestamp": datetime.now().isoformat()
+        "timestamp": datetime.now().isoformat(),
+        "admission": admission.status()
     })
 
 
@@ -188,7 +387,27 @@ def generate_report():
         - birtFile: File .rptdesign (obbligatorio)
         - jsonApiUrl: URL API JSON (obbligatorio)
         - format: Formato output (opzionale, default: PDF)
+    
+    Con MAX_CONCURRENT report in corso e MAX_QUEUE in attesa risponde 429
+    (header Retry-After) senza leggere il file.
     """
+    if not admission.try_enter():
+        retry_after = admission.retry_after()
+        logger.warning(f"⚠ Richiesta respinta: server saturo (riprova tra {retry_after}s)")
+        response = jsonify({
+            "error": f"Troppe richieste, riprova tra {retry_after} secondi",
+            "retryAfter": retry_after
+        })
+        return response, 429, {"Retry-After": str(retry_after)}
+    
+    try:
+        return _generate_report()
+    finally:
+        admission.leave()
+
+
+def _generate_report():
+    """Validazione, generazione e invio del report (richiesta già ammessa)"""
     try:
         # Verifica presenza file
         if 'birtFile' not in request.files:
@@ -225,7 +444,10 @@ def generate_report():
         
         # Genera il report
         logger.info(f"→ Generazione report {output_format} in corso...")
-        output_path = generate_birt_report(temp_path, json_api_url, output_format)
+        with admission.slots:
+            start = time.time()
+            output_path = generate_birt_report(temp_path, json_api_url, output_format)
+            admission.record(time.time() - start)
         
         # Elimina il file temporaneo
         try:
@@ -326,6 +548,8 @@ def print_banner():
     print(f"  📁 Uploads:       {UPLOAD_DIR}")
     print(f"  📄 Output:        {OUTPUT_DIR}")
     print(f"  📝 Logs:          {LOG_DIR / 'server.log'}")
+    print(f"  ⚙  Engine:        {'daemon persistente' if USE_DAEMON else 'una JVM per richiesta'}")
+    print(f"  🚦 Limiti:        {MAX_CONCURRENT} report in parallelo, {MAX_QUEUE} in coda")
     print("\n  📡 Endpoints disponibili:")
     print("    GET  /api/reports/health    - Verifica stato server")
     print("    GET  /api/reports/formats   - Formati supportati")
@@ -366,4 +590,6 @@ if __name__ == '__main__':
         logger.info("Server fermato dall'utente")
     except Exception as e:
         print(f"\n\n✗ Errore avvio server: {e}")
-        logger.error(f"Errore avvio server: {e}", exc_info=True)
\ No newline at end of file
+        logger.error(f"Errore avvio server: {e}", exc_info=True)
+    finally:
+        report_daemon.stop()
\ No newline at end of file
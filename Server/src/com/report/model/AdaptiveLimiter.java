@@ -0,0 +1,240 @@
+package com.report.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Limite di concorrenza adattivo per formato di output (AIMD)
+ *
+ * Un report HTML leggero può girare in molte copie, un PDF con grafici
+ * rallenta tutti già con pochi task: per ogni formato (o combinazione di
+ * formati, "PDF,XLSX") il limite parte da `initial` e si muove tra `min` e
+ * la capacità del pool, che resta il tetto fisso.
+ *
+ * A ogni job terminato si confronta la latenza (media mobile breve del tempo
+ * con l'engine) con la latenza di riferimento del formato (il minimo
+ * osservato, che risale lentamente se i report cambiano):
+ *   - latenza oltre `tolerance` volte il riferimento, oppure attesa di un
+ *     engine del pool più lunga di un job senza carico: il limite scende in
+ *     proporzione (riferimento x tolerance / latenza, tra -10% e -50%), al
+ *     massimo una volta per durata media di un job
+ *   - altrimenti, se il limite era tutto occupato, sale: +1 per job finché
+ *     non è mai sceso (partenza rapida da `initial`), poi +1/limite (circa +1
+ *     ogni `limite` job)
+ */
+class AdaptiveLimiter {
+    private static final Logger LOG = Logger.getLogger(AdaptiveLimiter.class.getName());
+    private static final double MIN_BACKOFF = 0.5;
+    private static final double MAX_BACKOFF = 0.9;
+    private static final double LATENCY_ALPHA = 0.3;
+    // Il riferimento risale verso le latenze recenti in circa 10 minuti, non per numero di job
+    private static final double BASELINE_WINDOW_MS = 600_000;
+    // Sotto questa differenza la latenza non conta come peggiorata (job quasi istantanei)
+    private static final double SLACK_MS = 10;
+
+    /**
+     * Stato del limite di un formato
+     */
+    private class Limit {
+        final String key;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition available = lock.newCondition();
+        double limit = initial;
+        int inFlight;
+        int waiting;
+        double latencyMs;
+        double baselineMs;
+        long lastDecrease;
+        long lastUpdate;
+        boolean decreased;
+
+        Limit(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Posto ottenuto da acquire(): va chiuso con complete() o cancel()
+     */
+    class Permit {
+        private final Limit limit;
+        private boolean closed;
+
+        private Permit(Limit limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * Job terminato: aggiorna il limite con le misure del job
+         * @param latencyMs tempo con l'engine
+         * @param queueDelayMs attesa di un engine del pool dopo il permesso
+         */
+        void complete(long latencyMs, long queueDelayMs) {
+            if (!closed) {
+                closed = true;
+                update(limit, latencyMs, queueDelayMs);
+            }
+        }
+
+        /**
+         * Job non eseguito o non significativo: libera il posto senza misure
+         */
+        void cancel() {
+            if (!closed) {
+                closed = true;
+                limit.lock.lock();
+                try {
+                    limit.inFlight--;
+                    limit.available.signal();
+                } finally {
+                    limit.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private final int min;
+    private final int max;
+    private final double initial;
+    private final double tolerance;
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+
+    AdaptiveLimiter(int min, int max, double initial, double tolerance) {
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.initial = Math.max(this.min, Math.min(this.max, initial));
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Limiter da ServerConfig (report.limiter.*), o null se disattivato
+     * @param capacity capacità del pool: limite massimo per formato
+     */
+    static AdaptiveLimiter fromConfig(int capacity) {
+        if (!Boolean.parseBoolean(ServerConfig.setting("report.limiter.enabled", "true"))) {
+            return null;
+        }
+        return new AdaptiveLimiter(
+            ServerConfig.intSetting("report.limiter.min", 1),
+            capacity,
+            ServerConfig.intSetting("report.limiter.initial", Math.min(capacity, 2)),
+            Double.parseDouble(ServerConfig.setting("report.limiter.tolerance", "2.0")));
+    }
+
+    /**
+     * Attende un posto nel limite del formato
+     * @throws TimeoutException se non si libera entro timeoutMs
+     */
+    Permit acquire(String key, long timeoutMs) throws InterruptedException, TimeoutException {
+        Limit limit = limits.computeIfAbsent(key, Limit::new);
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        limit.lock.lock();
+        try {
+            limit.waiting++;
+            try {
+                while (limit.inFlight >= (int) limit.limit) {
+                    if (remaining <= 0) {
+                        throw new TimeoutException("Limite " + key + " (" + (int) limit.limit
+                            + " job) occupato oltre " + timeoutMs + " ms");
+                    }
+                    remaining = limit.available.awaitNanos(remaining);
+                }
+            } finally {
+                limit.waiting--;
+            }
+            limit.inFlight++;
+        } finally {
+            limit.lock.unlock();
+        }
+        return new Permit(limit);
+    }
+
+    /**
+     * Richieste in attesa di un posto, su tutti i formati
+     */
+    int waiting() {
+        int waiting = 0;
+        for (Limit limit : limits.values()) {
+            limit.lock.lock();
+            try {
+                waiting += limit.waiting;
+            } finally {
+                limit.lock.unlock();
+            }
+        }
+        return waiting;
+    }
+
+    /**
+     * Stato dei limiti per formato, per /health e le metriche
+     */
+    Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        for (Limit limit : limits.values()) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            limit.lock.lock();
+            try {
+                values.put("limit", (int) limit.limit);
+                values.put("inFlight", limit.inFlight);
+                values.put("waiting", limit.waiting);
+                values.put("latencyMs", Math.round(limit.latencyMs));
+                values.put("baselineMs", Math.round(limit.baselineMs));
+            } finally {
+                limit.lock.unlock();
+            }
+            snapshot.put(limit.key, values);
+        }
+        return snapshot;
+    }
+
+    private void update(Limit limit, long latencyMs, long queueDelayMs) {
+        limit.lock.lock();
+        try {
+            int used = limit.inFlight + limit.waiting;
+            limit.inFlight--;
+            if (limit.latencyMs == 0) {
+                limit.latencyMs = latencyMs;
+            } else {
+                limit.latencyMs += LATENCY_ALPHA * (latencyMs - limit.latencyMs);
+            }
+            long now = System.currentTimeMillis();
+            if (limit.baselineMs == 0 || latencyMs < limit.baselineMs) {
+                limit.baselineMs = latencyMs;
+            } else {
+                double drift = Math.min(1, (now - limit.lastUpdate) / BASELINE_WINDOW_MS);
+                limit.baselineMs += drift * (latencyMs - limit.baselineMs);
+            }
+            limit.lastUpdate = now;
+
+            int before = (int) limit.limit;
+            boolean slower = limit.latencyMs > limit.baselineMs * tolerance + SLACK_MS;
+            boolean queued = queueDelayMs > limit.baselineMs + SLACK_MS;
+            if (slower || queued) {
+                if (now - limit.lastDecrease >= limit.latencyMs) {
+                    double backoff = Math.max(MIN_BACKOFF, Math.min(MAX_BACKOFF,
+                        (limit.baselineMs * tolerance + SLACK_MS) / Math.max(1, limit.latencyMs)));
+                    limit.limit = Math.max(min, limit.limit * backoff);
+                    limit.lastDecrease = now;
+                    limit.decreased = true;
+                }
+            } else if (used >= before) {
+                limit.limit = Math.min(max, limit.limit + (limit.decreased ? 1 / limit.limit : 1));
+            }
+            if ((int) limit.limit != before) {
+                LOG.fine("Limite " + limit.key + ": " + before + " -> " + (int) limit.limit
+                    + " (latenza " + Math.round(limit.latencyMs) + " ms, riferimento "
+                    + Math.round(limit.baselineMs) + " ms, attesa engine " + queueDelayMs + " ms)");
+            }
+            limit.available.signalAll();
+        } finally {
+            limit.lock.unlock();
+        }
+    }
+}
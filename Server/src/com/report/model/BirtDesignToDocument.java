@@ -0,0 +1,845 @@
+package com.report.model;
+
+import org.eclipse.birt.report.engine.api.*;
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.core.framework.Platform;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Classe per generazione documenti BIRT
+ * Supporta PDF, XLSX, HTML, DOC
+ *
+ * Se costruita con un IReportEngine condiviso (modalità daemon/server) non
+ * avvia né chiude la Platform: il ciclo di vita dell'engine resta al chiamante.
+ */
+class BirtDesignToDocument {
+    private static final Logger LOG = Logger.getLogger(BirtDesignToDocument.class.getName());
+
+    static final List<String> FORMATS = List.of("PDF", "XLSX", "HTML", "DOC");
+
+    /**
+     * Oltre questa dimensione il JSON non viene più copiato in una stringa
+     * nei parametri del report: il design legge le righe da "JsonRows"
+     */
+    static final long MAX_INLINE_JSON_BYTES = ServerConfig.longSetting("report.json.maxInlineBytes", 32L * 1024 * 1024);
+
+    private final String sourceJson;
+    private final String sourceBirt;
+    private final byte[] designBytes;
+    private final String outputDir;
+    private final String birtHome;
+    private final IReportEngine sharedEngine;
+    private DesignCache designCache;
+    private JsonDataFetcher dataFetcher;
+    private CompletableFuture<JsonDataFetcher.JsonData> pendingData;
+    private JsonDataHandle data;
+    private Map<String, String> parameters = Map.of();
+    private ReportMetrics.Timings timings;
+
+    public BirtDesignToDocument(String sourceJson, String sourceBirt, String outputDir, String birtHome) {
+        this.sourceJson = sourceJson;
+        this.sourceBirt = sourceBirt;
+        this.designBytes = null;
+        this.outputDir = outputDir;
+        this.birtHome = birtHome;
+        this.sharedEngine = null;
+    }
+
+    public BirtDesignToDocument(String sourceJson, String sourceBirt, String outputDir, IReportEngine engine) {
+        this.sourceJson = sourceJson;
+        this.sourceBirt = sourceBirt;
+        this.designBytes = null;
+        this.outputDir = outputDir;
+        this.birtHome = null;
+        this.sharedEngine = engine;
+    }
+
+    /**
+     * Design ricevuto in memoria (es. upload HTTP): nessun file temporaneo
+     */
+    public BirtDesignToDocument(String sourceJson, String designName, byte[] designBytes, IReportEngine engine) {
+        this.sourceJson = sourceJson;
+        this.sourceBirt = designName;
+        this.designBytes = designBytes;
+        this.outputDir = null;
+        this.birtHome = null;
+        this.sharedEngine = engine;
+    }
+
+    /**
+     * Usa una cache condivisa dei design compilati (e dei loro parametri)
+     */
+    BirtDesignToDocument withDesignCache(DesignCache designCache) {
+        this.designCache = designCache;
+        return this;
+    }
+
+    /**
+     * Scarica i dati JSON lato Java (client condiviso e cache) invece di
+     * lasciare che sia il data source del design a leggere l'URL
+     */
+    BirtDesignToDocument withDataFetcher(JsonDataFetcher dataFetcher) {
+        this.dataFetcher = dataFetcher;
+        return this;
+    }
+
+    /**
+     * Dati già in arrivo (lettura avviata dal chiamante con fetchAsync)
+     */
+    BirtDesignToDocument withData(CompletableFuture<JsonDataFetcher.JsonData> pendingData) {
+        this.pendingData = pendingData;
+        return this;
+    }
+
+    /**
+     * Valori espliciti dei parametri del report (hanno la precedenza sul JSON),
+     * convertiti nel tipo dichiarato dal design
+     */
+    BirtDesignToDocument withParameters(Map<String, String> parameters) {
+        this.parameters = parameters;
+        return this;
+    }
+
+    /**
+     * Registra in timings la durata delle fasi e le righe lette
+     */
+    BirtDesignToDocument withTimings(ReportMetrics.Timings timings) {
+        this.timings = timings;
+        return this;
+    }
+
+    /**
+     * Avvia la Platform BIRT e crea un engine
+     */
+    static IReportEngine startEngine(String birtHome) throws BirtException {
+        return createEngine(startPlatform(birtHome));
+    }
+
+    /**
+     * Avvia la Platform BIRT (una volta per JVM) e restituisce la configurazione engine
+     */
+    static EngineConfig startPlatform(String birtHome) throws BirtException {
+        EngineConfig config = new EngineConfig();
+        config.setEngineHome(birtHome);
+        config.setLogConfig(birtHome, Level.WARNING); // Solo WARNING per ridurre log
+
+        Platform.startup(config);
+        return config;
+    }
+
+    /**
+     * Crea un engine sulla Platform già avviata
+     */
+    static IReportEngine createEngine(EngineConfig config) {
+        IReportEngineFactory factory = (IReportEngineFactory) Platform.createFactoryObject(
+            IReportEngineFactory.EXTENSION_REPORT_ENGINE_FACTORY
+        );
+        return factory.createReportEngine(config);
+    }
+
+    /**
+     * Distrugge l'engine e chiude la Platform BIRT
+     */
+    static void stopEngine(IReportEngine engine) {
+        engine.destroy();
+        Platform.shutdown();
+    }
+
+    /**
+     * Genera un documento nel formato specificato
+     */
+    public String generateDocument(String format) throws Exception {
+        RenderOption options = createRenderOption(format);
+        if (options == null) {
+            System.err.println("Formato non supportato: " + format);
+            return null;
+        }
+
+        String extension = extension(format);
+        LocalTime now = LocalTime.now();
+        String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
+        String namefile = "report" + timeString + "." + extension;
+        String fullPath = outputDir + "/" + namefile;
+
+        options.setOutputFileName(fullPath);
+        render(options, extension);
+
+        System.out.println(extension.toUpperCase() + " generato: " + fullPath);
+        return fullPath;
+    }
+
+    /**
+     * Genera un documento scrivendolo sullo stream indicato
+     * @return true se la generazione ha successo, false se il formato non è supportato
+     */
+    public boolean generateDocument(String format, OutputStream out) throws Exception {
+        RenderOption options = createRenderOption(format);
+        if (options == null) {
+            System.err.println("Formato non supportato: " + format);
+            return false;
+        }
+
+        options.setOutputStream(out);
+        render(options, extension(format));
+        return true;
+    }
+
+    /**
+     * Destinazione dell'output di un formato: file o stream
+     */
+    interface OutputTarget {
+        void configure(RenderOption options, String format) throws IOException;
+    }
+
+    /**
+     * Esegue il design una sola volta e genera tutti i formati richiesti su file
+     * @return path dei file generati, nell'ordine dei formati
+     */
+    public List<String> generateDocuments(List<String> formats) throws Exception {
+        LocalTime now = LocalTime.now();
+        String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
+        List<String> paths = new ArrayList<>();
+
+        generateDocuments(formats, (options, format) -> {
+            String fullPath = outputDir + "/report" + timeString + "." + extension(format);
+            options.setOutputFileName(fullPath);
+            paths.add(fullPath);
+        });
+
+        for (int i = 0; i < paths.size(); i++) {
+            System.out.println(formats.get(i).toUpperCase() + " generato: " + paths.get(i));
+        }
+        return paths;
+    }
+
+    /**
+     * Esegue il design una sola volta (IRunTask su un .rptdocument intermedio)
+     * e lo renderizza in ogni formato con IRenderTask: i data set e il layout
+     * vengono calcolati una volta sola, qualunque sia il numero di formati.
+     */
+    public void generateDocuments(List<String> formats, OutputTarget target) throws Exception {
+        for (String format : formats) {
+            if (createRenderOption(format) == null) {
+                throw new IllegalArgumentException("Formato non supportato: " + format);
+            }
+        }
+
+        startDataFetch();
+        try {
+            IReportEngine engine = sharedEngine != null ? sharedEngine : timedStartEngine();
+            Path reportDocument = Files.createTempFile("report", ".rptdocument");
+            try {
+                DesignCache.Entry design = openDesign(engine);
+
+                IRunTask runTask = engine.createRunTask(design.runnable);
+                try {
+                    setJsonParameters(design, runTask);
+                    setParameters(design, runTask);
+                    ReportMetrics.Phase run = phase(ReportMetrics.RUN);
+                    runTask.run(reportDocument.toString());
+                    run.end();
+                } finally {
+                    runTask.close();
+                    releaseData();
+                }
+
+                IReportDocument document = engine.openReportDocument(reportDocument.toString());
+                try {
+                    if (timings != null) {
+                        timings.addPages(document.getPageCount());
+                    }
+                    for (String format : formats) {
+                        RenderOption options = createRenderOption(format);
+                        options.setOutputFormat(extension(format));
+                        target.configure(options, format);
+
+                        IRenderTask renderTask = engine.createRenderTask(document);
+                        try {
+                            renderTask.setRenderOption(options);
+                            ReportMetrics.Phase render = phase(ReportMetrics.RENDER);
+                            renderTask.render();
+                            render.end();
+                        } finally {
+                            renderTask.close();
+                        }
+                    }
+                } finally {
+                    document.close();
+                }
+            } finally {
+                Files.deleteIfExists(reportDocument);
+                if (sharedEngine == null) {
+                    stopEngine(engine);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * Destinazione dei documenti della modalità burst: riceve un documento
+     * alla volta (le chiamate non si sovrappongono), nell'ordine di fine render
+     */
+    interface BurstSink {
+        void accept(String name, byte[] document) throws IOException;
+    }
+
+    /**
+     * Esito di un record della modalità burst
+     */
+    static class BurstRecord {
+        final int index;
+        final String name;
+        volatile long bytes;
+        volatile String error;
+
+        BurstRecord(int index, String name) {
+            this.index = index;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Engine per il render di un record del burst, da chiudere a render finito
+     */
+    interface RecordEngine extends AutoCloseable {
+        IReportEngine engine();
+
+        /**
+         * L'engine non è più affidabile (Error durante il render)
+         */
+        void markBroken();
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Fornisce un engine per ogni record del burst, attendendo che se ne
+     * liberi uno: la lettura dell'array procede al passo dei render
+     */
+    interface RecordEngines {
+        RecordEngine acquire() throws Exception;
+    }
+
+    /**
+     * Modalità burst (mail merge): un documento per ogni elemento dell'array
+     * JSON, ad es. una fattura per cliente
+     *
+     * Il design viene aperto una volta e lo stesso IReportRunnable serve fino a
+     * parallelism task in parallelo sull'engine. Ogni task riceve come dati il
+     * solo elemento, nella stessa forma del documento originale ([elemento],
+     * oppure annidato secondo report.json.rowsPath). Gli elementi vengono letti
+     * in streaming: in memoria ci sono solo quelli in lavorazione.
+     *
+     * Il nome di ogni file è il valore di keyField (caratteri non ammessi
+     * sostituiti da "_"), oppure record00001, record00002... in ordine di array;
+     * i nomi ripetuti ricevono un suffisso -2, -3... Un record che fallisce non
+     * ferma gli altri: l'errore resta nel suo BurstRecord.
+     *
+     * @return esito di ogni record, nell'ordine dell'array
+     */
+    List<BurstRecord> generateBurst(String format, String keyField, int parallelism, BurstSink sink) throws Exception {
+        checkBurst(format);
+        IReportEngine engine = sharedEngine != null ? sharedEngine : timedStartEngine();
+        try {
+            Semaphore slots = new Semaphore(Math.max(1, parallelism));
+            return generateBurst(format, keyField, () -> {
+                slots.acquire();
+                return new RecordEngine() {
+                    @Override
+                    public IReportEngine engine() {
+                        return engine;
+                    }
+
+                    @Override
+                    public void markBroken() {
+                    }
+
+                    @Override
+                    public void close() {
+                        slots.release();
+                    }
+                };
+            }, sink);
+        } finally {
+            if (sharedEngine == null) {
+                stopEngine(engine);
+            }
+        }
+    }
+
+    /**
+     * Come generateBurst(format, keyField, parallelism, sink), con un engine
+     * per record preso da engines (es. una lease del pool per record): il
+     * parallelismo è quello concesso da engines. Se il primo engine non
+     * arriva il burst fallisce; per i record successivi l'errore resta nel
+     * BurstRecord.
+     */
+    List<BurstRecord> generateBurst(String format, String keyField, RecordEngines engines, BurstSink sink)
+            throws Exception {
+        checkBurst(format);
+        RecordEngine first = acquireEngine(engines);
+        try {
+            DesignCache.Entry design = openDesign(first.engine());
+            String rowsPath = JsonRowSource.configuredRowsPath();
+            ReportMetrics.Phase discovery = phase(ReportMetrics.PARAMETERS);
+            List<DesignCache.ParameterInfo> designParameters = design.parameters();
+            discovery.end();
+            ReportMetrics.Phase dataWait = phase(ReportMetrics.DATA_FETCH);
+            JsonRowSource records = sourceJson.startsWith("http")
+                ? JsonRowSource.of(JsonDataFetcher.await(pendingData).body, rowsPath, null)
+                : JsonRowSource.of(Paths.get(sourceJson), rowsPath, null);
+            dataWait.end();
+
+            List<BurstRecord> results = new ArrayList<>();
+            Map<String, Integer> names = new HashMap<>();
+            AtomicReference<IOException> sinkError = new AtomicReference<>();
+            ObjectMapper mapper = new ObjectMapper();
+            String extension = extension(format);
+
+            try (records; ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                while (sinkError.get() == null && records.hasNext()) {
+                    Map<String, Object> record = records.next();
+                    BurstRecord result = new BurstRecord(results.size(),
+                        burstName(record.get(keyField), results.size(), names) + "." + extension);
+                    results.add(result);
+                    byte[] json = mapper.writeValueAsBytes(wrapRecord(record, rowsPath));
+
+                    // Lettura dell'array al passo dei render: un record in memoria per engine ottenuto
+                    RecordEngine slot;
+                    if (first != null) {
+                        slot = first;
+                        first = null;
+                    } else {
+                        try {
+                            slot = acquireEngine(engines);
+                        } catch (Exception e) {
+                            result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                            continue;
+                        }
+                    }
+                    executor.submit(() -> {
+                        try (slot) {
+                            byte[] document;
+                            try {
+                                // Il design aperto dal primo engine vale solo per i suoi task
+                                DesignCache.Entry recordDesign = slot.engine() == design.engine
+                                    ? design : openDesign(slot.engine());
+                                document = renderRecord(slot.engine(), recordDesign, designParameters, format,
+                                    sourceJson + "#" + result.name, json);
+                            } catch (Exception e) {
+                                result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                                return null;
+                            } catch (Error e) {
+                                slot.markBroken();
+                                result.error = e.toString();
+                                throw e;
+                            }
+                            result.bytes = document.length;
+                            synchronized (sink) {
+                                if (sinkError.get() == null) {
+                                    try {
+                                        sink.accept(result.name, document);
+                                    } catch (IOException e) {
+                                        // Destinazione non più scrivibile (es. client disconnesso): stop
+                                        sinkError.compareAndSet(null, e);
+                                    }
+                                }
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+            if (timings != null) {
+                timings.addRows(results.size());
+            }
+            if (sinkError.get() != null) {
+                throw sinkError.get();
+            }
+            return results;
+        } finally {
+            if (first != null) {
+                // Nessun record: il primo engine non è stato usato
+                first.close();
+            }
+        }
+    }
+
+    private void checkBurst(String format) {
+        if (createRenderOption(format) == null) {
+            throw new IllegalArgumentException("Formato non supportato: " + format);
+        }
+        if (sourceJson.startsWith("http") && pendingData == null && dataFetcher == null) {
+            throw new IllegalStateException("La modalità burst richiede i dati letti lato Java (report.dataFetch.enabled)");
+        }
+        startDataFetch();
+    }
+
+    private RecordEngine acquireEngine(RecordEngines engines) throws Exception {
+        ReportMetrics.Phase wait = phase(ReportMetrics.ENGINE_WAIT);
+        try {
+            return engines.acquire();
+        } finally {
+            wait.end();
+        }
+    }
+
+    /**
+     * Render di un singolo record in memoria
+     */
+    private byte[] renderRecord(IReportEngine engine, DesignCache.Entry design,
+                                List<DesignCache.ParameterInfo> designParameters, String format,
+                                String name, byte[] json) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IRunAndRenderTask task = engine.createRunAndRenderTask(design.runnable);
+        JsonDataHandle handle = JsonDataHandle.register(new JsonDataFetcher.JsonData(name, json, null, null),
+            design.jsonProjection());
+        try {
+            bindData(design, task, handle, designParameters);
+            setParameters(design, task);
+            RenderOption options = createRenderOption(format);
+            options.setOutputFormat(extension(format));
+            options.setOutputStream(out);
+            task.setRenderOption(options);
+            ReportMetrics.Phase run = phase(ReportMetrics.RUN);
+            task.run();
+            run.end();
+        } finally {
+            task.close();
+            handle.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Il record nella forma del documento originale: [record] oppure, con
+     * rowsPath "data.items", {"data": {"items": [record]}}
+     */
+    private static Object wrapRecord(Map<String, Object> record, String rowsPath) {
+        Object wrapped = List.of(record);
+        if (!rowsPath.isEmpty()) {
+            String[] path = rowsPath.split("\\.");
+            for (int i = path.length - 1; i >= 0; i--) {
+                wrapped = Map.of(path[i], wrapped);
+            }
+        }
+        return wrapped;
+    }
+
+    /**
+     * Nome deterministico del file: valore della chiave o numero del record
+     */
+    private static String burstName(Object key, int index, Map<String, Integer> names) {
+        String name = key == null ? "" : key.toString().strip().replaceAll("[^A-Za-z0-9._-]", "_");
+        if (name.isEmpty() || name.startsWith(".") || name.length() > 100) {
+            name = String.format("record%05d", index + 1);
+        }
+        int count = names.merge(name, 1, Integer::sum);
+        return count == 1 ? name : name + "-" + count;
+    }
+
+    /**
+     * Interpreta una lista di formati separati da virgola (es. "PDF,XLSX,HTML")
+     * @return formati in maiuscolo senza duplicati, o null se uno non è supportato
+     */
+    static List<String> parseFormats(String value) {
+        List<String> formats = new ArrayList<>();
+        for (String token : value.split(",")) {
+            String format = token.strip().toUpperCase();
+            if (format.isEmpty()) {
+                continue;
+            }
+            if (!FORMATS.contains(format)) {
+                return null;
+            }
+            if (!formats.contains(format)) {
+                formats.add(format);
+            }
+        }
+        return formats.isEmpty() ? null : formats;
+    }
+
+    /**
+     * Opzioni di render per il formato: PDF, DOC (Word), XLSX (Excel), HTML
+     */
+    static RenderOption createRenderOption(String format) {
+        switch (format.toUpperCase()) {
+            case "PDF":
+                return new PDFRenderOption();
+            case "DOC":
+                return new RenderOption();
+            case "XLSX":
+                return new EXCELRenderOption();
+            case "HTML":
+                return new HTMLRenderOption();
+            default:
+                return null;
+        }
+    }
+
+    static String extension(String format) {
+        return format.toLowerCase();
+    }
+
+    /**
+     * MIME type per il formato
+     */
+    static String mimeType(String format) {
+        switch (format.toUpperCase()) {
+            case "PDF":
+                return "application/pdf";
+            case "XLSX":
+                return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+            case "HTML":
+                return "text/html";
+            case "DOC":
+                return "application/msword";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    /**
+     * Esegue il run-and-render del design con le opzioni indicate
+     */
+    private void render(RenderOption options, String extension) throws Exception {
+        startDataFetch();
+        try {
+            IReportEngine engine = sharedEngine != null ? sharedEngine : timedStartEngine();
+            try {
+                DesignCache.Entry design = openDesign(engine);
+                IRunAndRenderTask task = engine.createRunAndRenderTask(design.runnable);
+                try {
+                    setJsonParameters(design, task);
+                    setParameters(design, task);
+
+                    options.setOutputFormat(extension);
+
+                    task.setRenderOption(options);
+                    ReportMetrics.Phase run = phase(ReportMetrics.RUN);
+                    task.run();
+                    run.end();
+                } finally {
+                    task.close();
+                    releaseData();
+                }
+            } finally {
+                if (sharedEngine == null) {
+                    stopEngine(engine);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * Avvia subito la lettura dell'API JSON: avvio engine, apertura design e
+     * creazione del task procedono in parallelo, i dati si attendono solo in
+     * setJsonParameters
+     */
+    private void startDataFetch() {
+        if (pendingData == null && dataFetcher != null && sourceJson.startsWith("http")) {
+            pendingData = dataFetcher.fetchAsync(sourceJson);
+        }
+    }
+
+    /**
+     * Apre il design da file o dai byte ricevuti, passando dalla cache se presente
+     */
+    private DesignCache.Entry openDesign(IReportEngine engine) throws Exception {
+        ReportMetrics.Phase open = phase(ReportMetrics.DESIGN_OPEN);
+        try {
+            if (designCache != null) {
+                byte[] bytes = designBytes != null ? designBytes : Files.readAllBytes(Paths.get(sourceBirt));
+                return designCache.get(engine, sourceBirt, bytes);
+            }
+            if (designBytes != null) {
+                return DesignCache.open(engine, sourceBirt, designBytes);
+            }
+            return new DesignCache.Entry(null, engine.openReportDesign(sourceBirt), engine, 0);
+        } finally {
+            open.end();
+        }
+    }
+
+    /**
+     * Engine della CLI (senza engine condiviso): avvio Platform misurato
+     */
+    private IReportEngine timedStartEngine() throws BirtException {
+        ReportMetrics.Phase startup = phase(ReportMetrics.STARTUP);
+        IReportEngine engine = startEngine(birtHome);
+        startup.end();
+        return engine;
+    }
+
+    private ReportMetrics.Phase phase(String name) {
+        return new ReportMetrics.Phase(timings, name);
+    }
+
+    private void releaseData() throws IOException {
+        if (data != null) {
+            if (timings != null) {
+                timings.addRows(data.rowsRead());
+            }
+            data.close();
+            data = null;
+        }
+    }
+
+    /**
+     * Imposta i parametri JSON per il report
+     */
+    private void setJsonParameters(DesignCache.Entry design, IEngineTask task) throws Exception {
+        if(sourceJson.startsWith("http") && pendingData == null) {
+            // API URL - passa direttamente
+            task.setParameterValue("JsonSource", "");
+            task.setParameterValue("json", sourceJson);
+            return;
+        }
+
+        // Definizioni dei parametri (lette una volta per design) prima di attendere i dati
+        ReportMetrics.Phase discovery = phase(ReportMetrics.PARAMETERS);
+        List<DesignCache.ParameterInfo> parameters = design.parameters();
+        discovery.end();
+
+        // Dati registrati come handle: righe in streaming ("JsonRows") e
+        // handle ("JsonData") nell'app context
+        if (sourceJson.startsWith("http")) {
+            // API URL già scaricata (o in cache): passata come un file locale
+            ReportMetrics.Phase dataWait = phase(ReportMetrics.DATA_FETCH);
+            JsonDataFetcher.JsonData fetched = JsonDataFetcher.await(pendingData);
+            dataWait.end();
+            data = JsonDataHandle.register(fetched, design.jsonProjection());
+        } else {
+            // File locale - letto solo se e quando il design lo chiede
+            data = JsonDataHandle.register(Paths.get(sourceJson), design.jsonProjection());
+        }
+        bindData(design, task, data, parameters);
+    }
+
+    /**
+     * Passa i dati dell'handle al task: app context e parametro dei dati,
+     * oppure (design senza dichiarazione) JSON in tutti i parametri stringa
+     */
+    private static void bindData(DesignCache.Entry design, IEngineTask task, JsonDataHandle data,
+                                 List<DesignCache.ParameterInfo> parameters) throws IOException {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> appContext = new HashMap<>(task.getAppContext());
+        appContext.put(JsonRowSource.APP_CONTEXT_KEY, data.lazyRows());
+        appContext.put(JsonDataHandle.APP_CONTEXT_KEY, data);
+        task.setAppContext(appContext);
+
+        // Il design dichiara il parametro dei dati: riceve solo l'ID dell'handle
+        String dataParameter = design.dataParameter();
+        if (dataParameter != null) {
+            task.setParameterValue(dataParameter, data.id());
+            return;
+        }
+
+        // Design senza dichiarazione: JSON in tutti i parametri stringa, se non troppo grande
+        List<String> stringParameters = new ArrayList<>();
+        for (DesignCache.ParameterInfo param : parameters) {
+            if (param.dataType == IScalarParameterDefn.TYPE_STRING) {
+                stringParameters.add(param.name);
+            }
+        }
+        if (stringParameters.isEmpty()) {
+            return;
+        }
+        long size = data.size();
+        if (size > MAX_INLINE_JSON_BYTES) {
+            if (!design.readsDataHandle()) {
+                // Senza dati il report uscirebbe vuoto con esito positivo
+                throw new IllegalStateException("JSON di " + size + " byte oltre report.json.maxInlineBytes ("
+                    + MAX_INLINE_JSON_BYTES + "): il design deve leggere le righe da "
+                    + JsonRowSource.APP_CONTEXT_KEY + " o dichiarare il parametro dei dati ("
+                    + JsonDataHandle.DATA_PARAMETER_PROPERTY + ")");
+            }
+            LOG.info("JSON di " + size + " byte oltre report.json.maxInlineBytes: parametri "
+                + stringParameters + " non impostati, il design legge " + JsonRowSource.APP_CONTEXT_KEY);
+            return;
+        }
+        String json = data.text();
+        for (String name : stringParameters) {
+            task.setParameterValue(name, json);
+        }
+    }
+
+    /**
+     * Imposta i parametri espliciti (withParameters) nel tipo dichiarato
+     * @throws IllegalArgumentException se un valore non è convertibile
+     */
+    private void setParameters(DesignCache.Entry design, IEngineTask task) {
+        if (parameters.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> types = new HashMap<>();
+        for (DesignCache.ParameterInfo param : design.parameters()) {
+            types.put(param.name, param.dataType);
+        }
+        for (Map.Entry<String, String> param : parameters.entrySet()) {
+            Integer type = types.get(param.getKey());
+            if (type == null) {
+                throw new IllegalArgumentException("Parametro '" + param.getKey() + "' non presente nel design");
+            }
+            task.setParameterValue(param.getKey(), convertParameter(param.getKey(), param.getValue(), type));
+        }
+    }
+
+    private static Object convertParameter(String name, String value, int dataType) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            switch (dataType) {
+                case IScalarParameterDefn.TYPE_INTEGER:
+                    return Integer.valueOf(value.strip());
+                case IScalarParameterDefn.TYPE_FLOAT:
+                    return Double.valueOf(value.strip());
+                case IScalarParameterDefn.TYPE_DECIMAL:
+                    return new BigDecimal(value.strip());
+                case IScalarParameterDefn.TYPE_BOOLEAN:
+                    return Boolean.valueOf(value.strip());
+                case IScalarParameterDefn.TYPE_DATE:
+                    return java.sql.Date.valueOf(value.strip());
+                case IScalarParameterDefn.TYPE_TIME:
+                    return java.sql.Time.valueOf(value.strip());
+                case IScalarParameterDefn.TYPE_DATE_TIME:
+                    return java.sql.Timestamp.valueOf(LocalDateTime.parse(value.strip()));
+                default:
+                    return value;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Valore non valido per il parametro '" + name + "': " + value, e);
+        }
+    }
+}
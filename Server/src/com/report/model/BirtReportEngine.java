@@ -1,15 +1,14 @@
 package com.report.model;
 
-import org.eclipse.birt.report.engine.api.*;
-import org.eclipse.birt.core.framework.Platform;
-
-import java.nio.charset.StandardCharsets;
+import java.io.BufferedOutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collection;
-import java.util.logging.Level;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Wrapper CLI per generazione report BIRT
@@ -25,10 +24,41 @@ import java.util.logging.Level;
  *      "C:/Users/stage01/reports/output" \
  *      "C:/Users/stage01/reports/birt" \
  *      "PDF"
+ *
+ * Più formati con una sola esecuzione del report: "PDF,XLSX,HTML"
+ * (viene stampata una riga SUCCESS:<path> per ogni file)
+ *
+ * Modalità burst (un documento per elemento dell'array JSON, in parallelo,
+ * raccolti in <outputDir>/burst<HHmmss>.zip; keyField dà il nome ai file):
+ * java com.report.model.BirtReportEngine --burst <birtFile> <json> <outputDir> <birtHome> <format> [keyField]
+ *
+ * Modalità daemon (engine avviato una sola volta, job letti da stdin):
+ * java com.report.model.BirtReportEngine --daemon <birtHome>
+ *
+ * Modalità server HTTP (endpoint /api/reports/*, configurazione in ServerConfig):
+ * java -Dreport.port=5000 com.report.model.BirtReportEngine --server
  */
 public class BirtReportEngine {
     
     public static void main(String[] args) {
+        // Modalità daemon
+        if (args.length > 0 && args[0].equals("--daemon")) {
+            runDaemon(args);
+            return;
+        }
+        
+        // Modalità server HTTP
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer();
+            return;
+        }
+        
+        // Modalità burst (mail merge)
+        if (args.length > 0 && args[0].equals("--burst")) {
+            runBurst(args);
+            return;
+        }
+        
         // Validazione argomenti
         if (args.length != 5) {
             System.err.println("Errore: Numero argomenti non valido");
@@ -37,6 +67,10 @@ public class BirtReportEngine {
             System.err.println();
             System.err.println("Esempio:");
             System.err.println("  java BirtReportWrapper report.rptdesign https://api.com/data output/ birt/ PDF");
+            System.err.println();
+            System.err.println("Modalità daemon: java BirtReportWrapper --daemon <birtHome>");
+            System.err.println("Modalità server: java BirtReportWrapper --server");
+            System.err.println("Modalità burst:  java BirtReportWrapper --burst <birtFile> <json> <outputDir> <birtHome> <format> [keyField]");
             System.exit(1);
         }
         
@@ -64,6 +98,24 @@ public class BirtReportEngine {
                 outputDir,
                 birtHome
             );
+            if (JsonDataFetcher.enabled()) {
+                // Il fetch dell'API parte prima dell'avvio della Platform BIRT
+                document.withDataFetcher(new JsonDataFetcher(0, 0,
+                    ServerConfig.longSetting("report.dataFetch.timeoutSeconds", 60)));
+            }
+            
+            // Più formati (es. "PDF,XLSX"): una sola esecuzione, un SUCCESS per file
+            if (format.contains(",")) {
+                List<String> formats = BirtDesignToDocument.parseFormats(format);
+                if (formats == null) {
+                    System.err.println("Errore: formato non supportato in " + format);
+                    System.exit(1);
+                }
+                for (String outputPath : document.generateDocuments(formats)) {
+                    System.out.println("SUCCESS:" + outputPath);
+                }
+                System.exit(0);
+            }
             
             // Genera documento
             String outputPath = document.generateDocument(format);
@@ -83,242 +135,99 @@ public class BirtReportEngine {
             System.exit(1);
         }
     }
-}
-
-/**
- * Classe per generazione documenti BIRT
- * Supporta PDF, XLSX, HTML, DOC
- */
-class BirtDesignToDocument {
-    private final String sourceJson;
-    private final String sourceBirt;
-    private final String outputDir;
-    private final String birtHome;
-    private String json = "";
-    
-    public BirtDesignToDocument(String sourceJson, String sourceBirt, String outputDir, String birtHome) {
-        this.sourceJson = sourceJson;
-        this.sourceBirt = sourceBirt;
-        this.outputDir = outputDir;
-        this.birtHome = birtHome;
-    }
     
     /**
-     * Genera un documento nel formato specificato
+     * Un documento per elemento dell'array JSON, raccolti in uno ZIP
      */
-    public String generateDocument(String format) throws Exception {
-        switch (format.toUpperCase()) {
-            case "PDF":
-                return generatePDF();
-            case "DOC":
-                return generateDOC();
-            case "XLSX":
-                return generateXLSX();
-            case "HTML":
-                return generateHTML();
-            default:
-                System.err.println("Formato non supportato: " + format);
-                return null;
+    private static void runBurst(String[] args) {
+        if (args.length != 6 && args.length != 7) {
+            System.err.println("Usage: java BirtReportWrapper --burst <birtFile> <json> <outputDir> <birtHome> <format> [keyField]");
+            System.exit(1);
         }
-    }
-    
-    /**
-     * Genera documento PDF
-     */
-    private String generatePDF() throws Exception {
-        try {
-            EngineConfig config = new EngineConfig();
-            config.setEngineHome(birtHome);
-            config.setLogConfig(birtHome, Level.WARNING); // Solo WARNING per ridurre log
-            
-            Platform.startup(config);
-            IReportEngineFactory factory = (IReportEngineFactory) Platform.createFactoryObject(
-                IReportEngineFactory.EXTENSION_REPORT_ENGINE_FACTORY
-            );
-            IReportEngine engine = factory.createReportEngine(config);
-            IReportRunnable design = engine.openReportDesign(sourceBirt);
-            IRunAndRenderTask task = engine.createRunAndRenderTask(design);
-            
-            setJsonParameters(engine, design, task);
-            
-            LocalTime now = LocalTime.now();
-            String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
-            String namefile = "report" + timeString + ".pdf";
-            String fullPath = outputDir + "/" + namefile;
-            
-            PDFRenderOption options = new PDFRenderOption();
-            options.setOutputFileName(fullPath);
-            options.setOutputFormat("pdf");
-            
-            task.setRenderOption(options);
-            task.run();
-            task.close();
-            engine.destroy();
-            Platform.shutdown();
-            
-            System.out.println("PDF generato: " + fullPath);
-            return fullPath;
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw e;
+        String format = args[5].strip().toUpperCase();
+        if (!BirtDesignToDocument.FORMATS.contains(format)) {
+            System.err.println("Errore: formato non supportato: " + args[5]);
+            System.exit(1);
         }
-    }
-    
-    /**
-     * Genera documento DOC (Word)
-     */
-    private String generateDOC() throws Exception {
-        try {
-            EngineConfig config = new EngineConfig();
-            config.setEngineHome(birtHome);
-            config.setLogConfig(birtHome, Level.WARNING);
-            
-            Platform.startup(config);
-            IReportEngineFactory factory = (IReportEngineFactory) Platform.createFactoryObject(
-                IReportEngineFactory.EXTENSION_REPORT_ENGINE_FACTORY
-            );
-            IReportEngine engine = factory.createReportEngine(config);
-            IReportRunnable design = engine.openReportDesign(sourceBirt);
-            IRunAndRenderTask task = engine.createRunAndRenderTask(design);
-            
-            setJsonParameters(engine, design, task);
-            
-            LocalTime now = LocalTime.now();
-            String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
-            String namefile = "report" + timeString + ".doc";
-            String fullPath = outputDir + "/" + namefile;
-            
-            RenderOption options = new RenderOption();
-            options.setOutputFileName(fullPath);
-            options.setOutputFormat("doc");
-            
-            task.setRenderOption(options);
-            task.run();
-            task.close();
-            engine.destroy();
-            Platform.shutdown();
-            
-            System.out.println("DOC generato: " + fullPath);
-            return fullPath;
+        String keyField = args.length == 7 ? args[6] : null;
+        int parallelism = ServerConfig.intSetting("report.burst.parallelism", Runtime.getRuntime().availableProcessors());
+        String timeString = LocalTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        Path zipPath = Paths.get(args[3], "burst" + timeString + ".zip");
+        
+        List<BirtDesignToDocument.BurstRecord> records;
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(zipPath)))) {
+            BirtDesignToDocument document = new BirtDesignToDocument(args[2], args[1], args[3], args[4])
+                .withDataFetcher(new JsonDataFetcher(0, 0,
+                    ServerConfig.longSetting("report.dataFetch.timeoutSeconds", 60)));
+            records = document.generateBurst(format, keyField, parallelism,
+                (name, bytes) -> {
+                    zip.putNextEntry(new ZipEntry(name));
+                    zip.write(bytes);
+                    zip.closeEntry();
+                });
         } catch (Exception e) {
+            System.err.println("Errore durante la generazione: " + e.getMessage());
             e.printStackTrace();
-            throw e;
+            System.exit(1);
+            return;
         }
+        
+        // Lo ZIP è chiuso: esito per record
+        long failed = 0;
+        for (BirtDesignToDocument.BurstRecord record : records) {
+            if (record.error != null) {
+                failed++;
+                System.err.println("Record " + (record.index + 1) + " (" + record.name + "): " + record.error);
+            }
+        }
+        System.out.println(records.size() - failed + " documenti generati, " + failed + " falliti");
+        System.out.println("SUCCESS:" + zipPath);
+        System.exit(failed == 0 ? 0 : 2);
     }
     
     /**
-     * Genera documento XLSX (Excel)
+     * Avvia il report engine in modalità daemon
      */
-    private String generateXLSX() throws Exception {
+    private static void runDaemon(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java BirtReportWrapper --daemon <birtHome>");
+            System.exit(1);
+        }
+        
         try {
-            EngineConfig config = new EngineConfig();
-            config.setEngineHome(birtHome);
-            config.setLogConfig(birtHome, Level.WARNING);
-            
-            Platform.startup(config);
-            IReportEngineFactory factory = (IReportEngineFactory) Platform.createFactoryObject(
-                IReportEngineFactory.EXTENSION_REPORT_ENGINE_FACTORY
-            );
-            IReportEngine engine = factory.createReportEngine(config);
-            IReportRunnable design = engine.openReportDesign(sourceBirt);
-            IRunAndRenderTask task = engine.createRunAndRenderTask(design);
-            
-            setJsonParameters(engine, design, task);
-            
-            LocalTime now = LocalTime.now();
-            String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
-            String namefile = "report" + timeString + ".xlsx";
-            String fullPath = outputDir + "/" + namefile;
-            
-            EXCELRenderOption options = new EXCELRenderOption();
-            options.setOutputFileName(fullPath);
-            options.setOutputFormat("xlsx");
-            
-            task.setRenderOption(options);
-            task.run();
-            task.close();
-            engine.destroy();
-            Platform.shutdown();
-            
-            System.out.println("XLSX generato: " + fullPath);
-            return fullPath;
+            new ReportDaemon(args[1]).run();
+            System.exit(0);
         } catch (Exception e) {
+            System.err.println("Errore nel daemon: " + e.getMessage());
             e.printStackTrace();
-            throw e;
+            System.exit(1);
         }
     }
     
     /**
-     * Genera documento HTML
+     * Avvia il server HTTP con un pool di engine condiviso
      */
-    private String generateHTML() throws Exception {
+    private static void runServer() {
+        ServerConfig config = ServerConfig.load();
+        
         try {
-            EngineConfig config = new EngineConfig();
-            config.setEngineHome(birtHome);
-            config.setLogConfig(birtHome, Level.WARNING);
+            ReportHttpServer.setupLogging(config);
+            Files.createDirectories(config.birtHome);
             
-            Platform.startup(config);
-            IReportEngineFactory factory = (IReportEngineFactory) Platform.createFactoryObject(
-                IReportEngineFactory.EXTENSION_REPORT_ENGINE_FACTORY
-            );
-            IReportEngine engine = factory.createReportEngine(config);
-            IReportRunnable design = engine.openReportDesign(sourceBirt);
-            IRunAndRenderTask task = engine.createRunAndRenderTask(design);
-            
-            setJsonParameters(engine, design, task);
-            
-            LocalTime now = LocalTime.now();
-            String timeString = now.format(DateTimeFormatter.ofPattern("HHmmss"));
-            String namefile = "report" + timeString + ".html";
-            String fullPath = outputDir + "/" + namefile;
+            ReportEnginePool pool = ReportEnginePool.start(config.birtHome.toString(),
+                ReportEnginePool.Settings.fromConfig());
+            ReportHttpServer server = new ReportHttpServer(config, pool);
             
-            HTMLRenderOption options = new HTMLRenderOption();
-            options.setOutputFileName(fullPath);
-            options.setOutputFormat("html");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                pool.close();
+            }));
             
-            task.setRenderOption(options);
-            task.run();
-            task.close();
-            engine.destroy();
-            Platform.shutdown();
-            
-            System.out.println("HTML generato: " + fullPath);
-            return fullPath;
+            server.start();
         } catch (Exception e) {
+            System.err.println("Errore avvio server: " + e.getMessage());
             e.printStackTrace();
-            throw e;
-        }
-    }
-    
-    /**
-     * Imposta i parametri JSON per il report
-     */
-    private void setJsonParameters(IReportEngine engine, IReportRunnable design, IRunAndRenderTask task) throws Exception {
-        if(sourceJson.startsWith("http")) {
-            // API URL - passa direttamente
-            task.setParameterValue("JsonSource", json);
-            task.setParameterValue("json", sourceJson);
-        } else {
-            // File locale - leggi contenuto
-            json = new String(Files.readAllBytes(Paths.get(sourceJson)), StandardCharsets.UTF_8);
-            
-            // Imposta parametri dinamicamente
-            IGetParameterDefinitionTask paramTask = engine.createGetParameterDefinitionTask(design);
-            @SuppressWarnings("unchecked")
-            Collection<IParameterDefnBase> params = paramTask.getParameterDefns(false);
-            
-            for (IParameterDefnBase param : params) {
-                if (param instanceof IScalarParameterDefn) {
-                    IScalarParameterDefn scalarParam = (IScalarParameterDefn) param;
-                    String paramName = scalarParam.getName();
-                    int dataType = scalarParam.getDataType();
-                    
-                    if (dataType == IScalarParameterDefn.TYPE_STRING) {
-                        task.setParameterValue(paramName, json);
-                    }
-                }
-            }
-            paramTask.close();
+            System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,719 @@
+package com.report.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+/**
+ * Cache colonnare binaria dei dataset JSON
+ *
+ * Al primo uso le righe lette da JsonRowSource (stesso parser Jackson, stesse
+ * regole per l'array delle righe e la proiezione) vengono convertite in un
+ * file .jcol con una colonna tipizzata per campo: LONG, DOUBLE, BOOLEAN o
+ * STRING (testo con i valori ripetuti salvati una volta sola). Le esecuzioni
+ * successive mappano il file in memoria e leggono le colonne senza riparsare
+ * il JSON.
+ *
+ * Le righe restituite sono uguali a quelle di JsonRowSource: oggetti e array
+ * annidati, BigInteger e colonne con tipi misti (es. 1 e 2.5) sono salvati
+ * come testo JSON e riletti con Jackson; i campi assenti in una riga restano
+ * assenti (bitmap apposita), distinti dai null espliciti.
+ *
+ * La chiave è il path del file sorgente più dimensione e data di modifica (o
+ * l'hash del contenuto per i dati scaricati): quando la sorgente cambia viene
+ * creato un nuovo .jcol e quello vecchio rimosso. Oltre maxBytes nella
+ * cartella si eliminano i file usati meno di recente.
+ *
+ * Formato (big-endian):
+ *   int magic "JCOL", int versione, int righe, int colonne
+ *   per colonna: int lunghezza + nome UTF-8, byte tipo
+ *   per colonna: bitmap null, assenti e testo JSON (int parole + long[]),
+ *   poi i valori
+ *     LONG long[righe], DOUBLE double[righe], BOOLEAN byte[righe],
+ *     STRING int byte testo + (int lunghezza + UTF-8)... + int[righe] offset nel testo
+ *
+ * Il file mappato deve stare sotto i 2GB; oltre si usa JsonRowSource.
+ * Pubblica perché gli script dei design usano Dataset (vedi JsonDataHandle).
+ */
+public class ColumnarJsonCache {
+    private static final Logger LOG = Logger.getLogger(ColumnarJsonCache.class.getName());
+    private static final int MAGIC = 0x4A434F4C;
+    private static final int VERSION = 2;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String EXTENSION = ".jcol";
+
+    static final byte NULL = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+
+    private final Path directory;
+    private final String rowsPath;
+    private final long maxBytes;
+
+    /**
+     * @param maxBytes spazio massimo della cartella, 0 per nessun limite
+     */
+    ColumnarJsonCache(Path directory, String rowsPath, long maxBytes) {
+        this.directory = directory;
+        this.rowsPath = rowsPath;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache configurata da ServerConfig (report.json.columnar, report.json.columnarDir,
+     * report.json.columnarMaxBytes), o null se disattivata
+     */
+    static ColumnarJsonCache fromConfig() {
+        if (!Boolean.parseBoolean(ServerConfig.setting("report.json.columnar", "true"))) {
+            return null;
+        }
+        Path directory = Path.of(ServerConfig.setting("report.json.columnarDir",
+            ServerConfig.load().baseDir.resolve("columnar").toString()));
+        return new ColumnarJsonCache(directory, JsonRowSource.configuredRowsPath(),
+            ServerConfig.longSetting("report.json.columnarMaxBytes", 1024L * 1024 * 1024));
+    }
+
+    /**
+     * Dataset di un file JSON locale, convertito al primo uso
+     * @param projection campi da tenere, o null per tutti
+     */
+    Dataset open(Path source, JsonProjection projection) throws IOException {
+        Path file = source.toAbsolutePath().normalize();
+        // Proiezioni diverse dello stesso file sono sorgenti distinte
+        String sourceId = sha256(file + "|" + projectionKey(projection));
+        String version = sha256(Files.size(file) + "|" + Files.getLastModifiedTime(file).toMillis() + "|" + rowsPath
+            + "|" + VERSION);
+        return open(sourceId, version, () -> JsonRowSource.of(file, rowsPath, projection));
+    }
+
+    /**
+     * Dataset di un JSON in memoria (es. risposta di un'API), per hash del contenuto
+     * @param projection campi da tenere, o null per tutti
+     */
+    Dataset open(String sourceName, String contentHash, byte[] json, JsonProjection projection) throws IOException {
+        return open(sha256(sourceName + "|" + projectionKey(projection)),
+            sha256(contentHash + "|" + rowsPath + "|" + VERSION), () -> JsonRowSource.of(json, rowsPath, projection));
+    }
+
+    private static String projectionKey(JsonProjection projection) {
+        return projection == null ? "*" : projection.key();
+    }
+
+    private interface Source {
+        JsonRowSource open();
+    }
+
+    private Dataset open(String sourceId, String version, Source source) throws IOException {
+        Path file = directory.resolve(sourceId + "-" + version + EXTENSION);
+        if (!Files.exists(file)) {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, sourceId, ".tmp");
+            try {
+                long start = System.currentTimeMillis();
+                int rows;
+                try (JsonRowSource in = source.open()) {
+                    rows = ingest(in, tmp);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                LOG.info("Dataset JSON convertito in " + file.getFileName() + " (" + rows + " righe, "
+                    + Files.size(file) + " bytes, " + (System.currentTimeMillis() - start) + " ms)");
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            removeOldVersions(sourceId, file);
+            prune(file);
+        } else {
+            // Data di modifica come ultimo uso, per prune()
+            try {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e) {
+                LOG.fine("Impossibile aggiornare " + file + ": " + e.getMessage());
+            }
+        }
+        return Dataset.map(file);
+    }
+
+    /**
+     * Elimina le versioni precedenti dello stesso sorgente
+     */
+    private void removeOldVersions(String sourceId, Path current) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, sourceId + "-*" + EXTENSION)) {
+            for (Path file : files) {
+                if (!file.equals(current)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // es. Windows con il file ancora mappato: resta fino al prossimo giro
+                        LOG.fine("Impossibile eliminare " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.fine("Pulizia cache colonnare fallita: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina i file usati meno di recente finché la cartella supera maxBytes
+     */
+    private void prune(Path current) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> list = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : list) {
+                files.add(file);
+                total += Files.size(file);
+            }
+            files.sort(Comparator.comparing(ColumnarJsonCache::lastModified));
+        } catch (IOException | UncheckedIOException e) {
+            LOG.fine("Pulizia cache colonnare fallita: " + e.getMessage());
+            return;
+        }
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.equals(current)) {
+                continue;
+            }
+            try {
+                long size = Files.size(file);
+                Files.deleteIfExists(file);
+                total -= size;
+            } catch (IOException e) {
+                LOG.fine("Impossibile eliminare " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Legge le righe del JSON e scrive il file colonnare
+     * @return numero di righe
+     */
+    private int ingest(JsonRowSource source, Path target) throws IOException {
+        Map<String, ColumnBuilder> columns = new LinkedHashMap<>();
+        try {
+            return ingest(source, columns, target);
+        } finally {
+            for (ColumnBuilder column : columns.values()) {
+                column.close();
+            }
+        }
+    }
+
+    private int ingest(JsonRowSource source, Map<String, ColumnBuilder> columns, Path target) throws IOException {
+        int rows = 0;
+        while (source.hasNext()) {
+            for (Map.Entry<String, Object> field : source.next().entrySet()) {
+                column(columns, field.getKey()).add(rows, field.getValue());
+            }
+            rows++;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rows);
+            out.writeInt(columns.size());
+            for (ColumnBuilder column : columns.values()) {
+                byte[] name = column.name.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeByte(column.type);
+            }
+            for (ColumnBuilder column : columns.values()) {
+                column.write(out, rows);
+            }
+        }
+        return rows;
+    }
+
+    private ColumnBuilder column(Map<String, ColumnBuilder> columns, String name) {
+        ColumnBuilder column = columns.get(name);
+        if (column == null) {
+            column = new ColumnBuilder(name, directory);
+            columns.put(name, column);
+        }
+        return column;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Dataset colonnare mappato in memoria
+     */
+    public static final class Dataset {
+        private final MappedByteBuffer buffer;
+        private final int rowCount;
+        private final String[] names;
+        private final byte[] types;
+        private final Bitmap[] nulls;
+        private final Bitmap[] absent;
+        private final Bitmap[] json;
+        private final int[] dataOffsets;
+        private final int[] textOffsets;
+
+        private Dataset(MappedByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("File colonnare non valido");
+            }
+            rowCount = buffer.getInt(8);
+            int columnCount = buffer.getInt(12);
+            names = new String[columnCount];
+            types = new byte[columnCount];
+            nulls = new Bitmap[columnCount];
+            absent = new Bitmap[columnCount];
+            json = new Bitmap[columnCount];
+            dataOffsets = new int[columnCount];
+            textOffsets = new int[columnCount];
+
+            int position = 16;
+            for (int c = 0; c < columnCount; c++) {
+                int length = buffer.getInt(position);
+                names[c] = utf8(position + 4, length);
+                position += 4 + length;
+                types[c] = buffer.get(position++);
+            }
+            for (int c = 0; c < columnCount; c++) {
+                nulls[c] = new Bitmap(buffer, position);
+                position = nulls[c].end();
+                absent[c] = new Bitmap(buffer, position);
+                position = absent[c].end();
+                json[c] = new Bitmap(buffer, position);
+                position = json[c].end();
+                if (types[c] == STRING) {
+                    textOffsets[c] = position + 4;
+                    position += 4 + buffer.getInt(position);
+                }
+                dataOffsets[c] = position;
+                position += rowCount * width(types[c]);
+            }
+        }
+
+        static Dataset map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("File colonnare oltre 2GB: " + file);
+                }
+                return new Dataset(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        public int rowCount() {
+            return rowCount;
+        }
+
+        public List<String> columnNames() {
+            return List.of(names);
+        }
+
+        byte type(int column) {
+            return types[column];
+        }
+
+        /**
+         * La riga non ha il campo (diverso da un null esplicito)
+         */
+        public boolean isAbsent(int row, int column) {
+            checkRow(row);
+            return absent[column].get(row);
+        }
+
+        /**
+         * Valore della cella come in JsonRowSource: Integer o Long, Double,
+         * Boolean, String, Map, List, BigInteger o null (anche se assente)
+         */
+        public Object value(int row, int column) {
+            checkRow(row);
+            if (nulls[column].get(row) || absent[column].get(row)) {
+                return null;
+            }
+            int offset = dataOffsets[column] + row * width(types[column]);
+            switch (types[column]) {
+                case LONG:
+                    // Jackson usa Integer quando il numero ci sta
+                    long number = buffer.getLong(offset);
+                    return number == (int) number ? (Object) (int) number : (Object) number;
+                case DOUBLE:
+                    return buffer.getDouble(offset);
+                case BOOLEAN:
+                    return buffer.get(offset) != 0;
+                case STRING:
+                    int text = textOffsets[column] + buffer.getInt(offset);
+                    String value = utf8(text + 4, buffer.getInt(text));
+                    return json[column].get(row) ? parse(value) : value;
+                default:
+                    return null;
+            }
+        }
+
+        private void checkRow(int row) {
+            if (row < 0 || row >= rowCount) {
+                throw new IndexOutOfBoundsException("Riga " + row);
+            }
+        }
+
+        private static Object parse(String json) {
+            try {
+                return MAPPER.readValue(json, Object.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Valore JSON non valido nella cache colonnare", e);
+            }
+        }
+
+        /**
+         * Righe come mappe nome -> valore, lette dalle colonne una alla volta
+         */
+        public Iterator<Map<String, Object>> rows() {
+            return new Iterator<>() {
+                private int row;
+
+                @Override
+                public boolean hasNext() {
+                    return row < rowCount;
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (row >= rowCount) {
+                        throw new NoSuchElementException();
+                    }
+                    // Come JsonRowSource: i campi assenti nella riga non ci sono
+                    Map<String, Object> values = new LinkedHashMap<>();
+                    for (int c = 0; c < names.length; c++) {
+                        if (!absent[c].get(row)) {
+                            values.put(names[c], value(row, c));
+                        }
+                    }
+                    row++;
+                    return values;
+                }
+            };
+        }
+
+        private String utf8(int offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int width(byte type) {
+            switch (type) {
+                case LONG:
+                case DOUBLE:
+                    return 8;
+                case STRING:
+                    return 4;
+                case BOOLEAN:
+                    return 1;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * Bitmap nel file mappato: int parole + long[]
+     */
+    private static final class Bitmap {
+        private final MappedByteBuffer buffer;
+        private final int offset;
+        private final int words;
+
+        Bitmap(MappedByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.words = buffer.getInt(position);
+            this.offset = position + 4;
+        }
+
+        boolean get(int row) {
+            int word = row >>> 6;
+            return word < words && (buffer.getLong(offset + word * 8) & (1L << (row & 63))) != 0;
+        }
+
+        int end() {
+            return offset + words * 8;
+        }
+    }
+
+    /**
+     * Colonna in costruzione: al primo conflitto di tipo (o per valori che
+     * non sono Integer/Long, Double, Boolean o String) diventa STRING e i
+     * valori non stringa vengono salvati come testo JSON, così si rileggono
+     * con il tipo originale
+     */
+    private static final class ColumnBuilder implements Closeable {
+        /** Valori distinti ricordati per non ripeterli nel testo */
+        private static final int MAX_DICTIONARY = 4096;
+
+        final String name;
+        byte type = NULL;
+        private final Path tempDirectory;
+        private final BitSet nulls = new BitSet();
+        private final BitSet absent = new BitSet();
+        private final BitSet json = new BitSet();
+        private long[] longs;
+        private double[] doubles;
+        private byte[] booleans;
+        private int[] offsets;
+        private Map<String, Integer> dictionary;
+        private Path textFile;
+        private DataOutputStream text;
+        private long textSize;
+        private int size;
+
+        ColumnBuilder(String name, Path tempDirectory) {
+            this.name = name;
+            this.tempDirectory = tempDirectory;
+        }
+
+        void add(int row, Object value) throws IOException {
+            // Righe senza questo campo: assenti
+            absent.set(size, row);
+            size = row + 1;
+            if (value == null) {
+                nulls.set(row);
+                ensureCapacity(row);
+                return;
+            }
+
+            byte wanted = value instanceof Integer || value instanceof Long ? LONG
+                : value instanceof Double ? DOUBLE
+                : value instanceof Boolean ? BOOLEAN
+                : value instanceof String ? STRING
+                : NULL;
+            if (type == NULL) {
+                convert(wanted == NULL ? STRING : wanted, row);
+            } else if (type != wanted) {
+                convert(STRING, row);
+            }
+            ensureCapacity(row);
+
+            switch (type) {
+                case LONG:
+                    longs[row] = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    doubles[row] = ((Number) value).doubleValue();
+                    break;
+                case BOOLEAN:
+                    booleans[row] = (byte) ((Boolean) value ? 1 : 0);
+                    break;
+                default:
+                    if (value instanceof String) {
+                        offsets[row] = append((String) value);
+                    } else {
+                        json.set(row);
+                        offsets[row] = append(MAPPER.writeValueAsString(value));
+                    }
+            }
+        }
+
+        /**
+         * Cambia il tipo della colonna convertendo le righe già lette
+         */
+        private void convert(byte newType, int rows) throws IOException {
+            if (newType == type) {
+                return;
+            }
+            int capacity = Math.max(16, rows + 1);
+            switch (newType) {
+                case LONG:
+                    longs = new long[capacity];
+                    break;
+                case DOUBLE:
+                    doubles = new double[capacity];
+                    break;
+                case BOOLEAN:
+                    booleans = new byte[capacity];
+                    break;
+                default:
+                    // Il testo va su un file temporaneo: in memoria solo gli offset
+                    offsets = new int[capacity];
+                    dictionary = new HashMap<>();
+                    textFile = Files.createTempFile(tempDirectory, "column", ".tmp");
+                    text = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(textFile), 64 * 1024));
+                    for (int r = 0; r < rows; r++) {
+                        if (!nulls.get(r) && !absent.get(r) && type != NULL) {
+                            json.set(r);
+                            offsets[r] = append(previousText(r));
+                        }
+                    }
+            }
+            if (newType != LONG) {
+                longs = null;
+            }
+            if (newType != DOUBLE) {
+                doubles = null;
+            }
+            if (newType != BOOLEAN) {
+                booleans = null;
+            }
+            type = newType;
+        }
+
+        private String previousText(int row) {
+            switch (type) {
+                case LONG:
+                    return Long.toString(longs[row]);
+                case DOUBLE:
+                    return Double.toString(doubles[row]);
+                default:
+                    return Boolean.toString(booleans[row] != 0);
+            }
+        }
+
+        /**
+         * Aggiunge il testo (se non già visto) e ne restituisce l'offset
+         */
+        private int append(String value) throws IOException {
+            Integer known = dictionary.get(value);
+            if (known != null) {
+                return known;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (textSize + 4 + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Colonna " + name + " oltre 2GB di testo");
+            }
+            int offset = (int) textSize;
+            text.writeInt(bytes.length);
+            text.write(bytes);
+            textSize += 4 + bytes.length;
+            if (dictionary.size() < MAX_DICTIONARY) {
+                dictionary.put(value, offset);
+            }
+            return offset;
+        }
+
+        private void ensureCapacity(int row) {
+            switch (type) {
+                case LONG:
+                    if (row >= longs.length) {
+                        longs = Arrays.copyOf(longs, Math.max(row + 1, longs.length * 2));
+                    }
+                    break;
+                case DOUBLE:
+                    if (row >= doubles.length) {
+                        doubles = Arrays.copyOf(doubles, Math.max(row + 1, doubles.length * 2));
+                    }
+                    break;
+                case BOOLEAN:
+                    if (row >= booleans.length) {
+                        booleans = Arrays.copyOf(booleans, Math.max(row + 1, booleans.length * 2));
+                    }
+                    break;
+                case STRING:
+                    if (row >= offsets.length) {
+                        offsets = Arrays.copyOf(offsets, Math.max(row + 1, offsets.length * 2));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void write(DataOutputStream out, int rows) throws IOException {
+            absent.set(size, rows);
+            write(out, nulls);
+            write(out, absent);
+            write(out, json);
+            switch (type) {
+                case LONG:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeLong(r < longs.length ? longs[r] : 0);
+                    }
+                    break;
+                case DOUBLE:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeDouble(r < doubles.length ? doubles[r] : 0);
+                    }
+                    break;
+                case BOOLEAN:
+                    for (int r = 0; r < rows; r++) {
+                        out.writeByte(r < booleans.length ? booleans[r] : 0);
+                    }
+                    break;
+                case STRING:
+                    text.close();
+                    out.writeInt((int) textSize);
+                    Files.copy(textFile, out);
+                    for (int r = 0; r < rows; r++) {
+                        out.writeInt(r < offsets.length ? offsets[r] : 0);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private static void write(DataOutputStream out, BitSet bits) throws IOException {
+            long[] words = bits.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (text != null) {
+                text.close();
+                Files.deleteIfExists(textFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.report.model;
+
+import org.eclipse.birt.report.engine.api.EngineException;
+import org.eclipse.birt.report.engine.api.IGetParameterDefinitionTask;
+import org.eclipse.birt.report.engine.api.IParameterDefnBase;
+import org.eclipse.birt.report.engine.api.IReportEngine;
+import org.eclipse.birt.report.engine.api.IReportRunnable;
+import org.eclipse.birt.report.engine.api.IScalarParameterDefn;
+import org.eclipse.birt.report.model.api.ModuleHandle;
+import org.eclipse.birt.report.model.api.ScriptDataSetHandle;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Cache dei design compilati (IReportRunnable)
+ *
+ * La chiave è lo SHA-256 dei byte del .rptdesign insieme all'engine che lo
+ * apre: lo stesso design caricato più volte (anche con nomi diversi) viene
+ * interpretato una sola volta per engine. Un IReportRunnable appartiene
+ * all'engine che l'ha aperto e va usato solo con i suoi task, quindi con un
+ * pool di N engine un design ha fino a N voci. Per ogni voce si tengono
+ * anche le definizioni dei parametri, così IGetParameterDefinitionTask gira
+ * una sola volta per design ed engine, e i campi JSON usati dai suoi data set.
+ *
+ * Eviction LRU con limite sul numero di voci e sulla loro dimensione totale.
+ * Le voci di un engine del pool vengono scartate quando l'engine viene
+ * distrutto: nessun task di altri engine le sta usando.
+ */
+class DesignCache {
+    private static final Logger LOG = Logger.getLogger(DesignCache.class.getName());
+
+    /**
+     * Definizione di un parametro scalare del design
+     */
+    static class ParameterInfo {
+        final String name;
+        final int dataType;
+
+        ParameterInfo(String name, int dataType) {
+            this.name = name;
+            this.dataType = dataType;
+        }
+    }
+
+    /**
+     * Chiave di una voce: hash del design ed engine (per identità)
+     */
+    private static class Key {
+        final IReportEngine engine;
+        final String hash;
+
+        Key(IReportEngine engine, String hash) {
+            this.engine = engine;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).engine == engine && ((Key) other).hash.equals(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(engine) + hash.hashCode();
+        }
+    }
+
+    /**
+     * Design aperto da un engine, con i suoi parametri
+     */
+    static class Entry {
+        final String hash;
+        final IReportRunnable runnable;
+        final IReportEngine engine;
+        final long sizeBytes;
+        private List<ParameterInfo> parameters;
+        private String dataParameter;
+        private boolean dataParameterResolved;
+        private JsonProjection jsonProjection;
+        private boolean jsonProjectionResolved;
+        private Boolean readsDataHandle;
+
+        Entry(String hash, IReportRunnable runnable, IReportEngine engine, long sizeBytes) {
+            this.hash = hash;
+            this.runnable = runnable;
+            this.engine = engine;
+            this.sizeBytes = sizeBytes;
+        }
+
+        /**
+         * Parametri scalari del design (letti al primo uso, poi riutilizzati)
+         */
+        synchronized List<ParameterInfo> parameters() {
+            if (parameters == null) {
+                List<ParameterInfo> list = new ArrayList<>();
+                IGetParameterDefinitionTask paramTask = engine.createGetParameterDefinitionTask(runnable);
+                try {
+                    @SuppressWarnings("unchecked")
+                    Collection<IParameterDefnBase> params = paramTask.getParameterDefns(false);
+                    for (IParameterDefnBase param : params) {
+                        if (param instanceof IScalarParameterDefn) {
+                            IScalarParameterDefn scalarParam = (IScalarParameterDefn) param;
+                            list.add(new ParameterInfo(scalarParam.getName(), scalarParam.getDataType()));
+                        }
+                    }
+                } finally {
+                    paramTask.close();
+                }
+                parameters = List.copyOf(list);
+            }
+            return parameters;
+        }
+
+        /**
+         * Parametro che riceve l'handle dei dati JSON (vedi JsonDataHandle):
+         * proprietà utente "jsonDataParameter" del report o parametro "JsonHandle";
+         * null per i design che ricevono il JSON in tutti i parametri stringa
+         */
+        synchronized String dataParameter() {
+            if (!dataParameterResolved) {
+                dataParameterResolved = true;
+                String declared = runnable.getDesignHandle() == null ? null
+                    : runnable.getDesignHandle().getStringProperty(JsonDataHandle.DATA_PARAMETER_PROPERTY);
+                if (declared != null && !declared.isBlank()) {
+                    dataParameter = declared.strip();
+                } else {
+                    for (ParameterInfo param : parameters()) {
+                        if (param.name.equals(JsonDataHandle.DEFAULT_DATA_PARAMETER)) {
+                            dataParameter = param.name;
+                        }
+                    }
+                }
+            }
+            return dataParameter;
+        }
+
+        /**
+         * Gli scripted data set leggono i dati dall'app context ("JsonRows" o
+         * "JsonData"): il design funziona anche senza il JSON nei parametri
+         */
+        synchronized boolean readsDataHandle() {
+            if (readsDataHandle == null) {
+                readsDataHandle = false;
+                if (runnable.getDesignHandle() instanceof ModuleHandle) {
+                    for (Object item : ((ModuleHandle) runnable.getDesignHandle()).getAllDataSets()) {
+                        if (item instanceof ScriptDataSetHandle) {
+                            ScriptDataSetHandle script = (ScriptDataSetHandle) item;
+                            if (readsDataHandle(script.getOpen()) || readsDataHandle(script.getFetch())) {
+                                readsDataHandle = true;
+                            }
+                        }
+                    }
+                }
+            }
+            return readsDataHandle;
+        }
+
+        private static boolean readsDataHandle(String script) {
+            return script != null && (script.contains(JsonRowSource.APP_CONTEXT_KEY)
+                || script.contains(JsonDataHandle.APP_CONTEXT_KEY));
+        }
+
+        /**
+         * Campi JSON usati dai data set del design (vedi JsonProjection), o
+         * null se non determinabili o con report.json.projection=false
+         */
+        synchronized JsonProjection jsonProjection() {
+            if (!jsonProjectionResolved) {
+                jsonProjectionResolved = true;
+                if (JsonProjection.enabled()) {
+                    jsonProjection = JsonProjection.of(runnable.getDesignHandle());
+                    if (jsonProjection != null) {
+                        LOG.info("Proiezione JSON per il design " + hash + ", campi letti: " + jsonProjection);
+                    } else {
+                        LOG.fine("Campi JSON del design " + hash + ": tutti");
+                    }
+                }
+            }
+            return jsonProjection;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes;
+
+    DesignCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Cache dimensionata da ServerConfig (report.designCache.*)
+     */
+    static DesignCache fromConfig() {
+        return new DesignCache(
+            ServerConfig.intSetting("report.designCache.maxEntries", 100),
+            ServerConfig.longSetting("report.designCache.maxBytes", 64L * 1024 * 1024)
+        );
+    }
+
+    /**
+     * Design non in cache: aperto e mai memorizzato
+     */
+    static Entry open(IReportEngine engine, String name, byte[] designBytes) throws EngineException {
+        IReportRunnable runnable = engine.openReportDesign(name, new ByteArrayInputStream(designBytes));
+        return new Entry(sha256(designBytes), runnable, engine, designBytes.length);
+    }
+
+    /**
+     * Restituisce il design compilato dall'engine indicato, aprendolo se manca.
+     * La voce va usata solo con i task di quell'engine.
+     */
+    Entry get(IReportEngine engine, String name, byte[] designBytes) throws EngineException {
+        String hash = sha256(designBytes);
+        Key key = new Key(engine, hash);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        // Una sola apertura per design ed engine anche con richieste concorrenti
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> pending = loading.putIfAbsent(key, mine);
+        if (pending != null) {
+            hits.incrementAndGet();
+            return await(pending);
+        }
+
+        try {
+            // Un'altra richiesta può averlo appena aperto e rilasciato
+            entry = lookup(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                mine.complete(entry);
+                return entry;
+            }
+            misses.incrementAndGet();
+            IReportRunnable runnable = engine.openReportDesign(name, new ByteArrayInputStream(designBytes));
+            entry = new Entry(hash, runnable, engine, designBytes.length);
+            store(entry);
+            mine.complete(entry);
+            return entry;
+        } catch (EngineException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    private Entry lookup(Key key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    /**
+     * Scarta i design aperti da un engine che sta per essere distrutto
+     */
+    void evictEngine(IReportEngine engine) {
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.engine == engine) {
+                    totalBytes -= entry.sizeBytes;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * SHA-256 in esadecimale
+     */
+    static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    private void store(Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(new Key(entry.engine, entry.hash), entry);
+            if (previous != null) {
+                totalBytes -= previous.sizeBytes;
+            }
+            totalBytes += entry.sizeBytes;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while ((entries.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next();
+                if (eldest == entry) {
+                    continue;
+                }
+                totalBytes -= eldest.sizeBytes;
+                it.remove();
+                LOG.fine("Design rimosso dalla cache: " + eldest.hash);
+            }
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> pending) throws EngineException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attesa design interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EngineException) {
+                throw (EngineException) e.getCause();
+            }
+            throw new IllegalStateException("Apertura design fallita", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.report.model;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Archivio dei design registrati, indirizzato per contenuto
+ *
+ * Un design viene caricato una volta con POST /api/reports/designs e salvato
+ * come <sha256>.rptdesign nella directory dei design; l'hash è l'ID che i
+ * client passano poi a /generate (designId) al posto del file.
+ * Registrare due volte lo stesso contenuto restituisce lo stesso ID.
+ */
+class DesignRepository {
+    private static final Logger LOG = Logger.getLogger(DesignRepository.class.getName());
+    private static final Pattern DESIGN_ID = Pattern.compile("[0-9a-f]{64}");
+    private static final String EXTENSION = ".rptdesign";
+
+    /**
+     * Design registrato
+     */
+    static class StoredDesign {
+        final String id;
+        final Path path;
+        final byte[] data;
+
+        StoredDesign(String id, Path path, byte[] data) {
+            this.id = id;
+            this.path = path;
+            this.data = data;
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, StoredDesign> designs = new ConcurrentHashMap<>();
+
+    DesignRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Legge in memoria tutti i design già registrati
+     */
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - EXTENSION.length());
+                if (!DESIGN_ID.matcher(id).matches()) {
+                    continue;
+                }
+                byte[] data = Files.readAllBytes(file);
+                if (!DesignCache.sha256(data).equals(id)) {
+                    LOG.warning("Design ignorato, contenuto non corrisponde all'hash: " + file);
+                    continue;
+                }
+                designs.put(id, new StoredDesign(id, file, data));
+            }
+        }
+        LOG.info("Design registrati caricati: " + designs.size());
+    }
+
+    /**
+     * Registra un design (idempotente) e restituisce la voce salvata
+     */
+    StoredDesign register(byte[] data) throws IOException {
+        String id = DesignCache.sha256(data);
+        StoredDesign existing = designs.get(id);
+        if (existing != null) {
+            return existing;
+        }
+
+        Path target = directory.resolve(id + EXTENSION);
+        if (!Files.exists(target)) {
+            // Scrittura atomica: mai un file parziale con il nome definitivo
+            Path tmp = Files.createTempFile(directory, id, ".tmp");
+            try {
+                Files.write(tmp, data);
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            LOG.info("Design registrato: " + id + " (" + data.length + " bytes)");
+        }
+        StoredDesign stored = new StoredDesign(id, target, data);
+        StoredDesign raced = designs.putIfAbsent(id, stored);
+        return raced != null ? raced : stored;
+    }
+
+    /**
+     * Design registrato con l'ID indicato, o null se sconosciuto
+     */
+    StoredDesign get(String id) {
+        if (id == null || !DESIGN_ID.matcher(id).matches()) {
+            return null;
+        }
+        return designs.get(id);
+    }
+
+    List<StoredDesign> list() {
+        return new ArrayList<>(designs.values());
+    }
+}
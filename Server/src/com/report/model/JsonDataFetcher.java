@@ -0,0 +1,375 @@
+package com.report.model;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Lettura dei dati JSON dalle API (jsonApiUrl)
+ *
+ * Un solo HttpClient condiviso (HTTP/2 dove disponibile, connessioni keep-alive
+ * riutilizzate) al posto del fetch fatto dal data source del design a ogni
+ * render. Le risposte restano in cache per URL per ttlSeconds; scadute vengono
+ * rivalidate con If-None-Match / If-Modified-Since, e un 304 le rinnova senza
+ * riscaricare il contenuto. Le richieste concorrenti per lo stesso URL non in
+ * cache attendono la stessa lettura invece di scaricarlo ciascuna.
+ *
+ * Il corpo della risposta è tenuto in memoria per intero (hash, cache, cache
+ * colonnare e parametri lo leggono come byte[]): oltre report.dataFetch.maxBytes
+ * la lettura viene interrotta e il job fallisce, invece di esaurire l'heap.
+ */
+class JsonDataFetcher {
+    private static final Logger LOG = Logger.getLogger(JsonDataFetcher.class.getName());
+
+    /**
+     * Risposta di una sorgente JSON
+     */
+    static class JsonData {
+        final String url;
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final String hash;
+        private volatile long fetchedMillis;
+
+        JsonData(String url, byte[] body, String etag, String lastModified) {
+            this.url = url;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.hash = DesignCache.sha256(body);
+            this.fetchedMillis = System.currentTimeMillis();
+        }
+
+        String text() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Impronta del contenuto: ETag forte della sorgente o hash dei byte
+         */
+        String fingerprint() {
+            if (etag != null && !etag.startsWith("W/")) {
+                return "etag:" + etag;
+            }
+            return "sha256:" + hash;
+        }
+    }
+
+    private final HttpClient http;
+    private final Duration timeout;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final long maxBodyBytes;
+    private final LinkedHashMap<String, JsonData> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<JsonData>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+    private final AtomicLong downloads = new AtomicLong();
+    private long totalBytes;
+
+    JsonDataFetcher(long ttlSeconds, long maxBytes, long timeoutSeconds) {
+        this(ttlSeconds, maxBytes, timeoutSeconds, 0);
+    }
+
+    /**
+     * @param maxBodyBytes dimensione massima di una risposta, 0 per nessun limite
+     */
+    JsonDataFetcher(long ttlSeconds, long maxBytes, long timeoutSeconds, long maxBodyBytes) {
+        this.ttlMillis = ttlSeconds * 1000;
+        this.maxBytes = maxBytes;
+        this.maxBodyBytes = maxBodyBytes;
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+        this.http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+    }
+
+    /**
+     * Fetcher configurato da ServerConfig (report.dataCache.*, report.dataFetch.*)
+     */
+    static JsonDataFetcher fromConfig() {
+        return new JsonDataFetcher(
+            ServerConfig.longSetting("report.dataCache.ttlSeconds", 60),
+            ServerConfig.longSetting("report.dataCache.maxBytes", 64L * 1024 * 1024),
+            ServerConfig.longSetting("report.dataFetch.timeoutSeconds", 60),
+            ServerConfig.longSetting("report.dataFetch.maxBytes", 512L * 1024 * 1024)
+        );
+    }
+
+    /**
+     * Dati passati all'engine già scaricati (report.dataFetch.enabled, default
+     * true); false lascia il fetch al data source del design come in passato
+     */
+    static boolean enabled() {
+        return Boolean.parseBoolean(ServerConfig.setting("report.dataFetch.enabled", "true"));
+    }
+
+    /**
+     * Dati dell'URL, dalla cache se ancora validi
+     * @throws IOException se la sorgente non risponde o non risponde 200
+     */
+    JsonData fetch(String url) throws IOException, InterruptedException {
+        return await(fetchAsync(url));
+    }
+
+    /**
+     * Avvia la lettura dei dati senza bloccare: il chiamante intanto può
+     * preparare engine, design e task, e attendere i dati solo quando servono.
+     * Con una lettura dello stesso URL già in corso si attende quella.
+     */
+    CompletableFuture<JsonData> fetchAsync(String url) {
+        JsonData cached = fresh(url);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Una sola lettura per URL anche con richieste concorrenti
+        CompletableFuture<JsonData> mine = new CompletableFuture<>();
+        CompletableFuture<JsonData> pending = loading.putIfAbsent(url, mine);
+        if (pending != null) {
+            coalesced.incrementAndGet();
+            // Copia: annullare l'attesa di un chiamante non tocca gli altri
+            return pending.copy();
+        }
+        // Un'altra richiesta può averlo appena scaricato e messo in cache
+        cached = fresh(url);
+        if (cached != null) {
+            hits.incrementAndGet();
+            loading.remove(url, mine);
+            mine.complete(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<JsonData> download;
+        try {
+            download = download(url, cached(url));
+        } catch (RuntimeException e) {
+            download = CompletableFuture.failedFuture(e);
+        }
+        download.whenComplete((data, e) -> {
+            loading.remove(url, mine);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(data);
+            }
+        });
+        return mine.copy();
+    }
+
+    private CompletableFuture<JsonData> download(String url, JsonData cached) {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", "application/json")
+                .timeout(timeout);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("URL non valido: " + url, e));
+        }
+        if (cached != null && cached.etag != null) {
+            request.header("If-None-Match", cached.etag);
+        } else if (cached != null && cached.lastModified != null) {
+            request.header("If-Modified-Since", cached.lastModified);
+        }
+
+        return http.sendAsync(request.build(), info -> new LimitedBody(url, info, maxBodyBytes))
+            .thenApply(response -> received(url, cached, response));
+    }
+
+    /**
+     * Attende una lettura avviata con fetchAsync
+     */
+    static JsonData await(CompletableFuture<JsonData> pending) throws IOException, InterruptedException {
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Lettura dati fallita", cause);
+        }
+    }
+
+    private JsonData received(String url, JsonData cached, HttpResponse<byte[]> response) {
+        if (response.statusCode() == 304 && cached != null) {
+            cached.fetchedMillis = System.currentTimeMillis();
+            revalidated.incrementAndGet();
+            return cached;
+        }
+        if (response.statusCode() != 200) {
+            throw new CompletionException(new IOException("Risposta HTTP " + response.statusCode() + " da " + url));
+        }
+
+        downloads.incrementAndGet();
+        JsonData data = new JsonData(url, response.body(),
+            response.headers().firstValue("ETag").orElse(null),
+            response.headers().firstValue("Last-Modified").orElse(null));
+        store(data);
+        LOG.fine("Dati scaricati da " + url + " (" + data.body.length + " bytes, "
+            + response.version() + ")");
+        return data;
+    }
+
+    /**
+     * Corpo in memoria che si interrompe oltre maxBodyBytes: subito se lo
+     * dichiara Content-Length, altrimenti appena i byte ricevuti lo superano
+     */
+    private static class LimitedBody implements HttpResponse.BodySubscriber<byte[]> {
+        private final String url;
+        private final long maxBodyBytes;
+        private final HttpResponse.BodySubscriber<byte[]> bytes = HttpResponse.BodySubscribers.ofByteArray();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private long received;
+
+        LimitedBody(String url, HttpResponse.ResponseInfo info, long maxBodyBytes) {
+            this.url = url;
+            this.maxBodyBytes = maxBodyBytes;
+            long declared = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (maxBodyBytes > 0 && declared > maxBodyBytes) {
+                tooLarge(declared);
+            }
+            bytes.getBody().whenComplete((data, e) -> {
+                if (e != null) {
+                    body.completeExceptionally(e);
+                } else {
+                    body.complete(data);
+                }
+            });
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (body.isDone()) {
+                subscription.cancel();
+                return;
+            }
+            bytes.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                received += item.remaining();
+            }
+            if (maxBodyBytes > 0 && received > maxBodyBytes) {
+                subscription.cancel();
+                tooLarge(received);
+                return;
+            }
+            bytes.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            bytes.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            bytes.onComplete();
+        }
+
+        private void tooLarge(long size) {
+            body.completeExceptionally(new IOException("Risposta di " + url + " oltre report.dataFetch.maxBytes ("
+                + maxBodyBytes + " byte): " + (received > 0 ? "ricevuti " : "dichiarati ") + size + " byte"));
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Richieste servite da una lettura dello stesso URL già in corso
+     */
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    long revalidated() {
+        return revalidated.get();
+    }
+
+    long downloads() {
+        return downloads.get();
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private JsonData cached(String url) {
+        synchronized (cache) {
+            return cache.get(url);
+        }
+    }
+
+    /**
+     * Dati in cache ancora entro ttlSeconds, o null
+     */
+    private JsonData fresh(String url) {
+        JsonData cached = cached(url);
+        return cached != null && System.currentTimeMillis() - cached.fetchedMillis <= ttlMillis ? cached : null;
+    }
+
+    private void store(JsonData data) {
+        if (ttlMillis <= 0 || data.body.length > maxBytes) {
+            return;
+        }
+        synchronized (cache) {
+            JsonData previous = cache.put(data.url, data);
+            if (previous != null) {
+                totalBytes -= previous.body.length;
+            }
+            totalBytes += data.body.length;
+
+            Iterator<JsonData> it = cache.values().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                JsonData eldest = it.next();
+                if (eldest == data) {
+                    continue;
+                }
+                totalBytes -= eldest.body.length;
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.report.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Dati JSON di un job, passati al design per riferimento
+ *
+ * Un design che dichiara il parametro dei dati (proprietà utente del report
+ * "jsonDataParameter", oppure un parametro chiamato "JsonHandle") riceve in
+ * quel parametro solo l'ID dell'handle; gli altri parametri stringa mantengono
+ * i loro valori. Dagli script il contenuto si recupera con
+ *
+ *   var data = reportContext.getAppContext().get("JsonData");
+ *   // oppure Packages.com.report.model.JsonDataHandle.lookup(params["JsonHandle"].value)
+ *   var rows = data.rows();   // righe (cache colonnare o streaming), solo
+ *                             // con i campi usati dal design (JsonProjection)
+ *   var text = data.text();   // documento intero (una sola copia per job)
+ *
+ * L'handle resta registrato solo per la durata del task.
+ */
+public final class JsonDataHandle implements Closeable {
+    static final String APP_CONTEXT_KEY = "JsonData";
+    static final String DATA_PARAMETER_PROPERTY = "jsonDataParameter";
+    static final String DEFAULT_DATA_PARAMETER = "JsonHandle";
+
+    private static final Logger LOG = Logger.getLogger(JsonDataHandle.class.getName());
+    private static final Map<String, JsonDataHandle> REGISTRY = new ConcurrentHashMap<>();
+    private static final ColumnarJsonCache COLUMNAR = ColumnarJsonCache.fromConfig();
+
+    private final String id = UUID.randomUUID().toString();
+    private final JsonDataFetcher.JsonData fetched;
+    private final byte[] body;
+    private final Path file;
+    private final String rowsPath;
+    private final JsonProjection projection;
+    private final List<JsonRowSource> openRows = new ArrayList<>();
+    private final LongAdder rowsRead = new LongAdder();
+    private String text;
+
+    private JsonDataHandle(JsonDataFetcher.JsonData fetched, Path file, JsonProjection projection) {
+        this.fetched = fetched;
+        this.body = fetched != null ? fetched.body : null;
+        this.file = file;
+        this.rowsPath = JsonRowSource.configuredRowsPath();
+        this.projection = projection;
+    }
+
+    /**
+     * Registra dati già in memoria (risposta di JsonDataFetcher)
+     * @param projection campi usati dal design, o null per righe intere
+     */
+    static JsonDataHandle register(JsonDataFetcher.JsonData fetched, JsonProjection projection) {
+        return register(new JsonDataHandle(fetched, null, projection));
+    }
+
+    /**
+     * Registra un file JSON locale (letto solo quando il design lo chiede)
+     * @param projection campi usati dal design, o null per righe intere
+     */
+    static JsonDataHandle register(Path file, JsonProjection projection) {
+        return register(new JsonDataHandle(null, file, projection));
+    }
+
+    private static JsonDataHandle register(JsonDataHandle handle) {
+        REGISTRY.put(handle.id, handle);
+        return handle;
+    }
+
+    /**
+     * Handle registrato con l'ID ricevuto come parametro, o null
+     */
+    public static JsonDataHandle lookup(String id) {
+        return id == null ? null : REGISTRY.get(id);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Dimensione del documento in byte
+     */
+    public long size() throws IOException {
+        return body != null ? body.length : Files.size(file);
+    }
+
+    /**
+     * Righe del documento: per i file locali dalla cache colonnare se attiva
+     * (JSON convertito una volta sola), altrimenti in streaming con
+     * JsonRowSource. Le risposte delle API cambiano spesso e restano in
+     * streaming: convertirle costerebbe più della singola lettura. Le righe
+     * sono le stesse nei due casi.
+     */
+    public synchronized Iterator<Map<String, Object>> rows() {
+        if (COLUMNAR != null && file != null) {
+            try {
+                return counted(columnar().rows());
+            } catch (IOException | RuntimeException e) {
+                LOG.warning("Cache colonnare non disponibile, lettura in streaming: " + e.getMessage());
+            }
+        }
+        JsonRowSource rows = body != null ? JsonRowSource.of(body, rowsPath, projection)
+            : JsonRowSource.of(file, rowsPath, projection);
+        openRows.add(rows);
+        return counted(rows);
+    }
+
+    /**
+     * Righe lette dal design finora, da tutte le letture (per le metriche)
+     */
+    long rowsRead() {
+        return rowsRead.sum();
+    }
+
+    private Iterator<Map<String, Object>> counted(Iterator<Map<String, Object>> rows) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                Map<String, Object> row = rows.next();
+                rowsRead.increment();
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Righe lette solo al primo hasNext(): per l'app context ("JsonRows"),
+     * così i design che non le usano non pagano conversione né lettura
+     */
+    Iterator<Map<String, Object>> lazyRows() {
+        return new Iterator<>() {
+            private Iterator<Map<String, Object>> rows;
+
+            @Override
+            public boolean hasNext() {
+                if (rows == null) {
+                    rows = rows();
+                }
+                return rows.hasNext();
+            }
+
+            @Override
+            public Map<String, Object> next() {
+                if (rows == null) {
+                    rows = rows();
+                }
+                return rows.next();
+            }
+        };
+    }
+
+    /**
+     * Dataset colonnare mappato in memoria (convertito al primo uso, anche
+     * per i dati scaricati se lo script lo chiede esplicitamente)
+     */
+    public ColumnarJsonCache.Dataset columnar() throws IOException {
+        if (COLUMNAR == null) {
+            throw new IllegalStateException("Cache colonnare disattivata (report.json.columnar=false)");
+        }
+        return fetched != null ? COLUMNAR.open(fetched.url, fetched.hash, fetched.body, projection)
+            : COLUMNAR.open(file, projection);
+    }
+
+    /**
+     * Documento intero come stringa, creata alla prima richiesta e condivisa
+     */
+    public synchronized String text() throws IOException {
+        if (text == null) {
+            text = new String(body != null ? body : Files.readAllBytes(file), StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+
+    /**
+     * Rimuove l'handle dal registro e chiude le letture ancora aperte
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        REGISTRY.remove(id);
+        for (JsonRowSource rows : openRows) {
+            rows.close();
+        }
+        openRows.clear();
+        text = null;
+    }
+}
@@ -0,0 +1,203 @@
+package com.report.model;
+
+import org.eclipse.birt.report.model.api.ColumnHintHandle;
+import org.eclipse.birt.report.model.api.DataSetHandle;
+import org.eclipse.birt.report.model.api.DesignElementHandle;
+import org.eclipse.birt.report.model.api.ModuleHandle;
+import org.eclipse.birt.report.model.api.OdaResultSetColumnHandle;
+import org.eclipse.birt.report.model.api.ResultSetColumnHandle;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Campi JSON usati da un design
+ *
+ * Ricavati all'apertura del design (vedi DesignCache.Entry.jsonProjection())
+ * dai data set: nomi e native name delle colonne del result set, column hint
+ * e i nomi di campo citati negli script (r.get("x"), r["x"], r.x) dei data
+ * set, dei data source e del report (initialize, beforeFactory...), dove un
+ * helper può leggere le righe per conto dei data set. Se uno di questi script
+ * accede ai campi per nome calcolato (r.get(name), r[col], for (k in r),
+ * Object.keys(r)) o il report include file .js esterni, i campi non si
+ * possono ricavare e le righe restano intere. In alternativa il design li dichiara
+ * nella proprietà utente del report "jsonFields" (nomi separati da virgola),
+ * che ha sempre la precedenza.
+ *
+ * Le righe (JsonRows, JsonDataHandle.rows(), cache colonnare) contengono solo
+ * questi campi: gli altri vengono saltati durante il parsing senza costruirne
+ * il valore. Per i percorsi annidati ("address.city") si tiene il campo di
+ * primo livello. Il documento intero (text(), parametri stringa) non cambia.
+ */
+final class JsonProjection {
+    static final String FIELDS_PROPERTY = "jsonFields";
+
+    // Proprietà script per tipo di elemento (nomi del modello BIRT); quelle
+    // che un elemento non ha valgono null
+    private static final String[] REPORT_SCRIPTS = {
+        "initialize", "beforeFactory", "afterFactory", "beforeRender", "afterRender", "onPrepare" };
+    private static final String[] DATA_SOURCE_SCRIPTS = {
+        "open", "close", "beforeOpen", "afterOpen", "beforeClose", "afterClose" };
+    private static final String[] DATA_SET_SCRIPTS = {
+        "open", "fetch", "close", "describe", "beforeOpen", "afterOpen", "onFetch", "beforeClose", "afterClose" };
+
+    // ".nome" solo se non è una chiamata: in r.get("x") il nome è "x", non "get"
+    private static final Pattern SCRIPT_FIELD = Pattern.compile(
+        "(?:get\\(\\s*|\\[\\s*)[\"']([^\"']+)[\"']|\\.\\s*([A-Za-z_$][\\w$]*+)(?!\\s*\\()");
+    // Accessi con un nome non letterale: get(variabile), oggetto[variabile],
+    // for (k in r), Object.keys(r), keySet()/entrySet()/values()
+    private static final Pattern DYNAMIC_ACCESS = Pattern.compile(
+        "\\bget\\(\\s*+(?![\"')])"
+        + "|[\\w$)\\]]\\s*\\[\\s*+(?![\"'\\d\\]])"
+        + "|\\bfor\\s*(?:each\\s*)?\\(\\s*(?:var\\s+|let\\s+|const\\s+)?[\\w$]+\\s+in\\b"
+        + "|\\bObject\\.(?:keys|values|entries)\\s*\\("
+        + "|\\.(?:keySet|entrySet|values)\\s*\\(\\s*\\)");
+
+    private final Set<String> fields;
+    private final String key;
+
+    private JsonProjection(Set<String> fields) {
+        this.fields = Set.copyOf(fields);
+        this.key = String.join(",", fields);
+    }
+
+    /**
+     * Proiezione attiva (report.json.projection, default true)
+     */
+    static boolean enabled() {
+        return Boolean.parseBoolean(ServerConfig.setting("report.json.projection", "true"));
+    }
+
+    /**
+     * Campi del design, o null se non si possono determinare (nessun data
+     * set, nessuna colonna dichiarata, accessi dinamici negli script o script
+     * inclusi da file): in quel caso le righe restano intere
+     */
+    static JsonProjection of(DesignElementHandle design) {
+        if (!(design instanceof ModuleHandle)) {
+            return null;
+        }
+        Set<String> fields = new TreeSet<>();
+        String declared = design.getStringProperty(FIELDS_PROPERTY);
+        if (declared != null && !declared.isBlank()) {
+            for (String field : declared.split(",")) {
+                add(fields, field);
+            }
+            return fields.isEmpty() ? null : new JsonProjection(fields);
+        }
+
+        ModuleHandle module = (ModuleHandle) design;
+        Object included = module.getProperty("includeScripts");
+        if (included instanceof List && !((List<?>) included).isEmpty()) {
+            return null;
+        }
+        if (!addScripts(fields, module, REPORT_SCRIPTS)) {
+            return null;
+        }
+        for (Object dataSource : module.getAllDataSources()) {
+            if (dataSource instanceof DesignElementHandle
+                && !addScripts(fields, (DesignElementHandle) dataSource, DATA_SOURCE_SCRIPTS)) {
+                return null;
+            }
+        }
+
+        for (Object item : module.getAllDataSets()) {
+            if (!(item instanceof DataSetHandle)) {
+                continue;
+            }
+            DataSetHandle dataSet = (DataSetHandle) item;
+            for (Iterator<?> it = dataSet.resultSetIterator(); it != null && it.hasNext(); ) {
+                Object column = it.next();
+                if (column instanceof ResultSetColumnHandle) {
+                    add(fields, ((ResultSetColumnHandle) column).getColumnName());
+                }
+                if (column instanceof OdaResultSetColumnHandle) {
+                    add(fields, ((OdaResultSetColumnHandle) column).getNativeName());
+                }
+            }
+            for (Iterator<?> it = dataSet.columnHintsIterator(); it != null && it.hasNext(); ) {
+                Object hint = it.next();
+                if (hint instanceof ColumnHintHandle) {
+                    add(fields, ((ColumnHintHandle) hint).getColumnName());
+                }
+            }
+            if (!addScripts(fields, dataSet, DATA_SET_SCRIPTS)) {
+                return null;
+            }
+        }
+        return fields.isEmpty() ? null : new JsonProjection(fields);
+    }
+
+    /**
+     * Il campo di primo livello va letto
+     */
+    boolean contains(String field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * Campi in ordine, per le chiavi di cache
+     */
+    String key() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+    private static boolean addScripts(Set<String> fields, DesignElementHandle element, String... properties) {
+        for (String property : properties) {
+            if (!addScriptFields(fields, element.getStringProperty(property))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Aggiunge i nomi che lo script potrebbe leggere come campi: tenerne uno
+     * in più costa poco, perderne uno rompe il report
+     * @return false se lo script accede ai campi per nome calcolato
+     */
+    static boolean addScriptFields(Set<String> fields, String script) {
+        if (script == null) {
+            return true;
+        }
+        if (DYNAMIC_ACCESS.matcher(script).find()) {
+            return false;
+        }
+        Matcher matcher = SCRIPT_FIELD.matcher(script);
+        while (matcher.find()) {
+            add(fields, matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+        return true;
+    }
+
+    private static void add(Set<String> fields, String name) {
+        if (name == null) {
+            return;
+        }
+        String field = name.strip();
+        // "address.city" o "$.address.city": serve il campo "address"
+        if (field.startsWith("$.")) {
+            field = field.substring(2);
+        }
+        int dot = field.indexOf('.');
+        if (dot > 0) {
+            field = field.substring(0, dot);
+        }
+        int bracket = field.indexOf('[');
+        if (bracket > 0) {
+            field = field.substring(0, bracket);
+        }
+        if (!field.isEmpty()) {
+            fields.add(field);
+        }
+    }
+}
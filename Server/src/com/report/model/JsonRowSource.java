@@ -0,0 +1,236 @@
+package com.report.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Righe di un documento JSON lette in streaming
+ *
+ * Le righe sono gli elementi dell'array principale: la radice se è un array,
+ * altrimenti l'array indicato da rowsPath (es. "data.items") o il primo campo
+ * array dell'oggetto radice. Ogni elemento viene letto solo quando il data set
+ * lo chiede (next()), quindi in memoria c'è una riga alla volta e non l'intero
+ * documento.
+ *
+ * Viene messa nell'app context del task come "JsonRows": uno scripted data set
+ * la usa così
+ *
+ *   open:  rows = reportContext.getAppContext().get("JsonRows");
+ *   fetch: if (!rows.hasNext()) return false;
+ *          var row = rows.next(); row["campo"] ...; return true;
+ *
+ * I valori sono quelli di Jackson: String, Integer/Long/BigInteger, Double,
+ * Boolean, null, Map per gli oggetti annidati e List per gli array.
+ *
+ * Con una JsonProjection le righe contengono solo i campi usati dal design:
+ * gli altri vengono saltati dal parser senza costruirne il valore.
+ */
+class JsonRowSource implements Iterator<Map<String, Object>>, Closeable {
+    static final String APP_CONTEXT_KEY = "JsonRows";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    private final InputStream input;
+    private final String rowsPath;
+    private final JsonProjection projection;
+    private JsonParser parser;
+    private boolean ready;
+    private boolean finished;
+    private long rows;
+
+    private JsonRowSource(InputStream input, String rowsPath, JsonProjection projection) {
+        this.input = input;
+        this.rowsPath = rowsPath;
+        this.projection = projection;
+    }
+
+    /**
+     * Righe di un file JSON (il file viene aperto alla prima lettura)
+     */
+    static JsonRowSource of(Path file, String rowsPath, JsonProjection projection) {
+        return new JsonRowSource(new LazyFileInput(file), rowsPath, projection);
+    }
+
+    /**
+     * Righe di un JSON già in memoria (es. risposta di JsonDataFetcher)
+     */
+    static JsonRowSource of(byte[] json, String rowsPath, JsonProjection projection) {
+        return new JsonRowSource(new ByteArrayInputStream(json), rowsPath, projection);
+    }
+
+    /**
+     * Percorso dell'array delle righe da ServerConfig (report.json.rowsPath)
+     */
+    static String configuredRowsPath() {
+        return ServerConfig.setting("report.json.rowsPath", "");
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            if (!ready) {
+                ready = true;
+                parser = FACTORY.createParser(input);
+                finished = !moveToRows();
+            }
+            if (finished) {
+                return false;
+            }
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                finished = true;
+                close();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura JSON fallita alla riga " + rows, e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (finished || parser == null || parser.currentToken() == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            rows++;
+            if (parser.currentToken() == JsonToken.START_OBJECT && projection != null) {
+                return projectedRow();
+            }
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> row = MAPPER.readValue(parser, LinkedHashMap.class);
+                return row;
+            }
+            // Array di valori semplici: una colonna "value"
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("value", MAPPER.readValue(parser, Object.class));
+            return row;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura JSON fallita alla riga " + rows, e);
+        }
+    }
+
+    /**
+     * Riga con i soli campi della proiezione
+     */
+    private Map<String, Object> projectedRow() throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if (projection.contains(field)) {
+                row.put(field, MAPPER.readValue(parser, Object.class));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Righe lette finora
+     */
+    long rowCount() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (parser != null) {
+            parser.close();
+        }
+        input.close();
+    }
+
+    /**
+     * Posiziona il parser sull'inizio dell'array delle righe
+     * @return false se l'array non esiste
+     */
+    private boolean moveToRows() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return rowsPath.isEmpty();
+        }
+        if (token != JsonToken.START_OBJECT) {
+            return false;
+        }
+
+        String[] path = rowsPath.isEmpty() ? new String[0] : rowsPath.split("\\.");
+        int depth = 0;
+        while ((token = parser.nextToken()) != null && token != JsonToken.END_OBJECT) {
+            String field = parser.currentName();
+            token = parser.nextToken();
+            boolean wanted = path.length == 0 || field.equals(path[depth]);
+            if (!wanted) {
+                parser.skipChildren();
+                continue;
+            }
+            if (token == JsonToken.START_ARRAY && (path.length == 0 || depth == path.length - 1)) {
+                return true;
+            }
+            if (token == JsonToken.START_OBJECT && depth < path.length - 1) {
+                depth++;
+                continue;
+            }
+            parser.skipChildren();
+            if (path.length > 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Apre il file solo alla prima lettura: se il design non usa "JsonRows"
+     * il file non viene nemmeno aperto
+     */
+    private static class LazyFileInput extends InputStream {
+        private final Path file;
+        private InputStream in;
+
+        LazyFileInput(Path file) {
+            this.file = file;
+        }
+
+        private InputStream in() throws IOException {
+            if (in == null) {
+                in = Files.newInputStream(file);
+            }
+            return in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in().read(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.report.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parser minimale per richieste multipart/form-data
+ *
+ * Il body viene letto in memoria (con limite massimo) e diviso nelle sue
+ * parti: campi di testo e file restano come byte, senza file temporanei.
+ */
+class MultipartForm {
+
+    /**
+     * Body più grande del limite consentito
+     */
+    static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(long maxBytes) {
+            super("Body oltre il limite di " + maxBytes + " byte");
+        }
+    }
+
+    /**
+     * Una parte del form (campo o file)
+     */
+    static class Part {
+        final String name;
+        final String filename;
+        final byte[] data;
+
+        Part(String name, String filename, byte[] data) {
+            this.name = name;
+            this.filename = filename;
+            this.data = data;
+        }
+
+        String text() {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Map<String, Part> parts = new HashMap<>();
+
+    private MultipartForm() {
+    }
+
+    /**
+     * Legge e interpreta il body
+     * @throws IOException se il body non è multipart valido
+     */
+    static MultipartForm parse(String contentType, InputStream body, long maxBytes) throws IOException {
+        String boundary = boundary(contentType);
+        if (boundary == null) {
+            throw new IOException("Content-Type multipart/form-data con boundary mancante");
+        }
+
+        byte[] data = body.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBytes + 1));
+        if (data.length > maxBytes) {
+            throw new TooLargeException(maxBytes);
+        }
+
+        MultipartForm form = new MultipartForm();
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+        int pos = indexOf(data, delimiter, 0);
+        while (pos >= 0) {
+            int start = pos + delimiter.length;
+            // "--" dopo il delimitatore chiude il body
+            if (start + 1 < data.length && data[start] == '-' && data[start + 1] == '-') {
+                break;
+            }
+            int headersStart = start + 2; // salta CRLF
+            int headersEnd = indexOf(data, headerEnd, headersStart);
+            if (headersEnd < 0) {
+                throw new IOException("Header della parte multipart non terminati");
+            }
+            int next = indexOf(data, delimiter, headersEnd + headerEnd.length);
+            if (next < 0) {
+                throw new IOException("Delimitatore multipart finale mancante");
+            }
+
+            String headers = new String(data, headersStart, headersEnd - headersStart, StandardCharsets.UTF_8);
+            int contentStart = headersEnd + headerEnd.length;
+            int contentEnd = next - 2; // CRLF prima del delimitatore
+            form.addPart(headers, Arrays.copyOfRange(data, contentStart, Math.max(contentStart, contentEnd)));
+            pos = next;
+        }
+        return form;
+    }
+
+    /**
+     * Valore di un campo di testo, o null se assente
+     */
+    String field(String name) {
+        Part part = parts.get(name);
+        return part == null ? null : part.text();
+    }
+
+    /**
+     * Parte file, o null se assente
+     */
+    Part file(String name) {
+        Part part = parts.get(name);
+        return part == null || part.filename == null ? null : part;
+    }
+
+    private void addPart(String headers, byte[] content) {
+        String name = null;
+        String filename = null;
+        for (String header : headers.split("\r\n")) {
+            if (header.toLowerCase(Locale.ROOT).startsWith("content-disposition:")) {
+                name = headerParam(header, "name");
+                filename = headerParam(header, "filename");
+            }
+        }
+        if (name != null) {
+            parts.put(name, new Part(name, filename, content));
+        }
+    }
+
+    private static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/form-data")) {
+            return null;
+        }
+        return headerParam(contentType, "boundary");
+    }
+
+    /**
+     * Estrae un parametro (name=value o name="value") da un header
+     */
+    private static String headerParam(String header, String param) {
+        for (String token : header.split(";")) {
+            token = token.strip();
+            int eq = token.indexOf('=');
+            if (eq > 0 && token.substring(0, eq).strip().equalsIgnoreCase(param)) {
+                String value = token.substring(eq + 1).strip();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = Math.max(from, 0); i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
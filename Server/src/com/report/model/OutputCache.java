@@ -0,0 +1,300 @@
+package com.report.model;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Cache su disco dei report generati
+ *
+ * La chiave è lo SHA-256 di: hash del design, impronta dei dati (ETag della
+ * sorgente JSON, altrimenti hash del contenuto, vedi JsonDataFetcher),
+ * parametri e formato. La stessa chiave è usata come ETag della risposta,
+ * così i client possono rivalidare con If-None-Match senza riscaricare.
+ *
+ * I file stanno in <baseDir>/cache come <chiave>.<estensione>; eviction LRU
+ * con limite sulla dimensione totale e scadenza dopo ttlSeconds.
+ */
+class OutputCache {
+    private static final Logger LOG = Logger.getLogger(OutputCache.class.getName());
+    private static final Pattern FILE_NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z]+");
+
+    /**
+     * Report in cache
+     */
+    static class Entry {
+        final String key;
+        final Path path;
+        final long sizeBytes;
+        final long createdMillis;
+
+        Entry(String key, Path path, long sizeBytes, long createdMillis) {
+            this.key = key;
+            this.path = path;
+            this.sizeBytes = sizeBytes;
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private final Path directory;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long totalBytes;
+
+    OutputCache(Path directory, long maxBytes, long ttlSeconds) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Cache configurata da ServerConfig (report.outputCache.*)
+     */
+    static OutputCache fromConfig(ServerConfig config) {
+        return new OutputCache(
+            Paths.get(ServerConfig.setting("report.outputCache.dir", config.baseDir.resolve("cache").toString())),
+            ServerConfig.longSetting("report.outputCache.maxBytes", 512L * 1024 * 1024),
+            ServerConfig.longSetting("report.outputCache.ttlSeconds", 600)
+        );
+    }
+
+    /**
+     * Cache disattivata con maxBytes o ttlSeconds a 0
+     */
+    boolean enabled() {
+        return maxBytes > 0 && ttlMillis > 0;
+    }
+
+    /**
+     * Indicizza i report già presenti su disco e rimuove scaduti e file parziali
+     */
+    void load() throws IOException {
+        if (!enabled()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Entry> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!FILE_NAME.matcher(name).matches()) {
+                    if (name.endsWith(".tmp")) {
+                        Files.deleteIfExists(file);
+                    }
+                    continue;
+                }
+                found.add(new Entry(name.substring(0, name.indexOf('.')), file,
+                    Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+            }
+        }
+
+        // I più vecchi per primi: ordine LRU approssimato dalla data del file
+        found.sort(Comparator.comparingLong(e -> e.createdMillis));
+        synchronized (entries) {
+            for (Entry entry : found) {
+                if (expired(entry)) {
+                    delete(entry);
+                    continue;
+                }
+                entries.put(entry.key, entry);
+                totalBytes += entry.sizeBytes;
+            }
+            evict(null);
+        }
+        LOG.info("Report in cache: " + entries.size() + " (" + totalBytes + " bytes)");
+    }
+
+    /**
+     * Chiave del report: design, dati, parametri (in ordine di nome) e formato
+     */
+    static String key(String designHash, String dataFingerprint, Map<String, String> parameters, String format) {
+        StringBuilder key = new StringBuilder()
+            .append(designHash).append('\n')
+            .append(dataFingerprint).append('\n');
+        for (Map.Entry<String, String> param : new TreeMap<>(parameters).entrySet()) {
+            key.append(param.getKey()).append('=').append(param.getValue()).append('\n');
+        }
+        key.append(format);
+        return DesignCache.sha256(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Report in cache per la chiave, o null se assente o scaduto
+     */
+    Entry lookup(String key) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && (expired(entry) || !Files.exists(entry.path))) {
+                remove(entry);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Stream che scrive sulla destinazione e contemporaneamente su un file
+     * temporaneo; commit() lo rende visibile in cache, abort() lo scarta
+     */
+    Writer writer(String key, String extension, OutputStream target) throws IOException {
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        return new Writer(key, directory.resolve(key + "." + extension), tmp, target);
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long bytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    class Writer extends FilterOutputStream {
+        private final String key;
+        private final Path path;
+        private final Path tmp;
+        private final OutputStream file;
+        private boolean done;
+
+        private Writer(String key, Path path, Path tmp, OutputStream target) throws IOException {
+            super(target);
+            this.key = key;
+            this.path = path;
+            this.tmp = tmp;
+            this.file = Files.newOutputStream(tmp);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            file.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            file.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Il renderer chiude lo stream: la destinazione resta del chiamante
+            flush();
+        }
+
+        /**
+         * Salva il report in cache (scrittura atomica)
+         */
+        void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                file.close();
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            store(new Entry(key, path, Files.size(path), System.currentTimeMillis()));
+        }
+
+        /**
+         * Scarta il file parziale (generazione fallita)
+         */
+        void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                file.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Impossibile eliminare " + tmp, e);
+            }
+        }
+    }
+
+    private void store(Entry entry) {
+        synchronized (entries) {
+            Entry previous = entries.put(entry.key, entry);
+            if (previous != null) {
+                totalBytes -= previous.sizeBytes;
+            }
+            totalBytes += entry.sizeBytes;
+            evict(entry);
+        }
+    }
+
+    private void evict(Entry keep) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest == keep) {
+                continue;
+            }
+            totalBytes -= eldest.sizeBytes;
+            it.remove();
+            delete(eldest);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key) != null) {
+            totalBytes -= entry.sizeBytes;
+        }
+        delete(entry);
+    }
+
+    private boolean expired(Entry entry) {
+        return System.currentTimeMillis() - entry.createdMillis > ttlMillis;
+    }
+
+    private static void delete(Entry entry) {
+        try {
+            Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+            // es. Windows con il file ancora in lettura: verrà rimosso al prossimo avvio
+            LOG.log(Level.FINE, "Impossibile eliminare " + entry.path, e);
+        }
+    }
+}
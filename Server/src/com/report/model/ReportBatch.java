@@ -0,0 +1,550 @@
+package com.report.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generazione di più report in una sola richiesta (/api/reports/batch)
+ *
+ * Ogni job indica design (designId registrato o file del form multipart),
+ * jsonApiUrl, formati e parametri. I job girano in parallelo sul pool di
+ * engine condiviso (al massimo report.batch.parallelism alla volta, default
+ * la capacità del pool) e ogni report viene aggiunto allo ZIP della risposta
+ * appena pronto, nell'ordine in cui i job terminano. L'ultima voce è
+ * manifest.json con l'esito di ogni job.
+ *
+ * I design sono letti una volta per batch e aperti una volta per hash
+ * (DesignCache); i report già generati con gli stessi dati arrivano
+ * dall'OutputCache come in /generate.
+ */
+class ReportBatch {
+    private static final Logger LOG = Logger.getLogger(ReportBatch.class.getName());
+    private static final Pattern JOB_ID = Pattern.compile("[A-Za-z0-9._-]{1,100}");
+
+    static final String MANIFEST = "manifest.json";
+
+    /**
+     * Richiesta batch non valida (risposta 400)
+     */
+    static class InvalidBatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        InvalidBatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Un report da generare
+     */
+    static class Job {
+        final String id;
+        final String designName;
+        final byte[] designData;
+        final String designHash;
+        final String jsonApiUrl;
+        final List<String> formats;
+        final Map<String, String> parameters;
+
+        Job(String id, String designName, byte[] designData, String designHash, String jsonApiUrl,
+            List<String> formats, Map<String, String> parameters) {
+            this.id = id;
+            this.designName = designName;
+            this.designData = designData;
+            this.designHash = designHash;
+            this.jsonApiUrl = jsonApiUrl;
+            this.formats = formats;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * Design letto dalla richiesta, condiviso dai job che lo usano
+     */
+    private static class Design {
+        final String name;
+        final byte[] data;
+        final String hash;
+
+        Design(String name, byte[] data, String hash) {
+            this.name = name;
+            this.data = data;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Esito di un job: file generati (temporanei o in cache) o errore
+     */
+    static class Result {
+        final Job job;
+        final Map<String, Path> files = new LinkedHashMap<>();
+        final List<Path> temporary = new ArrayList<>();
+        String error;
+        boolean cached;
+        boolean noEngine;
+        long millis;
+
+        Result(Job job) {
+            this.job = job;
+        }
+    }
+
+    private final ReportEnginePool pool;
+    private final DesignCache designCache;
+    private final OutputCache outputCache;
+    private final JsonDataFetcher dataFetcher;
+    private final boolean passFetchedData;
+    private final ReportMetrics metrics;
+    private final int parallelism;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    ReportBatch(ReportEnginePool pool, DesignCache designCache, OutputCache outputCache,
+                JsonDataFetcher dataFetcher, boolean passFetchedData, ReportMetrics metrics) {
+        this.pool = pool;
+        this.designCache = designCache;
+        this.outputCache = outputCache;
+        this.dataFetcher = dataFetcher;
+        this.passFetchedData = passFetchedData;
+        this.metrics = metrics;
+        this.parallelism = Math.max(1, ServerConfig.intSetting("report.batch.parallelism", pool.capacity()));
+    }
+
+    /**
+     * Massimo numero di job per richiesta (report.batch.maxJobs)
+     */
+    static int maxJobs() {
+        return ServerConfig.intSetting("report.batch.maxJobs", 500);
+    }
+
+    /**
+     * Legge i job dalla richiesta
+     *
+     *   { "jobs": [ { "id": "fattura-1", "designId": "...", "jsonApiUrl": "https://...",
+     *                 "format": "PDF", "parameters": { "anno": "2024" } }, ... ] }
+     *
+     * Al posto di designId un job può indicare "birtFile": il nome della parte
+     * del form multipart con il .rptdesign (form è null per le richieste JSON).
+     */
+    static List<Job> parse(JsonNode root, MultipartForm form, DesignRepository designRepository)
+            throws InvalidBatchException {
+        JsonNode jobsNode = root == null ? null : root.isArray() ? root : root.get("jobs");
+        if (jobsNode == null || !jobsNode.isArray() || jobsNode.isEmpty()) {
+            throw new InvalidBatchException("Nessun job: serve un array \"jobs\"");
+        }
+        if (jobsNode.size() > maxJobs()) {
+            throw new InvalidBatchException("Troppi job: massimo " + maxJobs() + " per richiesta");
+        }
+
+        // Un design usato da più job viene letto e hashato una volta sola
+        Map<String, Design> designs = new HashMap<>();
+        Set<String> ids = new HashSet<>();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < jobsNode.size(); i++) {
+            JsonNode node = jobsNode.get(i);
+            String id = text(node, "id", String.format("job%03d", i + 1));
+            if (!JOB_ID.matcher(id).matches()) {
+                throw new InvalidBatchException("Job " + (i + 1) + ": id non valido (lettere, cifre, . _ -)");
+            }
+            if (!ids.add(id)) {
+                throw new InvalidBatchException("Job " + id + ": id duplicato");
+            }
+
+            Design design = design(node, id, form, designRepository, designs);
+
+            String jsonApiUrl = text(node, "jsonApiUrl", "").strip();
+            if (!jsonApiUrl.startsWith("http")) {
+                throw new InvalidBatchException("Job " + id + ": jsonApiUrl deve iniziare con http:// o https://");
+            }
+
+            String formatField = text(node, "format", "PDF");
+            List<String> formats = BirtDesignToDocument.parseFormats(formatField);
+            if (formats == null) {
+                throw new InvalidBatchException("Job " + id + ": formato '" + formatField.strip().toUpperCase()
+                    + "' non supportato. Usa: PDF, XLSX, HTML, DOC");
+            }
+
+            Map<String, String> parameters = new LinkedHashMap<>();
+            JsonNode params = node.get("parameters");
+            if (params != null && !params.isNull()) {
+                if (!params.isObject()) {
+                    throw new InvalidBatchException("Job " + id + ": parameters deve essere un oggetto");
+                }
+                for (Map.Entry<String, JsonNode> param : params.properties()) {
+                    parameters.put(param.getKey(), param.getValue().isNull() ? null : param.getValue().asText());
+                }
+            }
+
+            jobs.add(new Job(id, design.name, design.data, design.hash, jsonApiUrl,
+                formats, parameters));
+        }
+        return jobs;
+    }
+
+    private static Design design(JsonNode node, String id, MultipartForm form, DesignRepository designRepository,
+                                 Map<String, Design> designs) throws InvalidBatchException {
+        String designId = text(node, "designId", null);
+        if (designId != null && !designId.isBlank()) {
+            String key = "id:" + designId.strip();
+            Design known = designs.get(key);
+            if (known == null) {
+                DesignRepository.StoredDesign stored = designRepository.get(designId.strip());
+                if (stored == null) {
+                    throw new InvalidBatchException("Job " + id + ": design '" + designId.strip() + "' non registrato");
+                }
+                known = new Design(stored.path.toString(), stored.data, stored.id);
+                designs.put(key, known);
+            }
+            return known;
+        }
+
+        String partName = text(node, "birtFile", null);
+        if (partName == null || form == null) {
+            throw new InvalidBatchException("Job " + id + ": designId mancante"
+                + (form == null ? "" : " (oppure birtFile con il nome della parte del form)"));
+        }
+        String key = "part:" + partName;
+        Design known = designs.get(key);
+        if (known == null) {
+            MultipartForm.Part file = form.file(partName);
+            if (file == null) {
+                throw new InvalidBatchException("Job " + id + ": file '" + partName + "' non presente nel form");
+            }
+            if (!file.filename.toLowerCase().endsWith(".rptdesign")) {
+                throw new InvalidBatchException("Job " + id + ": tipo file non valido. Usa .rptdesign");
+            }
+            known = new Design(file.filename, file.data, DesignCache.sha256(file.data));
+            designs.put(key, known);
+        }
+        return known;
+    }
+
+    private static String text(JsonNode node, String field, String defaultValue) {
+        JsonNode value = node == null ? null : node.get(field);
+        return value == null || value.isNull() ? defaultValue : value.asText();
+    }
+
+    /**
+     * Esegue i job e scrive lo ZIP (report + manifest.json) su out, che non
+     * viene chiuso. Se la scrittura fallisce (client disconnesso) i job non
+     * ancora terminati vengono interrotti.
+     */
+    void run(List<Job> jobs, OutputStream out) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Semaphore slots = new Semaphore(parallelism, true);
+        List<Result> results = new ArrayList<>();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        boolean completed = false;
+        try {
+            ExecutorCompletionService<Result> done = new ExecutorCompletionService<>(executor);
+            for (Job job : jobs) {
+                done.submit(() -> {
+                    slots.acquire();
+                    try {
+                        return execute(job);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new NonClosingStream(out), 64 * 1024));
+            for (int i = 0; i < jobs.size(); i++) {
+                Result result = take(done);
+                results.add(result);
+                try {
+                    write(zip, result);
+                } finally {
+                    deleteTemporary(result);
+                }
+            }
+
+            results.sort(Comparator.comparingInt(r -> jobs.indexOf(r.job)));
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest(results, start)));
+            zip.closeEntry();
+            zip.close();
+            completed = true;
+        } finally {
+            if (!completed) {
+                executor.shutdownNow();
+            }
+            executor.close();
+            if (!completed) {
+                // Job terminati dopo l'interruzione: file temporanei da eliminare
+                for (Result result : results) {
+                    deleteTemporary(result);
+                }
+            }
+        }
+
+        long failed = results.stream().filter(r -> r.error != null).count();
+        LOG.info("Batch completato: " + jobs.size() + " job, " + failed + " falliti ("
+            + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Aggiunge allo ZIP i file del job. Il file viene aperto prima di creare
+     * la voce: se un report in cache è stato rimosso nel frattempo il job
+     * risulta fallito invece di lasciare una voce vuota
+     */
+    private static void write(ZipOutputStream zip, Result result) throws IOException {
+        for (Map.Entry<String, Path> file : result.files.entrySet()) {
+            InputStream in;
+            try {
+                in = Files.newInputStream(file.getValue());
+            } catch (IOException e) {
+                result.error = "Report non più disponibile: " + file.getKey();
+                return;
+            }
+            try (in) {
+                zip.putNextEntry(new ZipEntry(file.getKey()));
+                in.transferTo(zip);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static Result take(ExecutorCompletionService<Result> done) throws InterruptedException {
+        Future<Result> future = done.take();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // execute() non propaga eccezioni: qui solo errori gravi (es. OutOfMemoryError)
+            throw new IllegalStateException("Job interrotto", e.getCause());
+        }
+    }
+
+    /**
+     * Genera i report di un job in file temporanei (o li prende dalla cache);
+     * i file temporanei vanno eliminati con deleteTemporary()
+     */
+    Result execute(Job job) throws InterruptedException {
+        Result result = new Result(job);
+        long start = System.currentTimeMillis();
+        ReportMetrics.Timings timings = metrics.start(job.id, job.designName, job.designHash,
+            String.join(",", job.formats));
+        // Senza passaggio dei dati e senza cache i dati li legge il design
+        CompletableFuture<JsonDataFetcher.JsonData> pendingData = passFetchedData || outputCache.enabled()
+            ? dataFetcher.fetchAsync(job.jsonApiUrl) : null;
+        List<OutputStream> files = new ArrayList<>();
+        List<OutputCache.Writer> writers = new ArrayList<>();
+        boolean rendered = false;
+        try {
+            // Tutti i formati già in cache: nessun render
+            Map<String, String> keys = new LinkedHashMap<>();
+            if (outputCache.enabled()) {
+                JsonDataFetcher.JsonData data = JsonDataFetcher.await(pendingData);
+                Map<String, String> keyParams = new HashMap<>(job.parameters);
+                keyParams.put("jsonApiUrl", job.jsonApiUrl);
+                for (String format : job.formats) {
+                    keys.put(format, OutputCache.key(job.designHash, data.fingerprint(), keyParams, format));
+                }
+                Map<String, Path> hits = new LinkedHashMap<>();
+                for (String format : job.formats) {
+                    OutputCache.Entry cached = outputCache.lookup(keys.get(format));
+                    if (cached == null) {
+                        break;
+                    }
+                    hits.put(entryName(job, format), cached.path);
+                }
+                if (hits.size() == job.formats.size()) {
+                    result.files.putAll(hits);
+                    result.cached = true;
+                    rendered = true;
+                    return result;
+                }
+            }
+
+            Map<String, OutputStream> outputs = new HashMap<>();
+            for (String format : job.formats) {
+                String extension = BirtDesignToDocument.extension(format);
+                Path file = Files.createTempFile("batch", "." + extension);
+                result.temporary.add(file);
+                result.files.put(entryName(job, format), file);
+                OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file));
+                files.add(stream);
+                if (keys.isEmpty()) {
+                    outputs.put(format, stream);
+                } else {
+                    OutputCache.Writer writer = outputCache.writer(keys.get(format), extension, stream);
+                    writers.add(writer);
+                    outputs.put(format, writer);
+                }
+            }
+
+            ReportMetrics.Phase acquire = timings.begin(ReportMetrics.ENGINE_WAIT);
+            try (ReportEnginePool.Lease lease = pool.acquire(String.join(",", job.formats))) {
+                acquire.end();
+                try {
+                    BirtDesignToDocument document = new BirtDesignToDocument(job.jsonApiUrl, job.designName,
+                            job.designData, lease.engine())
+                        .withDesignCache(designCache)
+                        .withData(passFetchedData ? pendingData : null)
+                        .withParameters(job.parameters)
+                        .withTimings(timings);
+                    if (job.formats.size() > 1) {
+                        document.generateDocuments(job.formats, (options, format) ->
+                            options.setOutputStream(outputs.get(format)));
+                    } else {
+                        document.generateDocument(job.formats.get(0), outputs.get(job.formats.get(0)));
+                    }
+                } catch (Error e) {
+                    lease.markBroken();
+                    throw e;
+                }
+            }
+            for (OutputStream stream : files) {
+                stream.close();
+            }
+            rendered = true;
+            for (OutputCache.Writer writer : writers) {
+                try {
+                    writer.commit();
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Report del job " + job.id + " non salvato in cache", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (TimeoutException e) {
+            result.error = "Nessun engine disponibile";
+            result.noEngine = true;
+        } catch (Exception e) {
+            if (pendingData != null && pendingData.isCompletedExceptionally()) {
+                result.error = "Impossibile leggere i dati da jsonApiUrl";
+            } else {
+                LOG.log(Level.WARNING, "Job " + job.id + " fallito", e);
+                result.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+        } finally {
+            if (!rendered) {
+                for (OutputCache.Writer writer : writers) {
+                    writer.abort();
+                }
+                for (OutputStream stream : files) {
+                    closeQuietly(stream);
+                }
+                deleteTemporary(result);
+                result.files.clear();
+            }
+            result.millis = System.currentTimeMillis() - start;
+            record(result, timings);
+        }
+        return result;
+    }
+
+    private void record(Result result, ReportMetrics.Timings timings) {
+        String status = result.noEngine ? "busy" : result.error != null ? "error" : result.cached ? "cached" : "ok";
+        long bytes = 0;
+        for (Path file : result.files.values()) {
+            try {
+                bytes += Files.size(file);
+            } catch (IOException e) {
+                // File già rimosso dalla cache: byte non conteggiati
+            }
+        }
+        metrics.record(result.job.designName, String.join(",", result.job.formats), status, timings,
+            System.nanoTime() - timings.startNanos, bytes);
+    }
+
+    private static String entryName(Job job, String format) {
+        return job.id + "." + BirtDesignToDocument.extension(format);
+    }
+
+    private static Map<String, Object> manifest(List<Result> results, long start) {
+        List<Map<String, Object>> jobs = new ArrayList<>();
+        int failed = 0;
+        for (Result result : results) {
+            Map<String, Object> job = new LinkedHashMap<>();
+            job.put("id", result.job.id);
+            job.put("status", result.error == null ? "ok" : "error");
+            job.put("formats", result.job.formats);
+            if (result.error == null) {
+                job.put("files", new ArrayList<>(result.files.keySet()));
+                job.put("cached", result.cached);
+            } else {
+                job.put("error", result.error);
+                failed++;
+            }
+            job.put("millis", result.millis);
+            jobs.add(job);
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("jobs", jobs);
+        manifest.put("succeeded", results.size() - failed);
+        manifest.put("failed", failed);
+        manifest.put("millis", System.currentTimeMillis() - start);
+        return manifest;
+    }
+
+    /**
+     * Elimina i file temporanei di un esito (quelli in cache restano)
+     */
+    static void deleteTemporary(Result result) {
+        for (Path file : result.temporary) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.log(Level.FINE, "Impossibile eliminare " + file, e);
+            }
+        }
+        result.temporary.clear();
+    }
+
+    private static void closeQuietly(OutputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Chiusura file temporaneo fallita", e);
+        }
+    }
+
+    /**
+     * La risposta la chiude il chiamante (ResponseStream.finish())
+     */
+    private static class NonClosingStream extends FilterOutputStream {
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
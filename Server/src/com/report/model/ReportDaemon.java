@@ -0,0 +1,105 @@
+package com.report.model;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Modalità daemon del report engine
+ *
+ * Avvia la Platform BIRT e il pool di engine una sola volta e resta in ascolto
+ * su stdin (il pool ricicla l'engine dopo N job o con heap alto).
+ * Ogni riga è un job, con i campi separati da TAB:
+ *
+ *   <birtFile>\t<jsonSource>\t<outputDir>\t<format>
+ *
+ * Per ogni job viene scritta su stdout una sola riga di risposta:
+ *
+ *   SUCCESS:<path>      report generato
+ *   ERROR:<messaggio>   generazione fallita
+ *
+ * Comandi speciali: PING (risposta PONG) e QUIT (chiude il daemon).
+ * Dopo l'avvio dell'engine viene scritta la riga READY.
+ *
+ * Tutto l'output diagnostico (BIRT compreso) viene rediretto su stderr,
+ * così stdout contiene solo le righe del protocollo.
+ */
+class ReportDaemon {
+    static final String READY = "READY";
+    static final String SUCCESS = "SUCCESS:";
+    static final String ERROR = "ERROR:";
+
+    private final String birtHome;
+    private final PrintStream protocol;
+    private final DesignCache designCache = DesignCache.fromConfig();
+    private final JsonDataFetcher dataFetcher = JsonDataFetcher.enabled() ? JsonDataFetcher.fromConfig() : null;
+
+    ReportDaemon(String birtHome) {
+        this.birtHome = birtHome;
+        this.protocol = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Ciclo principale: legge i job da stdin fino a EOF o QUIT
+     */
+    void run() throws Exception {
+        System.setOut(System.err);
+
+        ReportEnginePool.Settings pool = ReportEnginePool.Settings.fromConfig();
+        // I job arrivano in sequenza: basta un engine con un task alla volta
+        ReportEnginePool.Settings settings = new ReportEnginePool.Settings(
+            1, 1, pool.maxJobsPerEngine, pool.maxHeapRatio, pool.acquireTimeoutMs, pool.maxQueue);
+
+        try (ReportEnginePool engines = ReportEnginePool.start(birtHome, settings)) {
+            engines.onEngineDestroyed(designCache::evictEngine);
+            protocol.println(READY);
+
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.strip();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals("QUIT")) {
+                    break;
+                }
+                if (line.equals("PING")) {
+                    protocol.println("PONG");
+                    continue;
+                }
+                protocol.println(handle(engines, line));
+            }
+        }
+    }
+
+    /**
+     * Esegue un singolo job e restituisce la riga di risposta
+     */
+    private String handle(ReportEnginePool engines, String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 4) {
+            return ERROR + "job non valido, attesi 4 campi separati da TAB";
+        }
+
+        long start = System.currentTimeMillis();
+        try (ReportEnginePool.Lease lease = engines.acquire()) {
+            BirtDesignToDocument document = new BirtDesignToDocument(fields[1], fields[0], fields[2], lease.engine())
+                .withDesignCache(designCache)
+                .withDataFetcher(dataFetcher);
+            String outputPath = document.generateDocument(fields[3]);
+            if (outputPath == null) {
+                return ERROR + "formato non supportato: " + fields[3];
+            }
+            System.err.println("Job completato in " + (System.currentTimeMillis() - start) + " ms: " + outputPath);
+            return SUCCESS + outputPath;
+        } catch (Exception e) {
+            return ERROR + oneLine(e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static String oneLine(String message) {
+        return message.replace('\r', ' ').replace('\n', ' ');
+    }
+}
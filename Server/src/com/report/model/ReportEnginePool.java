@@ -0,0 +1,538 @@
+package com.report.model;
+
+import org.eclipse.birt.core.exception.BirtException;
+import org.eclipse.birt.core.framework.Platform;
+import org.eclipse.birt.report.engine.api.EngineConfig;
+import org.eclipse.birt.report.engine.api.IReportEngine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool di IReportEngine riutilizzabili
+ *
+ * La Platform BIRT viene avviata una sola volta; il pool crea `size` engine
+ * e su ciascuno ammette al massimo `tasksPerEngine` task run/render in
+ * parallelo. L'attesa di un engine libero è fair (FIFO). Con admit() le
+ * richieste HTTP vengono respinte subito se `maxQueue` richieste sono già in
+ * attesa, invece di accumularsi (ognuna tiene in memoria design e dati):
+ * admit() riserva un posto che la richiesta tiene mentre legge il body e
+ * scarica i dati, fino a quando ottiene un engine o termina.
+ * Con acquire(formato) la lease passa anche dal limite adattivo del formato
+ * (AdaptiveLimiter), sotto la capacità del pool.
+ *
+ * Un engine viene riciclato (distrutto e sostituito) quando:
+ *   - ha servito `maxJobsPerEngine` job
+ *   - l'heap usato supera `maxHeapRatio` del massimo
+ *   - fallisce l'health check o un job segnala un errore fatale
+ * L'engine in uscita finisce i task in corso prima di essere distrutto.
+ */
+class ReportEnginePool implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ReportEnginePool.class.getName());
+    // Evita di riciclare tutti gli engine in fila mentre il GC recupera memoria
+    private static final long HEAP_RECYCLE_INTERVAL_MS = 30_000;
+
+    /**
+     * Dimensionamento del pool
+     */
+    static class Settings {
+        final int size;
+        final int tasksPerEngine;
+        final int maxJobsPerEngine;
+        final double maxHeapRatio;
+        final long acquireTimeoutMs;
+        final int maxQueue;
+
+        Settings(int size, int tasksPerEngine, int maxJobsPerEngine, double maxHeapRatio, long acquireTimeoutMs,
+                 int maxQueue) {
+            if (size < 1 || tasksPerEngine < 1) {
+                throw new IllegalArgumentException("size e tasksPerEngine devono essere >= 1");
+            }
+            this.size = size;
+            this.tasksPerEngine = tasksPerEngine;
+            this.maxJobsPerEngine = maxJobsPerEngine;
+            this.maxHeapRatio = maxHeapRatio;
+            this.acquireTimeoutMs = acquireTimeoutMs;
+            this.maxQueue = maxQueue;
+        }
+
+        /**
+         * Impostazioni da ServerConfig (report.pool.*)
+         *
+         * Senza report.pool.size gli engine sono core / 2, ma non più di
+         * quanti task l'heap regge: ognuno conta report.pool.taskHeapMB
+         * (default 256) entro maxHeapRatio dell'heap massimo. La coda
+         * (report.pool.maxQueue) è di default 4 richieste per task.
+         */
+        static Settings fromConfig() {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int tasksPerEngine = ServerConfig.intSetting("report.pool.tasksPerEngine", 2);
+            double maxHeapRatio = Double.parseDouble(ServerConfig.setting("report.pool.maxHeapRatio", "0.85"));
+            long taskHeapMb = Math.max(1, ServerConfig.longSetting("report.pool.taskHeapMB", 256));
+            long heapMb = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+            int byHeap = (int) Math.max(1, heapMb * maxHeapRatio / taskHeapMb / Math.max(1, tasksPerEngine));
+            int size = ServerConfig.intSetting("report.pool.size", Math.max(1, Math.min(cores / 2, byHeap)));
+            return new Settings(
+                size,
+                tasksPerEngine,
+                ServerConfig.intSetting("report.pool.maxJobsPerEngine", 500),
+                maxHeapRatio,
+                ServerConfig.longSetting("report.pool.acquireTimeoutMs", 300_000), // 5 minuti
+                ServerConfig.intSetting("report.pool.maxQueue", size * tasksPerEngine * 4)
+            );
+        }
+    }
+
+    /**
+     * Richiesta respinta dall'admission control (risposta 429)
+     */
+    static class OverloadedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int retryAfterSeconds;
+
+        OverloadedException(String message, int retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+    }
+
+    /**
+     * Posto riservato da admit(): va chiuso quando la richiesta ottiene un
+     * engine (acquire con l'admission) o termina
+     */
+    class Admission implements AutoCloseable {
+        private boolean released;
+
+        private Admission() {
+        }
+
+        @Override
+        public void close() {
+            synchronized (ReportEnginePool.this) {
+                if (!released) {
+                    released = true;
+                    admitted--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Engine del pool con il suo stato
+     */
+    private static class PooledEngine {
+        final int id;
+        final IReportEngine engine;
+        int activeTasks;
+        int jobsServed;
+        boolean retiring;
+
+        PooledEngine(int id, IReportEngine engine) {
+            this.id = id;
+            this.engine = engine;
+        }
+    }
+
+    /**
+     * Engine in uso: va chiuso (try-with-resources) a fine job
+     */
+    class Lease implements BirtDesignToDocument.RecordEngine {
+        private final PooledEngine pooled;
+        private final AdaptiveLimiter.Permit permit;
+        private final long queueDelayMs;
+        private final long acquired = System.currentTimeMillis();
+        private boolean broken;
+        private boolean released;
+
+        private Lease(PooledEngine pooled, AdaptiveLimiter.Permit permit, long queueDelayMs) {
+            this.pooled = pooled;
+            this.permit = permit;
+            this.queueDelayMs = queueDelayMs;
+        }
+
+        @Override
+        public IReportEngine engine() {
+            return pooled.engine;
+        }
+
+        /**
+         * Segnala che l'engine non è più affidabile: verrà riciclato
+         */
+        @Override
+        public void markBroken() {
+            broken = true;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                long heldMs = System.currentTimeMillis() - acquired;
+                release(pooled, broken, heldMs);
+                if (permit != null && broken) {
+                    permit.cancel();
+                } else if (permit != null) {
+                    permit.complete(heldMs, queueDelayMs);
+                }
+            }
+        }
+    }
+
+    private final Settings settings;
+    private final EngineConfig engineConfig;
+    private final Semaphore permits;
+    private final AdaptiveLimiter limiter;
+    private final List<PooledEngine> engines = new ArrayList<>();
+    private final List<Consumer<IReportEngine>> destroyListeners = new CopyOnWriteArrayList<>();
+    private final LongAdder rejected = new LongAdder();
+    // Richieste HTTP ammesse che non hanno ancora un engine
+    private int admitted;
+    private int nextId;
+    private long platformStartupMs;
+    private long lastHeapRecycle;
+    // Durata media di una lease (media mobile esponenziale), per Retry-After
+    private double averageLeaseMs = 1000;
+    private boolean closed;
+
+    /**
+     * Pool senza engine: li crea start()
+     */
+    ReportEnginePool(EngineConfig engineConfig, Settings settings) {
+        this.settings = settings;
+        this.engineConfig = engineConfig;
+        this.permits = new Semaphore(settings.size * settings.tasksPerEngine, true);
+        this.limiter = AdaptiveLimiter.fromConfig(settings.size * settings.tasksPerEngine);
+    }
+
+    /**
+     * Avvia la Platform BIRT e crea gli engine del pool
+     */
+    static ReportEnginePool start(String birtHome, Settings settings) throws BirtException {
+        long start = System.currentTimeMillis();
+        ReportEnginePool pool = new ReportEnginePool(BirtDesignToDocument.startPlatform(birtHome), settings);
+        synchronized (pool) {
+            for (int i = 0; i < settings.size; i++) {
+                pool.engines.add(pool.newEngine());
+            }
+            pool.platformStartupMs = System.currentTimeMillis() - start;
+        }
+        LOG.info("Pool engine avviato: " + settings.size + " engine x " + settings.tasksPerEngine + " task, coda max "
+            + settings.maxQueue + " (heap max " + Runtime.getRuntime().maxMemory() / (1024 * 1024) + "MB, "
+            + Runtime.getRuntime().availableProcessors() + " core)");
+        return pool;
+    }
+
+    /**
+     * Attende (in ordine di arrivo) un engine con uno slot libero
+     * @throws TimeoutException se nessun engine si libera entro acquireTimeoutMs
+     */
+    Lease acquire() throws InterruptedException, TimeoutException {
+        return acquire(null);
+    }
+
+    /**
+     * Come acquire(), passando prima dal limite adattivo del formato
+     * @param formats formato (o formati separati da virgola) del job; null
+     *                per operazioni senza render (es. apertura di un design)
+     */
+    Lease acquire(String formats) throws InterruptedException, TimeoutException {
+        return acquire(formats, null);
+    }
+
+    /**
+     * Come acquire(formats), liberando il posto riservato da admit() appena
+     * la richiesta ha l'engine
+     * @param admission posto della richiesta, o null
+     */
+    Lease acquire(String formats, Admission admission) throws InterruptedException, TimeoutException {
+        long start = System.currentTimeMillis();
+        AdaptiveLimiter.Permit permit = limiter != null && formats != null
+            ? limiter.acquire(formats, settings.acquireTimeoutMs) : null;
+        long admitted = System.currentTimeMillis();
+        long remaining = Math.max(0, settings.acquireTimeoutMs - (admitted - start));
+        try {
+            if (!permits.tryAcquire(remaining, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("Nessun engine libero entro " + settings.acquireTimeoutMs + " ms");
+            }
+            try {
+                Lease lease = new Lease(checkout(), permit, System.currentTimeMillis() - admitted);
+                if (admission != null) {
+                    admission.close();
+                }
+                return lease;
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        } catch (InterruptedException | TimeoutException | RuntimeException e) {
+            if (permit != null) {
+                permit.cancel();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Admission control per le richieste HTTP: riserva un posto se le
+     * richieste già ammesse senza engine sono meno degli slot liberi più
+     * maxQueue, altrimenti la richiesta viene respinta subito invece di
+     * accodarsi. Le ammesse contano anche mentre leggono il body o
+     * scaricano i dati, prima di mettersi in attesa di un engine.
+     * @return il posto, da chiudere quando la richiesta termina
+     * @throws OverloadedException con il tempo di attesa consigliato
+     */
+    synchronized Admission admit() throws OverloadedException {
+        if (settings.maxQueue >= 0 && admitted >= permits.availablePermits() + settings.maxQueue) {
+            rejected.increment();
+            throw new OverloadedException("Coda piena: " + waiting() + " richieste in attesa di un engine",
+                retryAfterSeconds());
+        }
+        admitted++;
+        return new Admission();
+    }
+
+    /**
+     * Secondi consigliati prima di riprovare: il tempo per smaltire la coda
+     * attuale con la durata media di un job, tra 1 e 60
+     */
+    synchronized int retryAfterSeconds() {
+        double seconds = averageLeaseMs * (waiting() + 1) / capacity() / 1000;
+        return (int) Math.max(1, Math.min(60, Math.ceil(seconds)));
+    }
+
+    /**
+     * Richieste HTTP ammesse da admit() che non hanno ancora un engine
+     */
+    synchronized int admitted() {
+        return admitted;
+    }
+
+    /**
+     * Richieste respinte da admit()
+     */
+    long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Massimo numero di richieste in attesa prima di respingere
+     */
+    int maxQueue() {
+        return settings.maxQueue;
+    }
+
+    /**
+     * Registra una callback chiamata prima della distruzione di ogni engine
+     * (es. per scartare i design aperti con quell'engine)
+     */
+    void onEngineDestroyed(Consumer<IReportEngine> listener) {
+        destroyListeners.add(listener);
+    }
+
+    /**
+     * Engine in rotazione (es. per precaricare i design su ciascuno)
+     */
+    synchronized List<IReportEngine> engines() {
+        List<IReportEngine> list = new ArrayList<>();
+        for (PooledEngine pooled : engines) {
+            list.add(pooled.engine);
+        }
+        return list;
+    }
+
+    /**
+     * Numero massimo di task contemporanei
+     */
+    int capacity() {
+        return settings.size * settings.tasksPerEngine;
+    }
+
+    /**
+     * Task in esecuzione in questo momento
+     */
+    int activeTasks() {
+        return capacity() - permits.availablePermits();
+    }
+
+    /**
+     * Richieste in attesa di un engine: quelle in coda sul pool (anche nei
+     * limiti per formato) o, se sono di più, le richieste HTTP ammesse oltre
+     * gli slot liberi, che possono ancora leggere il body o i dati
+     */
+    synchronized int waiting() {
+        int queued = permits.getQueueLength() + (limiter != null ? limiter.waiting() : 0);
+        return Math.max(queued, admitted - permits.availablePermits());
+    }
+
+    /**
+     * Stato degli engine per /health e le metriche: "warm" sono quelli che
+     * hanno già servito almeno un job (classi BIRT e design già caricati),
+     * "recycled" gli engine sostituiti dall'avvio
+     */
+    synchronized Map<String, Object> engineStatus() {
+        int warm = 0;
+        long jobsServed = 0;
+        for (PooledEngine pooled : engines) {
+            if (pooled.jobsServed > 0) {
+                warm++;
+            }
+            jobsServed += pooled.jobsServed;
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("engines", engines.size());
+        status.put("warm", warm);
+        status.put("cold", engines.size() - warm);
+        status.put("jobsServed", jobsServed);
+        status.put("recycled", Math.max(0, nextId - settings.size));
+        status.put("platformStartupMs", platformStartupMs);
+        return status;
+    }
+
+    /**
+     * Limiti adattivi per formato (vuoto se report.limiter.enabled=false)
+     */
+    Map<String, Map<String, Object>> limits() {
+        return limiter != null ? limiter.snapshot() : Map.of();
+    }
+
+    @Override
+    public void close() {
+        List<PooledEngine> toDestroy;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toDestroy = new ArrayList<>(engines);
+            engines.clear();
+        }
+        for (PooledEngine pooled : toDestroy) {
+            destroy(pooled);
+        }
+        Platform.shutdown();
+        LOG.info("Pool engine chiuso");
+    }
+
+    private synchronized PooledEngine checkout() {
+        if (closed) {
+            throw new IllegalStateException("Pool engine chiuso");
+        }
+
+        // Gli engine inattivi che non rispondono vengono sostituiti prima della scelta
+        for (PooledEngine pooled : new ArrayList<>(engines)) {
+            if (pooled.activeTasks == 0 && !isHealthy(pooled)) {
+                LOG.warning("Engine #" + pooled.id + " non risponde: riciclo");
+                retire(pooled);
+                if (pooled.retiring) {
+                    destroy(pooled);
+                }
+            }
+        }
+
+        PooledEngine chosen = null;
+        for (PooledEngine pooled : engines) {
+            if (pooled.retiring || pooled.activeTasks >= settings.tasksPerEngine) {
+                continue;
+            }
+            if (chosen == null || pooled.activeTasks < chosen.activeTasks) {
+                chosen = pooled;
+            }
+        }
+        if (chosen == null) {
+            // Il semaforo garantisce uno slot libero: succede solo se un riciclo è fallito
+            throw new IllegalStateException("Nessun engine disponibile nel pool");
+        }
+
+        chosen.activeTasks++;
+        chosen.jobsServed++;
+        if (settings.maxJobsPerEngine > 0 && chosen.jobsServed >= settings.maxJobsPerEngine) {
+            LOG.info("Engine #" + chosen.id + " ha servito " + chosen.jobsServed + " job: riciclo");
+            retire(chosen);
+        }
+        return chosen;
+    }
+
+    private void release(PooledEngine pooled, boolean broken, long heldMs) {
+        boolean destroy;
+        synchronized (this) {
+            pooled.activeTasks--;
+            averageLeaseMs += 0.2 * (heldMs - averageLeaseMs);
+            if (broken && !pooled.retiring) {
+                LOG.warning("Engine #" + pooled.id + " segnalato come guasto: riciclo");
+                retire(pooled);
+            }
+            long now = System.currentTimeMillis();
+            if (!pooled.retiring && now - lastHeapRecycle > HEAP_RECYCLE_INTERVAL_MS
+                    && heapRatio() > settings.maxHeapRatio) {
+                LOG.info("Heap oltre " + Math.round(settings.maxHeapRatio * 100) + "%: riciclo engine #" + pooled.id);
+                lastHeapRecycle = now;
+                retire(pooled);
+            }
+            destroy = pooled.retiring && pooled.activeTasks == 0 && !closed;
+        }
+        if (destroy) {
+            destroy(pooled);
+        }
+        permits.release();
+    }
+
+    /**
+     * Toglie l'engine dalla rotazione e lo sostituisce subito con uno nuovo.
+     * Viene distrutto quando l'ultimo task in corso termina.
+     */
+    private void retire(PooledEngine pooled) {
+        PooledEngine replacement;
+        try {
+            replacement = newEngine();
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Creazione engine sostitutivo fallita, engine #" + pooled.id + " resta in uso", e);
+            return;
+        }
+        pooled.retiring = true;
+        engines.remove(pooled);
+        engines.add(replacement);
+    }
+
+    private PooledEngine newEngine() {
+        return new PooledEngine(++nextId, BirtDesignToDocument.createEngine(engineConfig));
+    }
+
+    private void destroy(PooledEngine pooled) {
+        for (Consumer<IReportEngine> listener : destroyListeners) {
+            listener.accept(pooled.engine);
+        }
+        try {
+            pooled.engine.destroy();
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Errore distruzione engine #" + pooled.id, e);
+        }
+    }
+
+    /**
+     * Health check leggero: l'engine deve rispondere con i formati di output
+     */
+    private static boolean isHealthy(PooledEngine pooled) {
+        try {
+            String[] formats = pooled.engine.getSupportedFormats();
+            return formats != null && formats.length > 0;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static double heapRatio() {
+        Runtime runtime = Runtime.getRuntime();
+        return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+    }
+}
@@ -0,0 +1,74 @@
+package com.report.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventi Java Flight Recorder dei report
+ *
+ * Un evento per job (dall'inizio della generazione a record()) e uno per
+ * fase, con ID del job, design, hash del design e formato: in JMC o con
+ * `jfr print --events com.report.Job` si filtrano i campioni CPU e di
+ * allocazione dei soli intervalli dei report che interessano. Senza una
+ * registrazione JFR attiva gli eventi non costano quasi nulla.
+ */
+final class ReportEvents {
+    private ReportEvents() {
+    }
+
+    @Name("com.report.Job")
+    @Label("Report Job")
+    @Category("Report")
+    @Description("Generazione di un report, dall'arrivo all'ultimo byte")
+    @StackTrace(false)
+    static class JobEvent extends Event {
+        @Label("Job ID")
+        String jobId;
+
+        @Label("Design")
+        String design;
+
+        @Label("Design Hash")
+        String designHash;
+
+        @Label("Format")
+        String format;
+
+        @Label("Status")
+        String status;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Pages")
+        long pages;
+
+        @Label("Output")
+        @DataAmount
+        long outputBytes;
+    }
+
+    @Name("com.report.Phase")
+    @Label("Report Phase")
+    @Category("Report")
+    @Description("Fase della generazione di un report (attesa engine, design, dati, run, render)")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Job ID")
+        String jobId;
+
+        @Label("Design Hash")
+        String designHash;
+
+        @Label("Format")
+        String format;
+
+        @Label("Phase")
+        String phase;
+    }
+}
@@ -0,0 +1,1263 @@
+package com.report.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.eclipse.birt.report.engine.api.EngineException;
+import org.eclipse.birt.report.engine.api.IReportEngine;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Server REST Java per generazione report BIRT
+ *
+ * Espone gli stessi endpoint di server.py (/api/reports/health, /formats,
+ * /generate), più /designs per registrare i design una volta sola, /batch
+ * per molti report in una richiesta, /burst per un documento per record e
+ * /jobs per i report asincroni, senza passare da Flask e da un processo Java per richiesta:
+ * ogni richiesta gira su un virtual thread e prende un engine dal pool condiviso.
+ * Il design caricato resta in memoria e il report viene scritto direttamente
+ * nella risposta HTTP (chunked) mentre viene generato.
+ */
+class ReportHttpServer {
+    private static final Logger LOG = Logger.getLogger(ReportHttpServer.class.getName());
+
+    private final ServerConfig config;
+    private final ReportEnginePool pool;
+    private final DesignCache designCache;
+    private final DesignRepository designRepository;
+    private final OutputCache outputCache;
+    private final JsonDataFetcher dataFetcher;
+    private final boolean passFetchedData;
+    private final ReportBatch batch;
+    private final ReportJobs jobs;
+    private final SingleFlight singleFlight;
+    private final ReportMetrics metrics;
+    private final SlowReportWatchdog watchdog;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    ReportHttpServer(ServerConfig config, ReportEnginePool pool) {
+        this.config = config;
+        this.pool = pool;
+        this.designCache = DesignCache.fromConfig();
+        pool.onEngineDestroyed(designCache::evictEngine);
+        this.designRepository = new DesignRepository(config.designDir);
+        this.outputCache = OutputCache.fromConfig(config);
+        this.dataFetcher = JsonDataFetcher.fromConfig();
+        this.passFetchedData = JsonDataFetcher.enabled();
+        this.metrics = ReportMetrics.fromConfig();
+        this.batch = new ReportBatch(pool, designCache, outputCache, dataFetcher, passFetchedData, metrics);
+        this.jobs = ReportJobs.fromConfig(config, pool, batch);
+        this.singleFlight = SingleFlight.fromConfig();
+        this.watchdog = SlowReportWatchdog.fromConfig(config, metrics);
+    }
+
+    /**
+     * Avvia il server HTTP sulla porta configurata
+     */
+    void start() throws IOException {
+        designRepository.load();
+        outputCache.load();
+        jobs.load();
+        preloadDesigns();
+        jobs.start();
+        if (watchdog != null) {
+            watchdog.start();
+        }
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(config.port), 0);
+        server.setExecutor(executor);
+
+        server.createContext("/api/reports/health", route("GET", this::health));
+        server.createContext("/api/reports/formats", route("GET", this::formats));
+        server.createContext("/api/reports/metrics", route("GET", this::metrics));
+        server.createContext("/api/reports/generate", route("POST", admitted(this::generate)));
+        server.createContext("/api/reports/batch", route("POST", admitted(this::generateBatch)));
+        server.createContext("/api/reports/burst", route("POST", admitted(this::generateBurst)));
+        server.createContext("/api/reports/designs", route(Map.of(
+            "GET", this::listDesigns,
+            "POST", this::registerDesign)));
+        server.createContext("/api/reports/jobs", route(Map.of(
+            "GET", this::jobStatus,
+            "POST", this::submitJob,
+            "DELETE", this::deleteJob)));
+
+        server.start();
+        LOG.info("Server avviato su http://localhost:" + config.port);
+    }
+
+    /**
+     * Ferma il server attendendo le richieste in corso
+     */
+    void stop() {
+        if (server != null) {
+            server.stop(5);
+            jobs.stop();
+            executor.close();
+            if (watchdog != null) {
+                watchdog.stop();
+            }
+            LOG.info("Server fermato");
+        }
+    }
+
+    /**
+     * Configura il logging su console e su logs/server.log
+     */
+    static void setupLogging(ServerConfig config) throws IOException {
+        Files.createDirectories(config.logDir);
+        System.setProperty("java.util.logging.SimpleFormatter.format",
+            "%1$tF %1$tT - %3$s - %4$s - %5$s%6$s%n");
+        FileHandler file = new FileHandler(config.logDir.resolve("server.log").toString(), true);
+        file.setEncoding("UTF-8");
+        file.setFormatter(new SimpleFormatter());
+        Logger.getLogger("com.report").addHandler(file);
+    }
+
+    /**
+     * Endpoint per verificare lo stato del server
+     */
+    private void health(HttpExchange exchange) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "UP");
+        body.put("service", "BIRT Report Generation Service");
+        body.put("version", "1.0");
+        body.put("java", Runtime.version().toString());
+        body.put("birt", "4.21");
+        body.put("timestamp", LocalDateTime.now().toString());
+        body.put("designCache", Map.of(
+            "entries", designCache.size(),
+            "hits", designCache.hits(),
+            "misses", designCache.misses()));
+        body.put("outputCache", Map.of(
+            "enabled", outputCache.enabled(),
+            "entries", outputCache.size(),
+            "bytes", outputCache.bytes(),
+            "hits", outputCache.hits(),
+            "misses", outputCache.misses()));
+        body.put("dataCache", Map.of(
+            "entries", dataFetcher.size(),
+            "hits", dataFetcher.hits(),
+            "revalidated", dataFetcher.revalidated(),
+            "coalesced", dataFetcher.coalesced(),
+            "downloads", dataFetcher.downloads()));
+        body.put("jobs", jobs.counts());
+        body.put("singleFlight", Map.of(
+            "enabled", singleFlight != null,
+            "inFlight", singleFlight == null ? 0 : singleFlight.inFlight(),
+            "coalesced", singleFlight == null ? 0 : singleFlight.coalesced()));
+        body.put("admission", Map.of(
+            "capacity", pool.capacity(),
+            "active", pool.activeTasks(),
+            "waiting", pool.waiting(),
+            "admitted", pool.admitted(),
+            "maxQueue", pool.maxQueue(),
+            "rejected", pool.rejected(),
+            "limits", pool.limits()));
+        Map<String, Object> engines = new LinkedHashMap<>(pool.engineStatus());
+        engines.put("utilization", Math.round(100.0 * pool.activeTasks() / pool.capacity()) / 100.0);
+        engines.put("queueDepth", pool.waiting());
+        body.put("pool", engines);
+        sendJson(exchange, 200, body);
+    }
+
+    /**
+     * Metriche in formato testo Prometheus: latenze per design, formato e
+     * fase (ReportMetrics), stato del pool, delle code e delle cache
+     */
+    private void metrics(HttpExchange exchange) throws IOException {
+        ReportMetrics.Writer out = new ReportMetrics.Writer();
+        metrics.writeTo(out);
+
+        Map<String, Object> engines = pool.engineStatus();
+        out.single("report_pool_capacity", "gauge", "Task contemporanei massimi", pool.capacity());
+        out.single("report_pool_active_tasks", "gauge", "Task in esecuzione", pool.activeTasks());
+        out.single("report_pool_waiting", "gauge", "Richieste in attesa di un engine", pool.waiting());
+        out.single("report_pool_rejected_total", "counter", "Richieste respinte per coda piena", pool.rejected());
+        out.single("report_pool_engines", "gauge", "Engine nel pool", (Integer) engines.get("engines"));
+        out.single("report_pool_engines_warm", "gauge", "Engine che hanno già servito almeno un job",
+            (Integer) engines.get("warm"));
+        out.single("report_pool_engines_recycled_total", "counter", "Engine sostituiti dall'avvio",
+            (Integer) engines.get("recycled"));
+        out.single("report_platform_startup_seconds", "gauge", "Avvio della Platform BIRT e degli engine",
+            (Long) engines.get("platformStartupMs") / 1000.0);
+        out.family("report_limiter_limit", "gauge", "Limite adattivo per formato");
+        pool.limits().forEach((key, values) ->
+            out.sample("report_limiter_limit", Map.of("format", key), (Integer) values.get("limit")));
+
+        out.family("report_cache_requests_total", "counter", "Richieste alle cache per esito");
+        out.sample("report_cache_requests_total", Map.of("cache", "output", "result", "hit"), outputCache.hits());
+        out.sample("report_cache_requests_total", Map.of("cache", "output", "result", "miss"), outputCache.misses());
+        out.sample("report_cache_requests_total", Map.of("cache", "design", "result", "hit"), designCache.hits());
+        out.sample("report_cache_requests_total", Map.of("cache", "design", "result", "miss"), designCache.misses());
+        out.sample("report_cache_requests_total", Map.of("cache", "data", "result", "hit"), dataFetcher.hits());
+        out.sample("report_cache_requests_total", Map.of("cache", "data", "result", "revalidated"),
+            dataFetcher.revalidated());
+        out.sample("report_cache_requests_total", Map.of("cache", "data", "result", "coalesced"),
+            dataFetcher.coalesced());
+        out.sample("report_cache_requests_total", Map.of("cache", "data", "result", "miss"), dataFetcher.downloads());
+        out.single("report_coalesced_total", "counter", "Richieste servite da una generazione identica in corso",
+            singleFlight == null ? 0 : singleFlight.coalesced());
+
+        out.family("report_async_jobs", "gauge", "Job asincroni per stato");
+        jobs.counts().forEach((state, count) ->
+            out.sample("report_async_jobs", Map.of("state", state), count));
+
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", ReportMetrics.Writer.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    /**
+     * Endpoint per ottenere i formati supportati
+     */
+    private void formats(HttpExchange exchange) throws IOException {
+        sendJson(exchange, 200, Map.of("formats", BirtDesignToDocument.FORMATS));
+    }
+
+    /**
+     * Endpoint per generare un report
+     *
+     * Parametri multipart/form-data:
+     *   - birtFile: File .rptdesign (obbligatorio se manca designId)
+     *   - designId: ID di un design registrato (al posto di birtFile)
+     *   - jsonApiUrl: URL API JSON (obbligatorio)
+     *   - format: Formato output (opzionale, default: PDF); con più formati
+     *     separati da virgola (PDF,XLSX,HTML) il report viene eseguito una
+     *     volta sola e la risposta è uno ZIP con un file per formato
+     *
+     * Con la cache dei report attiva la risposta ha un ETag: se il client lo
+     * ripresenta in If-None-Match e design, dati e parametri non sono cambiati
+     * la risposta è 304, se il report è in cache viene inviato senza rigenerarlo.
+     * Richieste identiche che arrivano mentre il report è in generazione
+     * ricevono gli stessi byte della prima, senza una seconda generazione.
+     */
+    private void generate(HttpExchange exchange, ReportEnginePool.Admission admission) throws Exception {
+        MultipartForm form = parseForm(exchange);
+        if (form == null) {
+            return;
+        }
+
+        RequestDesign design = requestDesign(exchange, form);
+        if (design == null) {
+            return;
+        }
+        String designName = design.name;
+        byte[] designData = design.data;
+        String designHash = design.hash;
+
+        String jsonApiUrl = jsonApiUrl(exchange, form);
+        if (jsonApiUrl == null) {
+            return;
+        }
+
+        String formatField = form.field("format") == null ? "PDF" : form.field("format");
+        List<String> formats = BirtDesignToDocument.parseFormats(formatField);
+        if (formats == null) {
+            sendError(exchange, 400, "Formato '" + formatField.strip().toUpperCase()
+                + "' non supportato. Usa: PDF, XLSX, HTML, DOC (anche più formati separati da virgola)");
+            return;
+        }
+        boolean multiFormat = formats.size() > 1;
+
+        // Lettura dei dati avviata subito: procede mentre si attende un engine
+        // e si prepara il design. Serve solo se i dati vanno passati al report
+        // o alla chiave della cache; altrimenti li legge il design
+        CompletableFuture<JsonDataFetcher.JsonData> pendingData = passFetchedData || outputCache.enabled()
+            ? dataFetcher.fetchAsync(jsonApiUrl) : null;
+
+        LOG.info("Design: " + designName + " (" + designData.length + " bytes)");
+        LOG.info("Generazione report " + String.join(",", formats) + " in corso...");
+        long start = System.currentTimeMillis();
+
+        String timeString = LocalTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        String extension = multiFormat ? "zip" : BirtDesignToDocument.extension(formats.get(0));
+        String filename = "report" + timeString + "." + extension;
+        String contentType = multiFormat ? "application/zip" : BirtDesignToDocument.mimeType(formats.get(0));
+
+        // Cache dei report: stesso design, stessi dati, stessi parametri e formato
+        String cacheKey = null;
+        if (outputCache.enabled()) {
+            // La chiave dipende dai dati: qui serve attenderli
+            JsonDataFetcher.JsonData data;
+            try {
+                data = JsonDataFetcher.await(pendingData);
+            } catch (IOException e) {
+                LOG.warning("Dati non disponibili da " + jsonApiUrl + ": " + e.getMessage());
+                sendError(exchange, 502, "Impossibile leggere i dati da jsonApiUrl");
+                return;
+            }
+            cacheKey = OutputCache.key(designHash, data.fingerprint(),
+                Map.of("jsonApiUrl", jsonApiUrl), String.join(",", formats));
+            String etag = "\"" + cacheKey + "\"";
+            if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                LOG.info("Report non modificato (304): " + cacheKey);
+                exchange.getResponseHeaders().set("ETag", etag);
+                exchange.sendResponseHeaders(304, -1);
+                recordJob(designName, formats, "cached", null, start, 0);
+                return;
+            }
+            OutputCache.Entry cached = outputCache.lookup(cacheKey);
+            if (cached != null && sendCached(exchange, cached, contentType, filename, etag)) {
+                LOG.info("Report servito dalla cache: " + cacheKey + " (" + cached.sizeBytes + " bytes)");
+                recordJob(designName, formats, "cached", null, start, cached.sizeBytes);
+                return;
+            }
+        }
+
+        // Stessa richiesta già in generazione: si ricevono i suoi byte
+        SingleFlight.Flight flight = null;
+        if (singleFlight != null) {
+            String flightKey = cacheKey != null ? cacheKey : OutputCache.key(designHash, "url:" + jsonApiUrl,
+                Map.of("jsonApiUrl", jsonApiUrl), String.join(",", formats));
+            SingleFlight.Ticket ticket = singleFlight.join(flightKey);
+            flight = ticket.flight;
+            if (!ticket.leader) {
+                // Nessun engine per questa richiesta: il posto torna libero
+                admission.close();
+                long bytes = -1;
+                try {
+                    LOG.info("Report già in generazione per una richiesta identica: " + flightKey);
+                    bytes = sendCoalesced(exchange, flight, contentType, filename,
+                        cacheKey == null ? null : "\"" + cacheKey + "\"");
+                } finally {
+                    flight.release();
+                    recordJob(designName, formats, bytes >= 0 ? "coalesced" : "error", null, start, Math.max(0, bytes));
+                }
+                return;
+            }
+        }
+        try {
+            render(exchange, admission, flight, pendingData, jsonApiUrl, designName, designData, designHash, formats,
+                timeString, extension, filename, contentType, cacheKey, start);
+        } finally {
+            if (flight != null) {
+                // No-op se render() ha già chiuso la generazione
+                flight.fail(500, "Errore durante la generazione del report");
+                flight.release();
+            }
+        }
+    }
+
+    /**
+     * Genera il report di generate() e lo scrive nella risposta, nella cache
+     * e (se presente) per le richieste agganciate a flight
+     */
+    private void render(HttpExchange exchange, ReportEnginePool.Admission admission, SingleFlight.Flight flight,
+                        CompletableFuture<JsonDataFetcher.JsonData> pendingData, String jsonApiUrl,
+                        String designName, byte[] designData, String designHash, List<String> formats,
+                        String timeString,
+                        String extension, String filename, String contentType, String cacheKey,
+                        long start) throws Exception {
+        boolean multiFormat = formats.size() > 1;
+        ResponseStream output = new ResponseStream(exchange, contentType, filename,
+            cacheKey == null ? null : "\"" + cacheKey + "\"");
+        OutputCache.Writer cacheWriter = cacheKey == null ? null : outputCache.writer(cacheKey, extension, output);
+        OutputStream target = cacheWriter != null ? cacheWriter : output;
+        OutputStream sink = flight != null ? flight.tee(target) : target;
+        ReportMetrics.Timings timings = metrics.start(UUID.randomUUID().toString(), designName, designHash,
+            String.join(",", formats));
+        String status = "error";
+        boolean rendered = false;
+        ReportMetrics.Phase acquire = timings.begin(ReportMetrics.ENGINE_WAIT);
+        try (ReportEnginePool.Lease lease = pool.acquire(String.join(",", formats), admission)) {
+            acquire.end();
+            try {
+                BirtDesignToDocument document = new BirtDesignToDocument(jsonApiUrl, designName, designData, lease.engine())
+                    .withDesignCache(designCache)
+                    .withData(passFetchedData ? pendingData : null)
+                    .withTimings(timings);
+                if (multiFormat) {
+                    // Una sola esecuzione del report, un file per formato nello ZIP
+                    try (ZipOutputStream zip = new ZipOutputStream(sink)) {
+                        document.generateDocuments(formats, (options, format) -> {
+                            zip.putNextEntry(new ZipEntry("report" + timeString + "."
+                                + BirtDesignToDocument.extension(format)));
+                            options.setOutputStream(new ZipEntryStream(zip));
+                        });
+                    }
+                } else {
+                    document.generateDocument(formats.get(0), sink);
+                }
+                if (flight != null) {
+                    sink.close();
+                    flight.complete();
+                    if (flight.targetError() != null) {
+                        // I follower hanno il report, il client del leader e la cache no
+                        throw flight.targetError();
+                    }
+                }
+                rendered = true;
+                status = "ok";
+            } catch (Error e) {
+                lease.markBroken();
+                throw e;
+            }
+        } catch (TimeoutException e) {
+            LOG.warning("Nessun engine disponibile: " + e.getMessage());
+            status = "busy";
+            failFlight(flight, 503, "Server occupato, riprova più tardi");
+            sendBusy(exchange);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (Exception e) {
+            if (output.committed() || (flight != null && e == flight.targetError())) {
+                // Intestazione già inviata o client disconnesso: route() chiude la connessione
+                throw e;
+            }
+            if (passFetchedData && pendingData.isCompletedExceptionally()) {
+                LOG.warning("Dati non disponibili da " + jsonApiUrl + ": " + e.getMessage());
+                failFlight(flight, 502, "Impossibile leggere i dati da jsonApiUrl");
+                sendError(exchange, 502, "Impossibile leggere i dati da jsonApiUrl");
+                return;
+            }
+            LOG.log(Level.SEVERE, "Errore durante la generazione del report", e);
+            failFlight(flight, 500, "Errore durante la generazione del report");
+            sendError(exchange, 500, "Errore durante la generazione del report");
+            return;
+        } finally {
+            if (cacheWriter != null && !rendered) {
+                cacheWriter.abort();
+            }
+            recordJob(designName, formats, status, timings, start, output.bytesWritten());
+        }
+        if (cacheWriter != null) {
+            try {
+                cacheWriter.commit();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Report non salvato in cache", e);
+            }
+        }
+        output.finish();
+
+        LOG.info("Report generato: " + filename + " (" + output.bytesWritten() + " bytes, "
+            + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Endpoint mail merge: un documento per ogni elemento dell'array JSON
+     *
+     * Parametri multipart/form-data come /generate (birtFile o designId,
+     * jsonApiUrl, format con un solo formato) più keyField, il campo degli
+     * elementi da cui prendere il nome dei file. Ogni elemento è un render
+     * con la sua lease del pool, quindi il parallelismo è quello concesso dal
+     * pool e dal limite adattivo di "burst:<formato>"; la risposta è uno ZIP
+     * in streaming con un file per elemento, aggiunto appena pronto, e
+     * manifest.json.
+     */
+    private void generateBurst(HttpExchange exchange, ReportEnginePool.Admission admission) throws Exception {
+        MultipartForm form = parseForm(exchange);
+        if (form == null) {
+            return;
+        }
+        RequestDesign design = requestDesign(exchange, form);
+        if (design == null) {
+            return;
+        }
+        String jsonApiUrl = jsonApiUrl(exchange, form);
+        if (jsonApiUrl == null) {
+            return;
+        }
+        String format = form.field("format") == null ? "PDF" : form.field("format").strip().toUpperCase();
+        if (!BirtDesignToDocument.FORMATS.contains(format)) {
+            sendError(exchange, 400, "Formato '" + format + "' non supportato. Usa: PDF, XLSX, HTML, DOC");
+            return;
+        }
+        String keyField = form.field("keyField") == null ? null : form.field("keyField").strip();
+
+        CompletableFuture<JsonDataFetcher.JsonData> pendingData = dataFetcher.fetchAsync(jsonApiUrl);
+        LOG.info("Burst " + format + " di " + design.name + " per chiave " + keyField + " in corso...");
+        long start = System.currentTimeMillis();
+
+        String timeString = LocalTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        ResponseStream output = new ResponseStream(exchange, "application/zip", "burst" + timeString + ".zip", null);
+        ZipOutputStream zip = new ZipOutputStream(output);
+        List<BirtDesignToDocument.BurstRecord> records;
+        ReportMetrics.Timings timings = metrics.start(UUID.randomUUID().toString(), design.name, design.hash,
+            "burst:" + format);
+        String status = "error";
+        try {
+            // Nessun engine fisso: una lease per record, così il burst rispetta
+            // capacità del pool, task per engine e limite adattivo come i
+            // singoli report. Un burst dura quanto molti report: limite
+            // separato da quello del formato
+            records = new BirtDesignToDocument(jsonApiUrl, design.name, design.data, null)
+                .withDesignCache(designCache)
+                .withData(pendingData)
+                .withTimings(timings)
+                .generateBurst(format, keyField, () -> pool.acquire("burst:" + format, admission), (name, document) -> {
+                    zip.putNextEntry(new ZipEntry(name));
+                    zip.write(document);
+                    zip.closeEntry();
+                });
+            status = "ok";
+        } catch (TimeoutException e) {
+            LOG.warning("Nessun engine disponibile: " + e.getMessage());
+            status = "busy";
+            sendBusy(exchange);
+            return;
+        } catch (Exception e) {
+            if (output.committed()) {
+                throw e;
+            }
+            if (pendingData.isCompletedExceptionally()) {
+                LOG.warning("Dati non disponibili da " + jsonApiUrl + ": " + e.getMessage());
+                sendError(exchange, 502, "Impossibile leggere i dati da jsonApiUrl");
+                return;
+            }
+            LOG.log(Level.SEVERE, "Errore durante la generazione del burst", e);
+            sendError(exchange, 500, "Errore durante la generazione dei documenti");
+            return;
+        } finally {
+            recordJob(design.name, List.of("burst:" + format), status, timings, start, output.bytesWritten());
+        }
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        long failed = 0;
+        for (BirtDesignToDocument.BurstRecord record : records) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("record", record.index + 1);
+            entry.put("file", record.name);
+            entry.put("status", record.error == null ? "ok" : "error");
+            if (record.error == null) {
+                entry.put("bytes", record.bytes);
+            } else {
+                entry.put("error", record.error);
+                failed++;
+            }
+            entries.add(entry);
+        }
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("records", entries);
+        manifest.put("succeeded", records.size() - failed);
+        manifest.put("failed", failed);
+        manifest.put("millis", System.currentTimeMillis() - start);
+        zip.putNextEntry(new ZipEntry(ReportBatch.MANIFEST));
+        zip.write(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+        zip.closeEntry();
+        zip.finish();
+        output.finish();
+
+        LOG.info("Burst completato: " + records.size() + " documenti, " + failed + " falliti ("
+            + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    /**
+     * Endpoint per generare più report in una richiesta (vedi ReportBatch)
+     *
+     * Body application/json con l'array "jobs", oppure multipart/form-data con
+     * il campo "jobs" (stesso JSON) e i .rptdesign come parti del form, citati
+     * dai job con "birtFile": nome della parte. La risposta è uno ZIP in
+     * streaming con un file per job e formato (<id>.<formato>) e manifest.json.
+     */
+    private void generateBatch(HttpExchange exchange, ReportEnginePool.Admission admission) throws Exception {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        MultipartForm form = null;
+        JsonNode root;
+        try {
+            if (contentType != null && contentType.toLowerCase().startsWith("multipart/")) {
+                form = parseForm(exchange);
+                if (form == null) {
+                    return;
+                }
+                String jobs = form.field("jobs");
+                root = jobs == null ? null : mapper.readTree(jobs);
+            } else {
+                byte[] body = exchange.getRequestBody().readNBytes((int) Math.min(Integer.MAX_VALUE - 8,
+                    config.maxUploadBytes + 1));
+                if (body.length > config.maxUploadBytes) {
+                    sendError(exchange, 413, "Richiesta troppo grande. Massimo "
+                        + config.maxUploadBytes / (1024 * 1024) + "MB");
+                    return;
+                }
+                root = mapper.readTree(body);
+            }
+        } catch (JsonProcessingException e) {
+            sendError(exchange, 400, "JSON dei job non valido: " + e.getOriginalMessage());
+            return;
+        }
+
+        List<ReportBatch.Job> jobs;
+        try {
+            jobs = ReportBatch.parse(root, form, designRepository);
+        } catch (ReportBatch.InvalidBatchException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+
+        LOG.info("Batch di " + jobs.size() + " job in corso...");
+        String timeString = LocalTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        ResponseStream output = new ResponseStream(exchange, "application/zip", "batch" + timeString + ".zip", null);
+        // I job del batch attendono gli engine come quelli di /jobs, contati da pool.waiting()
+        admission.close();
+        batch.run(jobs, output);
+        output.finish();
+    }
+
+    /**
+     * Endpoint per inviare un report asincrono (vedi ReportJobs)
+     *
+     * Parametri multipart/form-data come /generate (birtFile o designId,
+     * jsonApiUrl, format) più parameters, un oggetto JSON opzionale con i
+     * parametri del report. Risponde subito 202 con il jobId; lo stato si
+     * legge da GET /api/reports/jobs/{jobId}, il report da .../{jobId}/result.
+     */
+    private void submitJob(HttpExchange exchange) throws Exception {
+        if (!jobPath(exchange).isEmpty()) {
+            sendError(exchange, 405, "Metodo non consentito");
+            return;
+        }
+        MultipartForm form = parseForm(exchange);
+        if (form == null) {
+            return;
+        }
+        RequestDesign design = requestDesign(exchange, form);
+        if (design == null) {
+            return;
+        }
+        String jsonApiUrl = jsonApiUrl(exchange, form);
+        if (jsonApiUrl == null) {
+            return;
+        }
+        String formatField = form.field("format") == null ? "PDF" : form.field("format");
+        List<String> formats = BirtDesignToDocument.parseFormats(formatField);
+        if (formats == null) {
+            sendError(exchange, 400, "Formato '" + formatField.strip().toUpperCase()
+                + "' non supportato. Usa: PDF, XLSX, HTML, DOC (anche più formati separati da virgola)");
+            return;
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String parametersField = form.field("parameters");
+        if (parametersField != null && !parametersField.isBlank()) {
+            JsonNode params;
+            try {
+                params = mapper.readTree(parametersField);
+            } catch (JsonProcessingException e) {
+                sendError(exchange, 400, "parameters non valido: " + e.getOriginalMessage());
+                return;
+            }
+            if (!params.isObject()) {
+                sendError(exchange, 400, "parameters deve essere un oggetto JSON");
+                return;
+            }
+            for (Map.Entry<String, JsonNode> param : params.properties()) {
+                parameters.put(param.getKey(), param.getValue().isNull() ? null : param.getValue().asText());
+            }
+        }
+
+        ReportJobs.Entry entry;
+        try {
+            entry = jobs.submit(design.name, design.data, design.hash, jsonApiUrl, formats, parameters);
+        } catch (ReportJobs.QueueFullException e) {
+            LOG.warning(e.getMessage());
+            sendTooManyRequests(exchange, pool.retryAfterSeconds());
+            return;
+        }
+        String location = "/api/reports/jobs/" + entry.id;
+        Map<String, Object> body = jobs.status(entry);
+        body.put("statusUrl", location);
+        body.put("resultUrl", location + "/result");
+        exchange.getResponseHeaders().set("Location", location);
+        sendJson(exchange, 202, body);
+    }
+
+    /**
+     * Endpoint dei job asincroni in lettura
+     *
+     *   GET /api/reports/jobs                 elenco dei job con lo stato
+     *   GET /api/reports/jobs/{jobId}         stato (queued, running, done, failed) e tempi
+     *   GET /api/reports/jobs/{jobId}/result  report generato (409 se non ancora pronto)
+     */
+    private void jobStatus(HttpExchange exchange) throws IOException {
+        String path = jobPath(exchange);
+        if (path.isEmpty()) {
+            List<Map<String, Object>> list = new ArrayList<>();
+            for (ReportJobs.Entry entry : jobs.list()) {
+                list.add(jobs.status(entry));
+            }
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("counts", jobs.counts());
+            body.put("jobs", list);
+            sendJson(exchange, 200, body);
+            return;
+        }
+
+        boolean result = path.endsWith("/result");
+        ReportJobs.Entry entry = jobs.get(result ? path.substring(0, path.length() - "/result".length()) : path);
+        if (entry == null) {
+            sendError(exchange, 404, "Job non trovato");
+            return;
+        }
+        if (!result) {
+            Map<String, Object> body = jobs.status(entry);
+            if (entry.result() != null) {
+                body.put("resultUrl", "/api/reports/jobs/" + entry.id + "/result");
+            }
+            sendJson(exchange, 200, body);
+            return;
+        }
+
+        Path file = entry.result();
+        if (file == null) {
+            Map<String, Object> body = jobs.status(entry);
+            body.putIfAbsent("error", "Report non ancora pronto");
+            sendJson(exchange, 409, body);
+            return;
+        }
+        String timeString = LocalTime.ofInstant(Instant.ofEpochMilli(entry.submitted), ZoneId.systemDefault())
+            .format(DateTimeFormatter.ofPattern("HHmmss"));
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            sendError(exchange, 410, "Report non più disponibile");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", entry.contentType());
+        exchange.getResponseHeaders().set("Content-Disposition",
+            "attachment; filename=\"report" + timeString + "." + entry.extension() + "\"");
+        exchange.sendResponseHeaders(200, size == 0 ? -1 : size);
+        try (OutputStream body = exchange.getResponseBody()) {
+            Files.copy(file, body);
+        }
+    }
+
+    /**
+     * Endpoint per annullare un job in coda o eliminare uno terminato
+     */
+    private void deleteJob(HttpExchange exchange) throws IOException {
+        try {
+            if (!jobs.delete(jobPath(exchange))) {
+                sendError(exchange, 404, "Job non trovato");
+                return;
+            }
+        } catch (ReportJobs.JobRunningException e) {
+            sendError(exchange, 409, "Job in esecuzione, non può essere annullato");
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    /**
+     * Parte del path dopo /api/reports/jobs/ ("" per l'elenco)
+     */
+    private static String jobPath(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath().substring("/api/reports/jobs".length());
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Invia un report dalla cache. Il file viene aperto prima degli header:
+     * se l'eviction lo elimina durante l'invio resta leggibile fino alla
+     * chiusura, quindi la risposta non viene mai troncata.
+     * @return false se il file non esiste più (eliminato dopo lookup()):
+     *         nessuna risposta inviata, il report va generato
+     */
+    private boolean sendCached(HttpExchange exchange, OutputCache.Entry cached, String contentType,
+                               String filename, String etag) throws IOException {
+        InputStream in;
+        try {
+            in = Files.newInputStream(cached.path);
+        } catch (NoSuchFileException e) {
+            LOG.fine("Report rimosso dalla cache prima dell'invio, nuova generazione: " + cached.key);
+            return false;
+        }
+        try (in) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.sendResponseHeaders(200, cached.sizeBytes == 0 ? -1 : cached.sizeBytes);
+            try (OutputStream body = exchange.getResponseBody()) {
+                in.transferTo(body);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Invia il report generato per una richiesta identica, man mano che
+     * viene scritto; se la generazione fallisce risponde con lo stesso errore
+     * @return byte inviati, -1 se la generazione è fallita
+     */
+    private long sendCoalesced(HttpExchange exchange, SingleFlight.Flight flight, String contentType,
+                               String filename, String etag) throws Exception {
+        try {
+            flight.awaitStart();
+        } catch (SingleFlight.FlightFailedException e) {
+            if (e.status == 503) {
+                sendBusy(exchange);
+            } else {
+                sendError(exchange, e.status, e.getMessage());
+            }
+            return -1;
+        }
+        ResponseStream output = new ResponseStream(exchange, contentType, filename, etag);
+        flight.copyTo(output);
+        output.finish();
+        LOG.info("Report inviato da una generazione condivisa: " + filename + " ("
+            + output.bytesWritten() + " bytes)");
+        return output.bytesWritten();
+    }
+
+    private void recordJob(String designName, List<String> formats, String status, ReportMetrics.Timings timings,
+                           long startMillis, long outputBytes) {
+        metrics.record(designName, String.join(",", formats), status, timings,
+            TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - startMillis), outputBytes);
+    }
+
+    private static void failFlight(SingleFlight.Flight flight, int status, String message) {
+        if (flight != null) {
+            flight.fail(status, message);
+        }
+    }
+
+    /**
+     * Confronto If-None-Match (lista separata da virgole o "*")
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.strip();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Corpo della risposta scritto direttamente dal renderer
+     *
+     * L'intestazione 200 (chunked) parte al primo byte prodotto, così il client
+     * riceve il report mentre il rendering è ancora in corso e nulla passa dal
+     * disco. Finché non è stato scritto niente si può ancora rispondere con un
+     * errore. Il close() del renderer non chiude la risposta: la chiude finish().
+     */
+    private static class ResponseStream extends OutputStream {
+        private static final int BUFFER_SIZE = 16 * 1024;
+
+        private final HttpExchange exchange;
+        private final String contentType;
+        private final String filename;
+        private final String etag;
+        private OutputStream body;
+        private long written;
+
+        ResponseStream(HttpExchange exchange, String contentType, String filename, String etag) {
+            this.exchange = exchange;
+            this.contentType = contentType;
+            this.filename = filename;
+            this.etag = etag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+            written += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        boolean committed() {
+            return body != null;
+        }
+
+        long bytesWritten() {
+            return written;
+        }
+
+        /**
+         * Completa la risposta (anche se il report è vuoto)
+         */
+        void finish() throws IOException {
+            if (body == null) {
+                sendHeaders(-1);
+                exchange.getResponseBody().close();
+                return;
+            }
+            body.close();
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                sendHeaders(0);
+                body = new BufferedOutputStream(exchange.getResponseBody(), BUFFER_SIZE);
+            }
+            return body;
+        }
+
+        private void sendHeaders(long length) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+            }
+            exchange.sendResponseHeaders(200, length);
+        }
+    }
+
+    /**
+     * Stream verso la voce corrente di uno ZIP: il close() del renderer
+     * chiude solo la voce, non l'intero archivio
+     */
+    private static class ZipEntryStream extends FilterOutputStream {
+        private final ZipOutputStream zip;
+        private boolean closed;
+
+        ZipEntryStream(ZipOutputStream zip) {
+            super(zip);
+            this.zip = zip;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            zip.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Endpoint per registrare un design (multipart: birtFile)
+     * Risponde con il designId da usare in /generate
+     */
+    private void registerDesign(HttpExchange exchange) throws Exception {
+        MultipartForm form = parseForm(exchange);
+        if (form == null) {
+            return;
+        }
+        MultipartForm.Part file = designFile(exchange, form);
+        if (file == null) {
+            return;
+        }
+
+        boolean known = designRepository.get(DesignCache.sha256(file.data)) != null;
+        if (!known) {
+            // Il design viene aperto subito: se BIRT non lo accetta non viene salvato
+            try (ReportEnginePool.Lease lease = pool.acquire()) {
+                designCache.get(lease.engine(), file.filename, file.data);
+            } catch (TimeoutException e) {
+                sendBusy(exchange);
+                return;
+            } catch (EngineException e) {
+                sendError(exchange, 400, "Design non valido: " + e.getMessage());
+                return;
+            }
+        }
+
+        DesignRepository.StoredDesign stored = designRepository.register(file.data);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("designId", stored.id);
+        body.put("size", stored.data.length);
+        sendJson(exchange, known ? 200 : 201, body);
+    }
+
+    /**
+     * Endpoint per elencare i design registrati
+     */
+    private void listDesigns(HttpExchange exchange) throws IOException {
+        List<Map<String, Object>> designs = new ArrayList<>();
+        for (DesignRepository.StoredDesign stored : designRepository.list()) {
+            Map<String, Object> design = new LinkedHashMap<>();
+            design.put("designId", stored.id);
+            design.put("size", stored.data.length);
+            designs.add(design);
+        }
+        sendJson(exchange, 200, Map.of("designs", designs));
+    }
+
+    /**
+     * Apre in anticipo i design registrati su ogni engine del pool, così la
+     * prima richiesta trova la cache calda qualunque engine le tocchi.
+     * Gira all'avvio, prima che il server accetti richieste.
+     */
+    private void preloadDesigns() {
+        List<IReportEngine> engines = pool.engines();
+        for (DesignRepository.StoredDesign stored : designRepository.list()) {
+            try {
+                for (IReportEngine engine : engines) {
+                    designCache.get(engine, stored.path.toString(), stored.data);
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Precaricamento design " + stored.id + " fallito", e);
+            }
+        }
+    }
+
+    /**
+     * Legge il body multipart; in caso di errore risponde e restituisce null
+     */
+    private MultipartForm parseForm(HttpExchange exchange) throws IOException {
+        try {
+            return MultipartForm.parse(exchange.getRequestHeaders().getFirst("Content-Type"),
+                exchange.getRequestBody(), config.maxUploadBytes);
+        } catch (MultipartForm.TooLargeException e) {
+            sendError(exchange, 413, "File troppo grande. Massimo " + config.maxUploadBytes / (1024 * 1024) + "MB");
+        } catch (IOException e) {
+            sendError(exchange, 400, "Richiesta multipart non valida: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Design della richiesta: registrato (designId) o caricato (birtFile)
+     */
+    private static class RequestDesign {
+        final String name;
+        final byte[] data;
+        final String hash;
+
+        RequestDesign(String name, byte[] data, String hash) {
+            this.name = name;
+            this.data = data;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Design registrato (designId) oppure caricato con la richiesta (birtFile);
+     * se manca o non è valido risponde e restituisce null
+     */
+    private RequestDesign requestDesign(HttpExchange exchange, MultipartForm form) throws IOException {
+        String designId = form.field("designId");
+        if (designId != null && !designId.isBlank()) {
+            DesignRepository.StoredDesign stored = designRepository.get(designId.strip());
+            if (stored == null) {
+                sendError(exchange, 404, "Design '" + designId.strip() + "' non registrato");
+                return null;
+            }
+            return new RequestDesign(stored.path.toString(), stored.data, stored.id);
+        }
+        MultipartForm.Part file = designFile(exchange, form);
+        if (file == null) {
+            return null;
+        }
+        return new RequestDesign(file.filename, file.data, DesignCache.sha256(file.data));
+    }
+
+    /**
+     * jsonApiUrl del form; se manca o non è valido risponde e restituisce null
+     */
+    private String jsonApiUrl(HttpExchange exchange, MultipartForm form) throws IOException {
+        String jsonApiUrl = form.field("jsonApiUrl") == null ? "" : form.field("jsonApiUrl").strip();
+        if (jsonApiUrl.isEmpty()) {
+            sendError(exchange, 400, "jsonApiUrl mancante");
+            return null;
+        }
+        if (!jsonApiUrl.startsWith("http")) {
+            sendError(exchange, 400, "jsonApiUrl deve iniziare con http:// o https://");
+            return null;
+        }
+        return jsonApiUrl;
+    }
+
+    /**
+     * File .rptdesign del form; se manca o non è valido risponde e restituisce null
+     */
+    private MultipartForm.Part designFile(HttpExchange exchange, MultipartForm form) throws IOException {
+        MultipartForm.Part file = form.file("birtFile");
+        if (file == null) {
+            sendError(exchange, 400, "File BIRT mancante");
+            return null;
+        }
+        if (file.filename.isEmpty()) {
+            sendError(exchange, 400, "Nessun file selezionato");
+            return null;
+        }
+        if (!file.filename.toLowerCase().endsWith(".rptdesign")) {
+            sendError(exchange, 400, "Tipo file non valido. Usa .rptdesign");
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Handler di un endpoint
+     */
+    interface Endpoint {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+
+    /**
+     * Handler di un endpoint che genera report, con il posto riservato da
+     * ReportEnginePool.admit()
+     */
+    interface AdmittedEndpoint {
+        void handle(HttpExchange exchange, ReportEnginePool.Admission admission) throws Exception;
+    }
+
+    /**
+     * Endpoint che genera report: con il pool saturo e la coda piena risponde
+     * subito 429, prima di leggere il body e scaricare i dati. Il posto
+     * riservato si libera quando la richiesta ottiene un engine o termina.
+     */
+    private Endpoint admitted(AdmittedEndpoint endpoint) {
+        return exchange -> {
+            ReportEnginePool.Admission admission;
+            try {
+                admission = pool.admit();
+            } catch (ReportEnginePool.OverloadedException e) {
+                LOG.warning("Richiesta respinta: " + e.getMessage());
+                sendTooManyRequests(exchange, e.retryAfterSeconds);
+                return;
+            }
+            try (admission) {
+                endpoint.handle(exchange, admission);
+            }
+        };
+    }
+
+    /**
+     * Associa un endpoint a un metodo HTTP, con CORS e gestione errori comuni
+     */
+    private HttpHandler route(String method, Endpoint endpoint) {
+        return route(Map.of(method, endpoint));
+    }
+
+    /**
+     * Associa più metodi HTTP allo stesso path
+     */
+    private HttpHandler route(Map<String, Endpoint> endpoints) {
+        String allowed = String.join(", ", new TreeSet<>(endpoints.keySet()));
+        return exchange -> {
+            boolean abort = false;
+            try {
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                if (exchange.getRequestMethod().equals("OPTIONS")) {
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Methods", allowed + ", OPTIONS");
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "*");
+                    exchange.sendResponseHeaders(204, -1);
+                    return;
+                }
+                Endpoint endpoint = endpoints.get(exchange.getRequestMethod());
+                if (endpoint == null) {
+                    exchange.getResponseHeaders().set("Allow", allowed);
+                    sendError(exchange, 405, "Metodo non consentito");
+                    return;
+                }
+                endpoint.handle(exchange);
+            } catch (Exception e) {
+                if (exchange.getResponseCode() != -1) {
+                    // Risposta già in streaming: niente chunk finale, l'eccezione
+                    // fa chiudere la connessione e il client vede il download troncato
+                    LOG.log(Level.SEVERE, "Risposta interrotta dopo l'invio dell'intestazione", e);
+                    abort = true;
+                    throw e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                LOG.log(Level.SEVERE, "Errore interno del server", e);
+                sendError(exchange, 500, "Errore interno del server");
+            } finally {
+                if (!abort) {
+                    exchange.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * 503: nessun engine libero entro pool.acquireTimeoutMs
+     */
+    private void sendBusy(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(pool.retryAfterSeconds()));
+        sendError(exchange, 503, "Server occupato, riprova più tardi");
+    }
+
+    /**
+     * 429 con Retry-After: il client riprova dopo i secondi indicati
+     */
+    private void sendTooManyRequests(HttpExchange exchange, int retryAfterSeconds) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "Troppe richieste, riprova tra " + retryAfterSeconds + " secondi");
+        body.put("retryAfter", retryAfterSeconds);
+        sendJson(exchange, 429, body);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", message));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.report.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Coda persistente dei report asincroni (/api/reports/jobs)
+ *
+ * Un job inviato viene salvato subito su disco in una directory propria
+ * (report.jobs.dir, default baseDir/jobs): job.json con richiesta e stato,
+ * design.rptdesign e, a fine generazione, result.<estensione> (uno ZIP con
+ * più formati). Il client riceve l'ID e interroga lo stato finché il job non
+ * è "done" o "failed", poi scarica il risultato.
+ *
+ * I worker (report.jobs.workers, default la capacità del pool) sono virtual
+ * thread che prendono i job in ordine di arrivo e li generano come un job di
+ * /batch, con un engine del pool condiviso e l'OutputCache. Al riavvio i job
+ * "queued" e quelli "running" interrotti tornano in coda; quelli terminati
+ * restano scaricabili per report.jobs.retentionHours (default 24). Un job
+ * avviato report.jobs.maxAttempts volte (default 5) senza terminare, perché
+ * il server si è fermato durante la generazione o il pool era sempre
+ * occupato, viene chiuso come "failed" invece di tornare in coda.
+ */
+class ReportJobs {
+    private static final Logger LOG = Logger.getLogger(ReportJobs.class.getName());
+    private static final Pattern JOB_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final String METADATA = "job.json";
+    private static final String DESIGN = "design.rptdesign";
+    private static final String RESULT = "result.";
+
+    static final String QUEUED = "queued";
+    static final String RUNNING = "running";
+    static final String DONE = "done";
+    static final String FAILED = "failed";
+
+    /**
+     * Coda piena (risposta 429)
+     */
+    static class QueueFullException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        QueueFullException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Job ancora in esecuzione (risposta 409)
+     */
+    static class JobRunningException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        JobRunningException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Un job della coda: richiesta e stato, come in job.json
+     *
+     * I dati del design restano su disco finché il job non parte.
+     */
+    static class Entry {
+        final String id;
+        final Path directory;
+        final String designName;
+        final String designHash;
+        final String jsonApiUrl;
+        final List<String> formats;
+        final Map<String, String> parameters;
+        final long submitted;
+        String state;
+        long started;
+        long finished;
+        String error;
+        String resultFile;
+        long resultBytes;
+        boolean cached;
+        int attempts;
+
+        Entry(String id, Path directory, String designName, String designHash, String jsonApiUrl,
+              List<String> formats, Map<String, String> parameters, long submitted) {
+            this.id = id;
+            this.directory = directory;
+            this.designName = designName;
+            this.designHash = designHash;
+            this.jsonApiUrl = jsonApiUrl;
+            this.formats = formats;
+            this.parameters = parameters;
+            this.submitted = submitted;
+            this.state = QUEUED;
+        }
+
+        synchronized boolean finished() {
+            return state.equals(DONE) || state.equals(FAILED);
+        }
+
+        /**
+         * File del risultato, o null se il job non è "done"
+         */
+        synchronized Path result() {
+            return state.equals(DONE) && resultFile != null ? directory.resolve(resultFile) : null;
+        }
+
+        /**
+         * Estensione del risultato: quella del formato, "zip" con più formati
+         */
+        String extension() {
+            return formats.size() > 1 ? "zip" : BirtDesignToDocument.extension(formats.get(0));
+        }
+
+        String contentType() {
+            return formats.size() > 1 ? "application/zip" : BirtDesignToDocument.mimeType(formats.get(0));
+        }
+    }
+
+    private final ReportBatch batch;
+    private final Path directory;
+    private final int workers;
+    private final int maxQueued;
+    private final long retentionMillis;
+    private final int maxAttempts;
+    private final Map<String, Entry> jobs = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param maxAttempts avvii massimi di un job, 0 per nessun limite
+     */
+    ReportJobs(ReportBatch batch, Path directory, int workers, int maxQueued, long retentionMillis, int maxAttempts) {
+        this.batch = batch;
+        this.directory = directory;
+        this.workers = Math.max(1, workers);
+        this.maxQueued = maxQueued;
+        this.retentionMillis = retentionMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Coda configurata con ServerConfig (report.jobs.*)
+     */
+    static ReportJobs fromConfig(ServerConfig config, ReportEnginePool pool, ReportBatch batch) {
+        return new ReportJobs(batch,
+            Paths.get(ServerConfig.setting("report.jobs.dir", config.baseDir.resolve("jobs").toString())),
+            ServerConfig.intSetting("report.jobs.workers", pool.capacity()),
+            ServerConfig.intSetting("report.jobs.maxQueued", 1000),
+            ServerConfig.longSetting("report.jobs.retentionHours", 24) * 3600 * 1000,
+            ServerConfig.intSetting("report.jobs.maxAttempts", 5));
+    }
+
+    /**
+     * Rilegge i job salvati e rimette in coda quelli non terminati
+     */
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Entry> pending = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory)) {
+            for (Path dir : dirs) {
+                String id = dir.getFileName().toString();
+                Path metadata = dir.resolve(METADATA);
+                if (!JOB_ID.matcher(id).matches() || !Files.isRegularFile(metadata)) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = read(id, dir, mapper.readTree(metadata.toFile()));
+                } catch (IOException | RuntimeException e) {
+                    LOG.log(Level.WARNING, "Job ignorato, job.json non leggibile: " + dir, e);
+                    continue;
+                }
+                jobs.put(id, entry);
+                if (!entry.finished() && attemptsExhausted(entry)) {
+                    fail(entry, tooManyAttempts(entry));
+                } else if (!entry.finished()) {
+                    // "running" al riavvio: il server si è fermato durante la generazione
+                    entry.state = QUEUED;
+                    entry.started = 0;
+                    pending.add(entry);
+                }
+            }
+        }
+        pending.sort(Comparator.comparingLong(e -> e.submitted));
+        for (Entry entry : pending) {
+            queue.add(entry.id);
+        }
+        purgeExpired();
+        LOG.info("Job caricati: " + jobs.size() + " (" + pending.size() + " in coda)");
+    }
+
+    /**
+     * Avvia i worker
+     */
+    synchronized void start() {
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofVirtual().name("report-job-", i).start(this::work));
+        }
+    }
+
+    /**
+     * Ferma i worker: i job in esecuzione restano "running" su disco e
+     * ripartono al prossimo avvio
+     */
+    synchronized void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+    }
+
+    /**
+     * Salva un job e lo mette in coda
+     */
+    Entry submit(String designName, byte[] designData, String designHash, String jsonApiUrl,
+                 List<String> formats, Map<String, String> parameters) throws IOException, QueueFullException {
+        purgeExpired();
+        if (queue.size() >= maxQueued) {
+            throw new QueueFullException("Coda piena: " + queue.size() + " job in attesa");
+        }
+        String id = UUID.randomUUID().toString();
+        Path dir = directory.resolve(id);
+        Files.createDirectories(dir);
+        Entry entry = new Entry(id, dir, designName, designHash, jsonApiUrl, List.copyOf(formats),
+            new LinkedHashMap<>(parameters), System.currentTimeMillis());
+        try {
+            Files.write(dir.resolve(DESIGN), designData);
+            save(entry);
+        } catch (IOException e) {
+            deleteDirectory(dir);
+            throw e;
+        }
+        jobs.put(id, entry);
+        queue.add(id);
+        LOG.info("Job " + id + " in coda (" + String.join(",", formats) + ", " + queue.size() + " in attesa)");
+        return entry;
+    }
+
+    /**
+     * Job con l'ID indicato, o null
+     */
+    Entry get(String id) {
+        return id == null || !JOB_ID.matcher(id).matches() ? null : jobs.get(id);
+    }
+
+    /**
+     * Tutti i job, in ordine di invio
+     */
+    List<Entry> list() {
+        List<Entry> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparingLong(e -> e.submitted));
+        return list;
+    }
+
+    /**
+     * Annulla un job in coda o elimina uno terminato
+     * @return false se il job non esiste
+     */
+    boolean delete(String id) throws JobRunningException {
+        Entry entry = get(id);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.state.equals(RUNNING)) {
+                throw new JobRunningException("Job " + id + " in esecuzione");
+            }
+            queue.remove(id);
+            jobs.remove(id);
+        }
+        deleteDirectory(entry.directory);
+        return true;
+    }
+
+    /**
+     * Stato di un job per la risposta JSON
+     */
+    Map<String, Object> status(Entry entry) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        synchronized (entry) {
+            body.put("jobId", entry.id);
+            body.put("status", entry.state);
+            body.put("formats", entry.formats);
+            body.put("submittedAt", Instant.ofEpochMilli(entry.submitted).toString());
+            if (entry.state.equals(QUEUED)) {
+                body.put("position", position(entry.id));
+            }
+            if (entry.started > 0) {
+                body.put("startedAt", Instant.ofEpochMilli(entry.started).toString());
+                body.put("queueMillis", entry.started - entry.submitted);
+            }
+            if (entry.finished > 0) {
+                body.put("finishedAt", Instant.ofEpochMilli(entry.finished).toString());
+                body.put("runMillis", entry.finished - entry.started);
+            } else if (entry.started > 0) {
+                body.put("runMillis", System.currentTimeMillis() - entry.started);
+            }
+            if (entry.state.equals(DONE)) {
+                body.put("size", entry.resultBytes);
+                body.put("cached", entry.cached);
+            }
+            if (entry.error != null) {
+                body.put("error", entry.error);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Numero di job per stato, per /health
+     */
+    Map<String, Integer> counts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String state : List.of(QUEUED, RUNNING, DONE, FAILED)) {
+            counts.put(state, 0);
+        }
+        for (Entry entry : jobs.values()) {
+            synchronized (entry) {
+                counts.merge(entry.state, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private int position(String id) {
+        int position = 1;
+        for (String queued : queue) {
+            if (queued.equals(id)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Entry entry = jobs.get(queue.take());
+                if (entry != null) {
+                    run(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop()
+        }
+    }
+
+    private void run(Entry entry) throws InterruptedException {
+        byte[] designData;
+        synchronized (entry) {
+            // Eliminato o già preso da un altro worker
+            if (!entry.state.equals(QUEUED) || jobs.get(entry.id) != entry) {
+                return;
+            }
+            if (attemptsExhausted(entry)) {
+                fail(entry, tooManyAttempts(entry));
+                return;
+            }
+            try {
+                designData = Files.readAllBytes(entry.directory.resolve(DESIGN));
+            } catch (IOException e) {
+                fail(entry, "Design del job non leggibile: " + e.getMessage());
+                return;
+            }
+            entry.state = RUNNING;
+            entry.started = System.currentTimeMillis();
+            entry.attempts++;
+            saveQuietly(entry);
+        }
+
+        ReportBatch.Job job = new ReportBatch.Job(entry.id, entry.designName, designData, entry.designHash,
+            entry.jsonApiUrl, entry.formats, entry.parameters);
+        ReportBatch.Result result = batch.execute(job);
+        try {
+            if (result.noEngine) {
+                // Pool occupato anche dalle richieste sincrone: il job torna in fondo alla coda
+                synchronized (entry) {
+                    entry.state = QUEUED;
+                    entry.started = 0;
+                    saveQuietly(entry);
+                }
+                queue.add(entry.id);
+                return;
+            }
+            if (result.error != null) {
+                fail(entry, result.error);
+                return;
+            }
+            Path file;
+            try {
+                file = storeResult(entry, result);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Risultato del job " + entry.id + " non salvato", e);
+                fail(entry, "Risultato non salvato: " + e.getMessage());
+                return;
+            }
+            synchronized (entry) {
+                entry.state = DONE;
+                entry.finished = System.currentTimeMillis();
+                entry.resultFile = file.getFileName().toString();
+                entry.resultBytes = sizeOf(file);
+                entry.cached = result.cached;
+                saveQuietly(entry);
+            }
+            LOG.info("Job " + entry.id + " completato (" + entry.resultBytes + " bytes, "
+                + (entry.finished - entry.started) + " ms)");
+        } finally {
+            ReportBatch.deleteTemporary(result);
+        }
+    }
+
+    /**
+     * Sposta (o copia, se in cache) i file generati nella directory del job
+     */
+    private static Path storeResult(Entry entry, ReportBatch.Result result) throws IOException {
+        Path target = entry.directory.resolve(RESULT + entry.extension());
+        Path tmp = entry.directory.resolve(RESULT + entry.extension() + ".tmp");
+        try {
+            if (result.files.size() == 1) {
+                Path file = result.files.values().iterator().next();
+                if (result.temporary.remove(file)) {
+                    Files.move(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else {
+                try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    for (Map.Entry<String, Path> file : result.files.entrySet()) {
+                        // "<jobId>.pdf" -> "report.pdf", come le voci di /generate
+                        zip.putNextEntry(new ZipEntry("report" + file.getKey().substring(entry.id.length())));
+                        Files.copy(file.getValue(), zip);
+                        zip.closeEntry();
+                    }
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return target;
+    }
+
+    private boolean attemptsExhausted(Entry entry) {
+        return maxAttempts > 0 && entry.attempts >= maxAttempts;
+    }
+
+    private static String tooManyAttempts(Entry entry) {
+        return "Job non completato dopo " + entry.attempts + " tentativi (report.jobs.maxAttempts)";
+    }
+
+    private void fail(Entry entry, String error) {
+        synchronized (entry) {
+            entry.state = FAILED;
+            entry.finished = System.currentTimeMillis();
+            entry.error = error;
+            saveQuietly(entry);
+        }
+        LOG.warning("Job " + entry.id + " fallito: " + error);
+    }
+
+    /**
+     * Elimina i job terminati da più di report.jobs.retentionHours
+     */
+    private void purgeExpired() {
+        long limit = System.currentTimeMillis() - retentionMillis;
+        for (Iterator<Entry> it = jobs.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            synchronized (entry) {
+                if (!entry.finished() || entry.finished >= limit) {
+                    continue;
+                }
+                it.remove();
+            }
+            deleteDirectory(entry.directory);
+        }
+    }
+
+    private static Entry read(String id, Path dir, JsonNode node) {
+        List<String> formats = new ArrayList<>();
+        for (JsonNode format : node.get("formats")) {
+            formats.add(format.asText());
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        JsonNode params = node.get("parameters");
+        if (params != null) {
+            for (Map.Entry<String, JsonNode> param : params.properties()) {
+                parameters.put(param.getKey(), param.getValue().isNull() ? null : param.getValue().asText());
+            }
+        }
+        Entry entry = new Entry(id, dir, node.get("designName").asText(), node.get("designHash").asText(),
+            node.get("jsonApiUrl").asText(), formats, parameters, node.get("submitted").asLong());
+        entry.state = node.get("state").asText();
+        entry.started = node.path("started").asLong();
+        entry.finished = node.path("finished").asLong();
+        entry.error = node.hasNonNull("error") ? node.get("error").asText() : null;
+        entry.resultFile = node.hasNonNull("result") ? node.get("result").asText() : null;
+        entry.resultBytes = node.path("resultBytes").asLong();
+        entry.cached = node.path("cached").asBoolean();
+        entry.attempts = node.path("attempts").asInt();
+        return entry;
+    }
+
+    /**
+     * Scrive job.json (file temporaneo + rename, mai a metà)
+     */
+    private void save(Entry entry) throws IOException {
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("id", entry.id);
+        node.put("state", entry.state);
+        node.put("designName", entry.designName);
+        node.put("designHash", entry.designHash);
+        node.put("jsonApiUrl", entry.jsonApiUrl);
+        node.put("formats", entry.formats);
+        node.put("parameters", entry.parameters);
+        node.put("submitted", entry.submitted);
+        node.put("started", entry.started);
+        node.put("finished", entry.finished);
+        node.put("error", entry.error);
+        node.put("result", entry.resultFile);
+        node.put("resultBytes", entry.resultBytes);
+        node.put("cached", entry.cached);
+        node.put("attempts", entry.attempts);
+        Path tmp = entry.directory.resolve(METADATA + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(out, node);
+        }
+        Files.move(tmp, entry.directory.resolve(METADATA), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void saveQuietly(Entry entry) {
+        try {
+            save(entry);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Stato del job " + entry.id + " non salvato", e);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteDirectory(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Impossibile eliminare " + dir, e);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.report.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriche dei report per design e formato, in formato testo Prometheus
+ *
+ * Ogni job raccoglie in un Timings il tempo delle fasi (attesa engine,
+ * avvio Platform nella CLI, apertura design, lettura parametri, attesa dati,
+ * run e render) e i contatori (righe lette dal design, pagine, byte prodotti);
+ * a fine job record() li aggiunge agli istogrammi di latenza per design e
+ * formato. Con run-and-render (un solo formato) layout e render sono una
+ * sola chiamata BIRT e finiscono nella fase "run"; con più formati "run" è
+ * il layout e "render" la somma dei render. Le pagine sono note solo in
+ * quel caso (documento intermedio).
+ *
+ * Job e fasi sono anche eventi JFR (ReportEvents), con ID del job, hash del
+ * design e formato.
+ *
+ * I nomi dei design sono un'etichetta: oltre report.metrics.maxDesigns nomi
+ * diversi i nuovi design finiscono in "other", per non far crescere senza
+ * limite le serie.
+ */
+class ReportMetrics {
+    static final String ENGINE_WAIT = "engine_wait";
+    static final String STARTUP = "startup";
+    static final String DESIGN_OPEN = "design_open";
+    static final String PARAMETERS = "parameters";
+    static final String DATA_FETCH = "data_fetch";
+    static final String RUN = "run";
+    static final String RENDER = "render";
+
+    // Limiti superiori dei bucket degli istogrammi, in secondi
+    private static final double[] BUCKETS = {0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+    private static final String OTHER_DESIGN = "other";
+
+    /**
+     * Misure di un job, riempite durante la generazione (anche da più
+     * thread nella modalità burst). Si crea con start() e si chiude con record().
+     */
+    static class Timings {
+        final String jobId;
+        final String design;
+        final String designHash;
+        final String format;
+        final long startNanos = System.nanoTime();
+        private final ReportEvents.JobEvent event = new ReportEvents.JobEvent();
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+        private long rows;
+        private long pages;
+
+        private Timings(String jobId, String design, String designHash, String format) {
+            this.jobId = jobId;
+            this.design = design;
+            this.designHash = designHash;
+            this.format = format;
+            event.begin();
+        }
+
+        /**
+         * Inizio di una fase: la durata viene registrata da Phase.end()
+         */
+        Phase begin(String phase) {
+            return new Phase(this, phase);
+        }
+
+        /**
+         * Aggiunge durationNanos alla fase (le fasi ripetute si sommano)
+         */
+        synchronized void add(String phase, long durationNanos) {
+            phases.merge(phase, durationNanos, Long::sum);
+        }
+
+        synchronized void addRows(long count) {
+            rows += count;
+        }
+
+        synchronized void addPages(long count) {
+            pages += count;
+        }
+
+        synchronized Map<String, Long> phases() {
+            return new LinkedHashMap<>(phases);
+        }
+
+        synchronized long rows() {
+            return rows;
+        }
+
+        synchronized long pages() {
+            return pages;
+        }
+    }
+
+    /**
+     * Fase in corso di un job (anche senza Timings: in quel caso non misura nulla)
+     */
+    static class Phase {
+        private final Timings timings;
+        private final String name;
+        private final long start = System.nanoTime();
+        private final ReportEvents.PhaseEvent event;
+
+        Phase(Timings timings, String name) {
+            this.timings = timings;
+            this.name = name;
+            this.event = timings != null ? new ReportEvents.PhaseEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+        }
+
+        /**
+         * Fine della fase: durata nei Timings ed evento JFR
+         */
+        void end() {
+            if (timings == null) {
+                return;
+            }
+            timings.add(name, System.nanoTime() - start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.jobId = timings.jobId;
+                event.designHash = timings.designHash;
+                event.format = timings.format;
+                event.phase = name;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Istogramma cumulativo con i bucket di BUCKETS
+     */
+    private static class Histogram {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+        final DoubleAdder sum = new DoubleAdder();
+
+        void observe(double seconds) {
+            int bucket = 0;
+            while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            sum.add(seconds);
+        }
+    }
+
+    /**
+     * Serie di un design e formato
+     */
+    private static class Series {
+        final Map<String, LongAdder> jobs = new ConcurrentHashMap<>();
+        final Histogram duration = new Histogram();
+        final Map<String, Histogram> phases = new ConcurrentHashMap<>();
+        final LongAdder rows = new LongAdder();
+        final LongAdder pages = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+
+    private final int maxDesigns;
+    private final Set<String> designs = ConcurrentHashMap.newKeySet();
+    // Chiave: design + "\n" + formato
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Set<Timings> running = ConcurrentHashMap.newKeySet();
+
+    ReportMetrics(int maxDesigns) {
+        this.maxDesigns = maxDesigns;
+    }
+
+    /**
+     * Metriche da ServerConfig (report.metrics.maxDesigns)
+     */
+    static ReportMetrics fromConfig() {
+        return new ReportMetrics(ServerConfig.intSetting("report.metrics.maxDesigns", 50));
+    }
+
+    /**
+     * Inizio di un job: le misure vanno chiuse con record()
+     * @param jobId ID del job (per le richieste sincrone un ID generato)
+     * @param format formato o formati separati da virgola
+     */
+    Timings start(String jobId, String design, String designHash, String format) {
+        Timings timings = new Timings(jobId, design, designHash, format);
+        running.add(timings);
+        return timings;
+    }
+
+    /**
+     * Job iniziati con start() e non ancora registrati (per il watchdog)
+     */
+    List<Timings> running() {
+        return new ArrayList<>(running);
+    }
+
+    /**
+     * Registra un job terminato
+     * @param status ok, error, cached (dalla cache dei report), coalesced
+     *               (da una generazione identica in corso), busy (nessun engine)
+     * @param timings misure del job, o null se non c'è stata generazione
+     * @param outputBytes byte prodotti (0 se sconosciuti)
+     */
+    void record(String design, String format, String status, Timings timings, long durationNanos,
+                long outputBytes) {
+        Series target = series.computeIfAbsent(designLabel(design) + "\n" + format, key -> new Series());
+        target.jobs.computeIfAbsent(status, key -> new LongAdder()).increment();
+        target.duration.observe(durationNanos / 1e9);
+        target.bytes.add(outputBytes);
+        if (timings != null) {
+            running.remove(timings);
+            for (Map.Entry<String, Long> phase : timings.phases().entrySet()) {
+                target.phases.computeIfAbsent(phase.getKey(), key -> new Histogram()).observe(phase.getValue() / 1e9);
+            }
+            target.rows.add(timings.rows());
+            target.pages.add(timings.pages());
+            commit(timings, status, outputBytes);
+        }
+    }
+
+    private static void commit(Timings timings, String status, long outputBytes) {
+        ReportEvents.JobEvent event = timings.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.jobId = timings.jobId;
+            event.design = timings.design;
+            event.designHash = timings.designHash;
+            event.format = timings.format;
+            event.status = status;
+            event.rows = timings.rows();
+            event.pages = timings.pages();
+            event.outputBytes = outputBytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Serie dei job in testo Prometheus (le metriche di pool e cache le
+     * aggiunge il chiamante con lo stesso Writer)
+     */
+    void writeTo(Writer out) {
+        Map<String, Series> sorted = new TreeMap<>(series);
+
+        out.family("report_jobs_total", "counter", "Report terminati per design, formato ed esito");
+        sorted.forEach((key, value) -> value.jobs.forEach((status, count) ->
+            out.sample("report_jobs_total", labels(key, "status", status), count.sum())));
+
+        out.family("report_duration_seconds", "histogram", "Durata totale dei report");
+        sorted.forEach((key, value) -> out.histogram("report_duration_seconds", labels(key), value.duration));
+
+        out.family("report_phase_seconds", "histogram", "Durata delle fasi della generazione");
+        sorted.forEach((key, value) -> new TreeMap<>(value.phases).forEach((phase, histogram) ->
+            out.histogram("report_phase_seconds", labels(key, "phase", phase), histogram)));
+
+        out.family("report_rows_total", "counter", "Righe JSON lette dai design");
+        sorted.forEach((key, value) -> out.sample("report_rows_total", labels(key), value.rows.sum()));
+
+        out.family("report_pages_total", "counter", "Pagine prodotte (solo report con documento intermedio)");
+        sorted.forEach((key, value) -> out.sample("report_pages_total", labels(key), value.pages.sum()));
+
+        out.family("report_output_bytes_total", "counter", "Byte dei report prodotti");
+        sorted.forEach((key, value) -> out.sample("report_output_bytes_total", labels(key), value.bytes.sum()));
+    }
+
+    private String designLabel(String design) {
+        String name = design == null || design.isBlank() ? "unknown" : design;
+        if (designs.contains(name)) {
+            return name;
+        }
+        synchronized (designs) {
+            if (designs.size() < maxDesigns) {
+                designs.add(name);
+                return name;
+            }
+        }
+        return designs.contains(name) ? name : OTHER_DESIGN;
+    }
+
+    private static Map<String, String> labels(String key, String... extra) {
+        int separator = key.indexOf('\n');
+        Map<String, String> labels = new LinkedHashMap<>();
+        labels.put("design", key.substring(0, separator));
+        labels.put("format", key.substring(separator + 1));
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            labels.put(extra[i], extra[i + 1]);
+        }
+        return labels;
+    }
+
+    /**
+     * Testo in formato di esposizione Prometheus (text/plain; version=0.0.4)
+     */
+    static class Writer {
+        static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * Intestazione di una metrica: va scritta una volta prima dei campioni
+         */
+        Writer family(String name, String type, String help) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            return this;
+        }
+
+        Writer sample(String name, Map<String, String> labels, double value) {
+            text.append(name);
+            if (!labels.isEmpty()) {
+                text.append('{');
+                boolean first = true;
+                for (Map.Entry<String, String> label : labels.entrySet()) {
+                    if (!first) {
+                        text.append(',');
+                    }
+                    first = false;
+                    text.append(label.getKey()).append("=\"").append(escape(label.getValue())).append('"');
+                }
+                text.append('}');
+            }
+            text.append(' ').append(format(value)).append('\n');
+            return this;
+        }
+
+        /**
+         * Metrica senza etichette, con intestazione
+         */
+        Writer single(String name, String type, String help, double value) {
+            return family(name, type, help).sample(name, Map.of(), value);
+        }
+
+        private void histogram(String name, Map<String, String> labels, Histogram histogram) {
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS.length; i++) {
+                cumulative += histogram.counts.get(i);
+                Map<String, String> bucket = new LinkedHashMap<>(labels);
+                bucket.put("le", i < BUCKETS.length ? format(BUCKETS[i]) : "+Inf");
+                sample(name + "_bucket", bucket, cumulative);
+            }
+            sample(name + "_sum", labels, histogram.sum.sum());
+            sample(name + "_count", labels, cumulative);
+        }
+
+        private static String format(double value) {
+            if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+                return Long.toString((long) value);
+            }
+            return Double.toString(value);
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.report.model;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Configurazione del server Java
+ *
+ * Ogni valore si legge da una system property (-Dreport.xxx), poi dalla
+ * variabile d'ambiente corrispondente (REPORT_XXX), infine dal default.
+ * Le directory di default sono le stesse di server.py (~/reports/...).
+ */
+class ServerConfig {
+    final int port;
+    final Path baseDir;
+    final Path birtHome;
+    final Path logDir;
+    final Path designDir;
+    final long maxUploadBytes;
+
+    private ServerConfig() {
+        this.port = intSetting("report.port", 5000);
+        this.baseDir = Paths.get(setting("report.baseDir", System.getProperty("user.home") + "/reports"));
+        this.birtHome = Paths.get(setting("report.birtHome", baseDir.resolve("birt").toString()));
+        this.logDir = baseDir.resolve("logs");
+        this.designDir = Paths.get(setting("report.designDir", baseDir.resolve("designs").toString()));
+        this.maxUploadBytes = longSetting("report.maxUploadBytes", 50L * 1024 * 1024); // 50MB
+    }
+
+    static ServerConfig load() {
+        return new ServerConfig();
+    }
+
+    /**
+     * Legge un'impostazione: system property, variabile d'ambiente o default
+     * (report.maxUploadBytes -> REPORT_MAXUPLOADBYTES)
+     */
+    static String setting(String property, String defaultValue) {
+        String value = System.getProperty(property);
+        if (value == null || value.isBlank()) {
+            value = System.getenv(property.replace('.', '_').toUpperCase());
+        }
+        return value == null || value.isBlank() ? defaultValue : value.strip();
+    }
+
+    static int intSetting(String property, int defaultValue) {
+        return Integer.parseInt(setting(property, Integer.toString(defaultValue)));
+    }
+
+    static long longSetting(String property, long defaultValue) {
+        return Long.parseLong(setting(property, Long.toString(defaultValue)));
+    }
+}
@@ -0,0 +1,371 @@
+package com.report.model;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Richieste identiche contemporanee servite da una sola generazione
+ *
+ * La prima richiesta per una chiave (stessa chiave dell'OutputCache: design,
+ * dati, parametri, formati) genera il report (leader); quelle che arrivano
+ * mentre è in corso si agganciano e ricevono gli stessi byte. Il leader
+ * scrive una copia del report in un file temporaneo (tee()), i follower lo
+ * leggono man mano che cresce (copyTo()), quindi ricevono i primi byte quasi
+ * insieme al leader. Se la generazione fallisce i follower ricevono lo stesso
+ * errore; se invece si disconnette il client del leader la generazione
+ * continua per i follower. Un follower attende i primi byte al più
+ * startTimeoutMs, poi risponde 503. Il file viene eliminato quando leader e
+ * follower hanno finito.
+ *
+ * Funziona con o senza OutputCache: la cache serve le richieste successive,
+ * SingleFlight quelle che arrivano durante la generazione.
+ */
+class SingleFlight {
+    private static final Logger LOG = Logger.getLogger(SingleFlight.class.getName());
+    // Byte scritti dal leader prima di renderli visibili ai follower
+    private static final int PUBLISH_BYTES = 64 * 1024;
+
+    /**
+     * Generazione fallita prima che il follower ricevesse byte
+     */
+    static class FlightFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        FlightFailedException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Esito di join(): la generazione e il ruolo della richiesta
+     */
+    static class Ticket {
+        final Flight flight;
+        // La richiesta genera il report (gli altri lo leggono)
+        final boolean leader;
+
+        Ticket(Flight flight, boolean leader) {
+            this.flight = flight;
+            this.leader = leader;
+        }
+    }
+
+    /**
+     * Una generazione in corso e le richieste agganciate
+     */
+    class Flight {
+        final String key;
+        private final Path spool;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        private long published;
+        private boolean finished;
+        private int failedStatus;
+        private String error;
+        private int users = 1;
+        private boolean deleted;
+        private volatile IOException targetError;
+
+        private Flight(String key, Path spool) {
+            this.key = key;
+            this.spool = spool;
+        }
+
+        /**
+         * Stream che scrive nel file letto dai follower e su target;
+         * close() non chiude target (come OutputCache.Writer). Un errore di
+         * target (client del leader disconnesso) non interrompe la
+         * generazione: target viene abbandonato e l'errore resta in
+         * targetError()
+         */
+        OutputStream tee(OutputStream target) throws IOException {
+            OutputStream file = new BufferedOutputStream(Files.newOutputStream(spool), PUBLISH_BYTES);
+            return new FilterOutputStream(target) {
+                private long written;
+                private long unpublished;
+                private boolean closed;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    file.write(b, off, len);
+                    if (targetError == null) {
+                        try {
+                            out.write(b, off, len);
+                        } catch (IOException e) {
+                            targetFailed(e);
+                        }
+                    }
+                    written += len;
+                    unpublished += len;
+                    if (unpublished >= PUBLISH_BYTES) {
+                        publish();
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (targetError == null) {
+                        try {
+                            out.flush();
+                        } catch (IOException e) {
+                            targetFailed(e);
+                        }
+                    }
+                    if (!closed) {
+                        publish();
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        flush();
+                        closed = true;
+                        file.close();
+                    }
+                }
+
+                private void publish() throws IOException {
+                    file.flush();
+                    unpublished = 0;
+                    lock.lock();
+                    try {
+                        published = written;
+                        changed.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            };
+        }
+
+        private void targetFailed(IOException e) {
+            targetError = e;
+            LOG.log(Level.FINE, "Client del leader non raggiungibile, generazione solo per i follower: " + key, e);
+        }
+
+        /**
+         * Errore di scrittura sul target di tee(), o null: il leader non ha
+         * ricevuto il report completo
+         */
+        IOException targetError() {
+            return targetError;
+        }
+
+        /**
+         * Report completo: i follower ricevono il resto del file.
+         * Lo stream di tee() deve essere già chiuso.
+         */
+        void complete() throws IOException {
+            long size = Files.size(spool);
+            finish(() -> published = size);
+        }
+
+        /**
+         * Generazione fallita: i follower rispondono con lo stesso stato
+         */
+        void fail(int status, String message) {
+            finish(() -> {
+                failedStatus = status;
+                error = message;
+            });
+        }
+
+        /**
+         * Attende i primi byte (o la fine) della generazione, al più startTimeoutMs
+         * @throws FlightFailedException se fallisce prima del primo byte o
+         *         non inizia in tempo (503)
+         */
+        void awaitStart() throws IOException, InterruptedException {
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(startTimeoutMs);
+                while (published == 0 && !finished) {
+                    if (remaining <= 0) {
+                        throw new FlightFailedException(503, "Generazione condivisa non iniziata entro "
+                            + startTimeoutMs + " ms");
+                    }
+                    remaining = changed.awaitNanos(remaining);
+                }
+                if (published == 0 && error != null) {
+                    throw new FlightFailedException(failedStatus, error);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Copia il report su out man mano che il leader lo scrive
+         * @throws IOException se la generazione fallisce a metà
+         */
+        void copyTo(OutputStream out) throws IOException, InterruptedException {
+            byte[] buffer = new byte[PUBLISH_BYTES];
+            long position = 0;
+            try (InputStream in = Files.newInputStream(spool)) {
+                while (true) {
+                    long available;
+                    boolean done;
+                    lock.lock();
+                    try {
+                        while (published == position && !finished) {
+                            changed.await();
+                        }
+                        available = published - position;
+                        done = finished;
+                        if (done && error != null) {
+                            throw new IOException("Generazione interrotta: " + error);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    while (available > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, available));
+                        if (read < 0) {
+                            throw new IOException("Report temporaneo troncato: " + spool);
+                        }
+                        out.write(buffer, 0, read);
+                        position += read;
+                        available -= read;
+                    }
+                    if (done) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fine della richiesta (leader o follower): l'ultima elimina il file
+         */
+        void release() {
+            boolean delete;
+            lock.lock();
+            try {
+                users--;
+                delete = users == 0 && finished && !deleted;
+                if (delete) {
+                    deleted = true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (delete) {
+                try {
+                    Files.deleteIfExists(spool);
+                } catch (IOException e) {
+                    LOG.log(Level.FINE, "Impossibile eliminare " + spool, e);
+                }
+            }
+        }
+
+        private boolean attach() {
+            lock.lock();
+            try {
+                if (deleted || (finished && error != null)) {
+                    return false;
+                }
+                users++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void finish(Runnable update) {
+            // Le richieste successive non si agganciano più: cache o nuova generazione
+            flights.remove(key, this);
+            lock.lock();
+            try {
+                if (finished) {
+                    return;
+                }
+                update.run();
+                finished = true;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final long startTimeoutMs;
+
+    SingleFlight(long startTimeoutMs) {
+        this.startTimeoutMs = startTimeoutMs;
+    }
+
+    /**
+     * SingleFlight da ServerConfig, o null con report.singleFlight.enabled=false.
+     * L'attesa dei primi byte (report.singleFlight.startTimeoutMs) è di
+     * default il doppio di report.pool.acquireTimeoutMs: il leader può
+     * attendere tanto un engine, poi deve ancora iniziare il render
+     */
+    static SingleFlight fromConfig() {
+        if (!Boolean.parseBoolean(ServerConfig.setting("report.singleFlight.enabled", "true"))) {
+            return null;
+        }
+        return new SingleFlight(ServerConfig.longSetting("report.singleFlight.startTimeoutMs",
+            2 * ServerConfig.longSetting("report.pool.acquireTimeoutMs", 300_000)));
+    }
+
+    /**
+     * Si aggancia alla generazione in corso per la chiave o ne avvia una
+     * (Ticket.leader). Ogni Flight va rilasciato con release().
+     */
+    Ticket join(String key) throws IOException {
+        while (true) {
+            Flight running = flights.get(key);
+            if (running != null) {
+                if (running.attach()) {
+                    coalesced.incrementAndGet();
+                    return new Ticket(running, false);
+                }
+                flights.remove(key, running);
+                continue;
+            }
+            Flight created = new Flight(key, Files.createTempFile("flight", ".tmp"));
+            if (flights.putIfAbsent(key, created) == null) {
+                return new Ticket(created, true);
+            }
+            Files.deleteIfExists(created.spool);
+        }
+    }
+
+    /**
+     * Generazioni in corso
+     */
+    int inFlight() {
+        return flights.size();
+    }
+
+    /**
+     * Richieste servite da una generazione già in corso
+     */
+    long coalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,192 @@
+package com.report.model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Registrazione JFR continua e dump automatico dei report lenti
+ *
+ * All'avvio parte una registrazione JFR a buffer circolare con le
+ * impostazioni report.jfr.settings ("default": campioni CPU, allocazioni,
+ * lock e GC con overhead intorno all'1%) che tiene solo gli ultimi
+ * report.jfr.maxAgeSeconds. Un thread guarda ogni secondo i job in corso
+ * (ReportMetrics.running()): quando uno supera report.jfr.slowThresholdMs
+ * la finestra recente viene salvata in logs/slow-report-<data>-<jobId>.jfr,
+ * accanto a server.log, mentre il job è ancora in corso. Nel file ci sono
+ * anche gli eventi com.report.Job e com.report.Phase (ReportEvents) per
+ * ritrovare il job e la fase in cui è fermo.
+ *
+ * Al più un dump ogni report.jfr.minDumpIntervalSeconds e uno per job; si
+ * tengono gli ultimi report.jfr.maxDumps file.
+ */
+class SlowReportWatchdog {
+    private static final Logger LOG = Logger.getLogger(SlowReportWatchdog.class.getName());
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String PREFIX = "slow-report-";
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    private final ReportMetrics metrics;
+    private final Path logDir;
+    private final String settings;
+    private final long thresholdMs;
+    private final long maxAgeSeconds;
+    private final long maxSizeBytes;
+    private final long minDumpIntervalMs;
+    private final int maxDumps;
+    // Job già salvati (o scartati per l'intervallo minimo) ancora in corso
+    private final Set<String> dumped = new HashSet<>();
+    private volatile Recording recording;
+    private Thread thread;
+    private long lastDumpMillis;
+
+    SlowReportWatchdog(ReportMetrics metrics, Path logDir, String settings, long thresholdMs, long maxAgeSeconds,
+                       long maxSizeBytes, long minDumpIntervalMs, int maxDumps) {
+        this.metrics = metrics;
+        this.logDir = logDir;
+        this.settings = settings;
+        this.thresholdMs = thresholdMs;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.maxSizeBytes = maxSizeBytes;
+        this.minDumpIntervalMs = minDumpIntervalMs;
+        this.maxDumps = maxDumps;
+    }
+
+    /**
+     * Watchdog da ServerConfig (report.jfr.*), o null se disabilitato
+     */
+    static SlowReportWatchdog fromConfig(ServerConfig config, ReportMetrics metrics) {
+        if (!Boolean.parseBoolean(ServerConfig.setting("report.jfr.enabled", "true"))) {
+            return null;
+        }
+        return new SlowReportWatchdog(metrics, config.logDir,
+            ServerConfig.setting("report.jfr.settings", "default"),
+            ServerConfig.longSetting("report.jfr.slowThresholdMs", 30000),
+            ServerConfig.longSetting("report.jfr.maxAgeSeconds", 300),
+            ServerConfig.longSetting("report.jfr.maxSizeMb", 100) * 1024 * 1024,
+            ServerConfig.longSetting("report.jfr.minDumpIntervalSeconds", 60) * 1000,
+            ServerConfig.intSetting("report.jfr.maxDumps", 20));
+    }
+
+    /**
+     * Avvia la registrazione e il controllo dei job. Se JFR non è
+     * disponibile il server parte comunque, senza dump.
+     */
+    synchronized void start() {
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            LOG.log(Level.WARNING, "JFR non disponibile (" + settings + "): nessun dump dei report lenti", e);
+            return;
+        }
+        recording.setName("report-watchdog");
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofSeconds(maxAgeSeconds));
+        recording.setMaxSize(maxSizeBytes);
+        recording.start();
+        thread = Thread.ofPlatform().daemon().name("jfr-watchdog").start(this::watch);
+        LOG.info("JFR attivo: dump in " + logDir + " per i report oltre " + thresholdMs + " ms");
+    }
+
+    /**
+     * Ferma il controllo e chiude la registrazione
+     */
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(CHECK_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                check();
+            } catch (RuntimeException e) {
+                LOG.log(Level.WARNING, "Errore del watchdog JFR", e);
+            }
+        }
+    }
+
+    private void check() {
+        List<ReportMetrics.Timings> running = metrics.running();
+        Set<String> ids = new HashSet<>();
+        long now = System.nanoTime();
+        for (ReportMetrics.Timings timings : running) {
+            ids.add(timings.jobId);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - timings.startNanos);
+            if (elapsedMs >= thresholdMs && dumped.add(timings.jobId)) {
+                dump(timings, elapsedMs);
+            }
+        }
+        dumped.retainAll(ids);
+    }
+
+    private void dump(ReportMetrics.Timings timings, long elapsedMs) {
+        String job = "design " + timings.design + ", formato " + timings.format + ", job " + timings.jobId;
+        long nowMillis = System.currentTimeMillis();
+        if (lastDumpMillis != 0 && nowMillis - lastDumpMillis < minDumpIntervalMs) {
+            LOG.warning("Report lento (" + elapsedMs + " ms, " + job + "): dump JFR saltato, l'ultimo è di "
+                + (nowMillis - lastDumpMillis) / 1000 + " s fa");
+            return;
+        }
+        lastDumpMillis = nowMillis;
+        Path file = logDir.resolve(PREFIX + LocalDateTime.now().format(FILE_TIME) + "-" + timings.jobId + ".jfr");
+        Recording current = recording;
+        if (current == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(logDir);
+            current.dump(file);
+            LOG.warning("Report lento (" + elapsedMs + " ms, " + job + "): registrazione JFR in " + file);
+            prune();
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.WARNING, "Dump JFR non riuscito: " + file, e);
+        }
+    }
+
+    /**
+     * Elimina i dump più vecchi oltre report.jfr.maxDumps
+     */
+    private void prune() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(logDir)) {
+            files = list
+                .filter(path -> path.getFileName().toString().startsWith(PREFIX))
+                .filter(path -> path.getFileName().toString().endsWith(".jfr"))
+                .sorted()
+                .toList();
+        }
+        for (int i = 0; i < files.size() - maxDumps; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+}
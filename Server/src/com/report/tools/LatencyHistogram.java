@@ -0,0 +1,116 @@
+package com.report.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma di latenze in microsecondi, log-lineare (come HdrHistogram)
+ *
+ * Valori esatti fino a 127 µs, poi 64 sotto-bucket per ogni potenza di due:
+ * errore relativo sotto l'1,6% fino a ~19 ore, in 2048 contatori. I
+ * percentili restituiscono il limite superiore del bucket (mai meno del
+ * valore reale), il massimo è esatto.
+ */
+class LatencyHistogram {
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKETS = 64;
+    private static final int BUCKETS = 2048;
+    private static final long MAX_VALUE = (1L << 37) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * Percentile in microsecondi (0 se vuoto)
+     * @param percentile da 0 a 100, es. 99.9
+     */
+    long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                return Math.min(upper(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Riepilogo in millisecondi: min, media, p50, p90, p99, p99.9, max
+     */
+    Map<String, Double> summaryMillis() {
+        Map<String, Double> summary = new LinkedHashMap<>();
+        long total = count.get();
+        summary.put("min", total == 0 ? 0 : millis(min.get()));
+        summary.put("mean", total == 0 ? 0 : millis(sum.get() / total));
+        summary.put("p50", millis(percentile(50)));
+        summary.put("p90", millis(percentile(90)));
+        summary.put("p99", millis(percentile(99)));
+        summary.put("p999", millis(percentile(99.9)));
+        summary.put("max", millis(max.get()));
+        return summary;
+    }
+
+    /**
+     * Bucket non vuoti: limite superiore in ms e conteggio
+     */
+    List<Map<String, Object>> bucketsMillis() {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount > 0) {
+                Map<String, Object> bucket = new LinkedHashMap<>();
+                bucket.put("upToMs", millis(upper(i)));
+                bucket.put("count", bucketCount);
+                buckets.add(bucket);
+            }
+        }
+        return buckets;
+    }
+
+    static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    static long upper(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+}
@@ -0,0 +1,432 @@
+package com.report.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generatore di carico per /api/reports/generate (server Java o Python)
+ *
+ * Invia le stesse richieste dei comandi curl di misura (birtFile o designId,
+ * jsonApiUrl, format) a ritmo fisso, in anello aperto: la richiesta i-esima
+ * parte all'istante previsto start + i/rate anche se le precedenti non hanno
+ * risposto, e la latenza si misura da quell'istante. Se il server rallenta,
+ * il tempo passato in attesa di una connessione libera (oltre --concurrency)
+ * entra nella latenza invece di sparire (coordinated omission).
+ *
+ * Usage:
+ * java -cp "bin;lib/*" com.report.tools.LoadTest --design Customers.rptdesign \
+ *      --json http://localhost:5080/users --formats PDF,XLSX --rate 2 --duration 60
+ *
+ * Con --jasper <url report senza estensione> e --auth user:password le
+ * stesse misure si fanno su JasperServer (rest_v2, ?json=...), per confronto.
+ *
+ * Il risultato (per formato e totale: richieste, errori per codice HTTP,
+ * throughput, p50/p90/p99/p99.9, istogramma completo) va in JSON in --out.
+ * La latenza comprende tutte le richieste concluse, errori e timeout inclusi
+ * (un 503 immediato o un timeout non devono sparire dai percentili);
+ * successi ed errori hanno anche un riepilogo separato.
+ */
+public class LoadTest {
+    private static final String BOUNDARY = "----LoadTestBoundary7MA4YWxkTrZu0gW";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * Misure di un formato (o del totale)
+     */
+    static class Stats {
+        // Tutte le richieste concluse, poi separate per esito
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram okLatency = new LatencyHistogram();
+        final LatencyHistogram errorLatency = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final Map<String, AtomicLong> statusCodes = new ConcurrentHashMap<>();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+
+        void record(String status, boolean ok, long latencyMicros, long serviceMicros, long responseBytes) {
+            requests.incrementAndGet();
+            statusCodes.computeIfAbsent(status, key -> new AtomicLong()).incrementAndGet();
+            latency.record(latencyMicros);
+            service.record(serviceMicros);
+            if (ok) {
+                okLatency.record(latencyMicros);
+                bytes.addAndGet(responseBytes);
+            } else {
+                errorLatency.record(latencyMicros);
+                errors.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> toJson(double seconds) {
+            long ok = requests.get() - errors.get();
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("requests", requests.get());
+            json.put("ok", ok);
+            json.put("errors", errors.get());
+            json.put("errorRate", requests.get() == 0 ? 0 : (double) errors.get() / requests.get());
+            Map<String, Long> codes = new TreeMap<>();
+            statusCodes.forEach((code, count) -> codes.put(code, count.get()));
+            json.put("statusCodes", codes);
+            json.put("throughputPerSecond", ok / seconds);
+            json.put("bytesPerSecond", bytes.get() / seconds);
+            json.put("latencyMs", latency.summaryMillis());
+            json.put("okLatencyMs", okLatency.summaryMillis());
+            json.put("errorLatencyMs", errorLatency.summaryMillis());
+            json.put("serviceTimeMs", service.summaryMillis());
+            json.put("latencyHistogram", latency.bucketsMillis());
+            return json;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final HttpClient client;
+    private final List<String> formats;
+    private final double rate;
+    private final boolean poisson;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final Semaphore concurrency;
+    private final Duration timeout;
+    private final Map<String, HttpRequest> requests = new LinkedHashMap<>();
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final Stats total = new Stats();
+
+    LoadTest(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.formats = List.of(option("formats", "PDF").toUpperCase(Locale.ROOT).split("\\s*,\\s*"));
+        this.rate = Double.parseDouble(option("rate", "1"));
+        this.poisson = option("arrival", "uniform").equalsIgnoreCase("poisson");
+        this.durationNanos = Duration.ofSeconds(Long.parseLong(option("duration", "60"))).toNanos();
+        this.warmupNanos = Duration.ofSeconds(Long.parseLong(option("warmup", "10"))).toNanos();
+        this.concurrency = new Semaphore(Integer.parseInt(option("concurrency", "64")));
+        this.timeout = Duration.ofSeconds(Long.parseLong(option("timeout", "300")));
+        if (rate <= 0) {
+            throw new IllegalArgumentException("--rate deve essere maggiore di 0");
+        }
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        for (String format : formats) {
+            requests.put(format, options.containsKey("jasper") ? jasperRequest(format) : generateRequest(format));
+            stats.put(format, new Stats());
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+        try {
+            options = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Errore: " + e.getMessage());
+            System.err.println();
+            usage();
+            System.exit(1);
+            return;
+        }
+        if (options.containsKey("help")
+                || (!options.containsKey("jasper") && !options.containsKey("design") && !options.containsKey("designId"))
+                || !options.containsKey("json")) {
+            usage();
+            System.exit(options.containsKey("help") ? 0 : 1);
+        }
+        try {
+            LoadTest test = new LoadTest(options);
+            Map<String, Object> result = test.run();
+            Path out = Paths.get(test.option("out", "loadtest-" + LocalDateTime.now().format(FILE_TIME) + ".json"));
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(out.toFile(), result);
+            test.printSummary();
+            System.out.println();
+            System.out.println("Risultati: " + out.toAbsolutePath());
+        } catch (Exception e) {
+            System.err.println("Errore durante il test: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java com.report.tools.LoadTest --design <file.rptdesign> --json <jsonApiUrl> [opzioni]");
+        System.err.println();
+        System.err.println("  --url <base>          server report (default http://localhost:5000)");
+        System.err.println("  --design <file>       design inviato come birtFile");
+        System.err.println("  --designId <id>       design registrato (al posto di --design)");
+        System.err.println("  --json <url>          jsonApiUrl");
+        System.err.println("  --formats <lista>     formati a rotazione, es. PDF,XLSX (default PDF)");
+        System.err.println("  --rate <req/s>        richieste al secondo, anello aperto (default 1)");
+        System.err.println("  --arrival <tipo>      uniform o poisson (default uniform)");
+        System.err.println("  --duration <s>        durata della misura (default 60)");
+        System.err.println("  --warmup <s>          riscaldamento non misurato (default 10)");
+        System.err.println("  --concurrency <n>     richieste contemporanee massime (default 64)");
+        System.err.println("  --timeout <s>         timeout di una richiesta (default 300)");
+        System.err.println("  --label <testo>       etichetta del test nel JSON (modalità, release...)");
+        System.err.println("  --out <file.json>     risultati (default loadtest-<data>.json)");
+        System.err.println("  --jasper <url>        JasperServer: URL del report senza estensione");
+        System.err.println("  --auth <user:pass>    credenziali JasperServer");
+    }
+
+    /**
+     * Opzioni "--nome valore"
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Argomento non valido: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (name.equals("help")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Valore mancante per --" + name);
+            }
+        }
+        return options;
+    }
+
+    private String option(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null || value.isBlank() ? defaultValue : value.strip();
+    }
+
+    /**
+     * Esegue riscaldamento e misura, poi attende le risposte in corso
+     */
+    Map<String, Object> run() throws InterruptedException {
+        String startedAt = OffsetDateTime.now().toString();
+        Object server = serverHealth();
+        System.out.println("Target:  " + target());
+        System.out.println("Carico:  " + rate + " req/s (" + (poisson ? "poisson" : "uniform") + "), formati "
+            + String.join(",", formats) + ", max " + concurrency.availablePermits() + " in corso");
+        System.out.println("Durata:  " + Duration.ofNanos(warmupNanos).toSeconds() + " s riscaldamento + "
+            + Duration.ofNanos(durationNanos).toSeconds() + " s misura");
+        System.out.println();
+
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+        long sent = 0;
+        long late = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long intended = start;
+            while (intended < end) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                } else if (wait < -1_000_000) {
+                    late++;
+                }
+                String format = formats.get((int) (sent++ % formats.size()));
+                long scheduled = intended;
+                boolean measured = scheduled >= measureStart;
+                executor.execute(() -> send(format, scheduled, measured));
+                intended += nextInterval();
+            }
+            System.out.println("Inviate " + sent + " richieste, attesa delle risposte in corso...");
+        }
+        if (late > 0) {
+            System.out.println("[WARN] " + late + " richieste partite in ritardo di oltre 1 ms: il client è saturo");
+        }
+
+        double seconds = durationNanos / 1e9;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tool", "LoadTest");
+        result.put("label", option("label", ""));
+        result.put("startedAt", startedAt);
+        result.put("target", target());
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("rate", rate);
+        config.put("arrival", poisson ? "poisson" : "uniform");
+        config.put("durationSeconds", seconds);
+        config.put("warmupSeconds", warmupNanos / 1e9);
+        config.put("concurrency", Integer.parseInt(option("concurrency", "64")));
+        config.put("timeoutSeconds", timeout.toSeconds());
+        config.put("formats", formats);
+        result.put("config", config);
+        result.put("server", server);
+        Map<String, Object> byFormat = new LinkedHashMap<>();
+        stats.forEach((format, value) -> byFormat.put(format, value.toJson(seconds)));
+        result.put("formats", byFormat);
+        result.put("total", total.toJson(seconds));
+        return result;
+    }
+
+    private long nextInterval() {
+        double seconds = poisson
+            ? -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate
+            : 1 / rate;
+        return Math.max(1, (long) (seconds * 1e9));
+    }
+
+    private void send(String format, long intended, boolean measured) {
+        String status;
+        boolean ok = false;
+        long bytes = 0;
+        long sent = intended;
+        try {
+            concurrency.acquire();
+            try {
+                sent = System.nanoTime();
+                HttpResponse<InputStream> response = client.send(requests.get(format),
+                    HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = response.body()) {
+                    bytes = body.transferTo(OutputStream.nullOutputStream());
+                }
+                status = Integer.toString(response.statusCode());
+                ok = response.statusCode() / 100 == 2;
+            } finally {
+                concurrency.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException e) {
+            status = e instanceof HttpTimeoutException ? "timeout" : "exception";
+        }
+        if (!measured) {
+            return;
+        }
+        long now = System.nanoTime();
+        long latencyMicros = (now - intended) / 1000;
+        long serviceMicros = (now - sent) / 1000;
+        stats.get(format).record(status, ok, latencyMicros, serviceMicros, bytes);
+        total.record(status, ok, latencyMicros, serviceMicros, bytes);
+    }
+
+    /**
+     * Richiesta multipart per /api/reports/generate, costruita una volta per formato
+     */
+    private HttpRequest generateRequest(String format) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if (options.containsKey("designId")) {
+            field(body, "designId", option("designId", ""));
+        } else {
+            Path design = Paths.get(option("design", ""));
+            if (!Files.isRegularFile(design)) {
+                throw new IOException("Design non trovato: " + design);
+            }
+            body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"birtFile\"; filename=\"" + design.getFileName() + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.write(Files.readAllBytes(design));
+            body.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        field(body, "jsonApiUrl", option("json", ""));
+        field(body, "format", format);
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(baseUrl() + "/api/reports/generate"))
+            .timeout(timeout)
+            .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+            .build();
+    }
+
+    private static void field(ByteArrayOutputStream body, String name, String value) throws IOException {
+        body.write(("--" + BOUNDARY + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+            + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Richiesta JasperServer come nei comandi di misura:
+     * POST <report>.<estensione>?json=<jsonApiUrl>, autenticazione basic
+     */
+    private HttpRequest jasperRequest(String format) {
+        String extension = format.equals("DOC") ? "docx" : format.toLowerCase(Locale.ROOT);
+        String url = option("jasper", "") + "." + extension
+            + "?json=" + URLEncoder.encode(option("json", ""), StandardCharsets.UTF_8);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+            .timeout(timeout)
+            .POST(HttpRequest.BodyPublishers.noBody());
+        if (options.containsKey("auth")) {
+            builder.header("Authorization", "Basic " + Base64.getEncoder()
+                .encodeToString(option("auth", "").getBytes(StandardCharsets.UTF_8)));
+        }
+        return builder.build();
+    }
+
+    private String baseUrl() {
+        String url = option("url", "http://localhost:5000");
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private String target() {
+        return options.containsKey("jasper") ? option("jasper", "") : baseUrl() + "/api/reports/generate";
+    }
+
+    /**
+     * /api/reports/health del server report all'avvio (modalità, pool, cache),
+     * per distinguere i risultati; null per JasperServer o se non risponde
+     */
+    private Object serverHealth() {
+        if (options.containsKey("jasper")) {
+            return null;
+        }
+        try {
+            HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(baseUrl() + "/api/reports/health"))
+                    .timeout(Duration.ofSeconds(10)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return new ObjectMapper().readTree(response.body());
+            }
+        } catch (IOException e) {
+            System.out.println("[WARN] Health non disponibile: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private void printSummary() {
+        double seconds = durationNanos / 1e9;
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-8s %8s %8s %9s %9s %9s %9s %9s %11s%n",
+            "Formato", "Rich.", "Errori", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "err p99 ms");
+        List<Map.Entry<String, Stats>> rows = new ArrayList<>(stats.entrySet());
+        rows.add(Map.entry("TOTALE", total));
+        for (Map.Entry<String, Stats> row : rows) {
+            Stats value = row.getValue();
+            Map<String, Double> latency = value.latency.summaryMillis();
+            long ok = value.requests.get() - value.errors.get();
+            System.out.printf(Locale.ROOT, "%-8s %8d %8d %9.2f %9.1f %9.1f %9.1f %9.1f %11.1f%n",
+                row.getKey(), value.requests.get(), value.errors.get(), ok / seconds,
+                latency.get("p50"), latency.get("p99"), latency.get("p999"), latency.get("max"),
+                value.errorLatency.summaryMillis().get("p99"));
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.report.tools;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API JSON finta per misure e test, senza rete
+ *
+ * Serve dati sintetici con la forma delle sorgenti usate nelle misure:
+ * /users (e /user, come il mock Postman) come jsonplaceholder.typicode.com/users,
+ * i dati di Customers.rptdesign (id, name, username, email, address, phone,
+ * website, company); /rows come i dataset dei benchmark (id, customer, city,
+ * quantity, amount). Il contenuto dipende solo dai parametri, quindi due
+ * esecuzioni leggono gli stessi byte.
+ *
+ * Parametri (default da riga di comando o dal costruttore, ognuno
+ * sovrascrivibile nella query, es. /users?rows=10000&latencyMs=200):
+ * - rows: numero di elementi dell'array
+ * - width: lunghezza fissa dei campi testo (0 = valori naturali)
+ * - latencyMs: attesa prima della risposta (anche per i 304)
+ * - chunked: true = risposta in streaming chunked, false = Content-Length
+ * - etag: strong, weak, none, changing (contenuto ed ETag nuovi a ogni richiesta);
+ *   con If-None-Match uguale risponde 304
+ * - seed: variante del contenuto
+ *
+ * Da riga di comando:
+ * java -cp "bin;lib/*" com.report.tools.MockJsonServer --port 5080 --rows 1000 --latencyMs 50
+ *
+ * Incorporato (benchmark, test): new MockJsonServer(0, defaults).start(),
+ * poi url("users", settings) e stop().
+ */
+public class MockJsonServer {
+    private static final List<String> CITIES = List.of(
+        "Bolzano", "Trento", "Verona", "Milano", "Torino", "Genova", "Bologna", "Firenze",
+        "Roma", "Napoli", "Bari", "Palermo", "Cagliari", "Venezia", "Padova", "Trieste");
+    private static final List<String> FIRST_NAMES = List.of(
+        "Marco", "Giulia", "Luca", "Francesca", "Andrea", "Sara", "Matteo", "Chiara",
+        "Alessandro", "Elena", "Davide", "Martina", "Simone", "Anna", "Paolo", "Laura");
+    private static final List<String> LAST_NAMES = List.of(
+        "Rossi", "Russo", "Ferrari", "Esposito", "Bianchi", "Romano", "Colombo", "Ricci",
+        "Marino", "Greco", "Bruno", "Gallo", "Conti", "De Luca", "Costa", "Giordano");
+    private static final List<String> STREETS = List.of(
+        "Via Roma", "Corso Italia", "Via Garibaldi", "Via Mazzini", "Piazza Duomo",
+        "Via Verdi", "Via Dante", "Viale Europa");
+    private static final List<String> SECTORS = List.of(
+        "Logistica", "Software", "Alimentari", "Meccanica", "Energia", "Consulenza", "Tessile", "Edilizia");
+    private static final String FILLER = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    /**
+     * Parametri di una risposta
+     */
+    public static final class Settings {
+        public final int rows;
+        public final int width;
+        public final long latencyMs;
+        public final boolean chunked;
+        public final String etag;
+        public final long seed;
+
+        public Settings(int rows, int width, long latencyMs, boolean chunked, String etag, long seed) {
+            if (!List.of("strong", "weak", "none", "changing").contains(etag)) {
+                throw new IllegalArgumentException("etag non valido: " + etag + " (strong, weak, none, changing)");
+            }
+            this.rows = rows;
+            this.width = width;
+            this.latencyMs = latencyMs;
+            this.chunked = chunked;
+            this.etag = etag;
+            this.seed = seed;
+        }
+
+        /**
+         * 10 righe, valori naturali, nessuna attesa, Content-Length, ETag forte
+         */
+        public static Settings defaults() {
+            return new Settings(10, 0, 0, false, "strong", 1);
+        }
+
+        /**
+         * Parametri presenti in values (es. la query), gli altri da questi
+         */
+        public Settings with(Map<String, String> values) {
+            return new Settings(
+                Integer.parseInt(values.getOrDefault("rows", Integer.toString(rows))),
+                Integer.parseInt(values.getOrDefault("width", Integer.toString(width))),
+                Long.parseLong(values.getOrDefault("latencyMs", Long.toString(latencyMs))),
+                Boolean.parseBoolean(values.getOrDefault("chunked", Boolean.toString(chunked))),
+                values.getOrDefault("etag", etag).toLowerCase(Locale.ROOT),
+                Long.parseLong(values.getOrDefault("seed", Long.toString(seed))));
+        }
+
+        String query() {
+            return "rows=" + rows + "&width=" + width + "&latencyMs=" + latencyMs
+                + "&chunked=" + chunked + "&etag=" + etag + "&seed=" + seed;
+        }
+    }
+
+    private final int requestedPort;
+    private final Settings defaults;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param port porta di ascolto su localhost (0 = porta libera)
+     */
+    public MockJsonServer(int port, Settings defaults) {
+        this.requestedPort = port;
+        this.defaults = defaults;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options;
+        try {
+            options = LoadTest.parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Errore: " + e.getMessage());
+            options = Map.of("help", "true");
+        }
+        if (options.containsKey("help")) {
+            System.err.println("Usage: java com.report.tools.MockJsonServer [--port 5080] [--rows 10] [--width 0]");
+            System.err.println("           [--latencyMs 0] [--chunked false] [--etag strong|weak|none|changing] [--seed 1]");
+            System.exit(1);
+        }
+        MockJsonServer mock = new MockJsonServer(Integer.parseInt(options.getOrDefault("port", "5080")),
+            Settings.defaults().with(options));
+        mock.start();
+        System.out.println("API JSON finta su http://localhost:" + mock.port());
+        System.out.println("  " + mock.url("users", mock.defaults));
+        System.out.println("  " + mock.url("rows", mock.defaults));
+        System.out.println("Ctrl+C per fermare");
+        Runtime.getRuntime().addShutdownHook(new Thread(mock::stop));
+    }
+
+    public synchronized void start() throws IOException {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), requestedPort), 0);
+        server.setExecutor(executor);
+        server.createContext("/users", exchange -> respond(exchange, "users"));
+        server.createContext("/user", exchange -> respond(exchange, "users"));
+        server.createContext("/rows", exchange -> respond(exchange, "rows"));
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.close();
+            server = null;
+        }
+    }
+
+    /**
+     * Porta effettiva (anche se avviato con 0)
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * URL completo di una risorsa ("users" o "rows") con i parametri dati
+     */
+    public String url(String shape, Settings settings) {
+        return "http://localhost:" + port() + "/" + shape + "?" + settings.query();
+    }
+
+    /**
+     * Richieste ricevute (comprese quelle con risposta 304)
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Risposte 304 Not Modified
+     */
+    public long notModified() {
+        return notModified.get();
+    }
+
+    private void respond(HttpExchange exchange, String shape) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Settings settings;
+            try {
+                settings = defaults.with(query(exchange.getRequestURI().getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                byte[] message = ("Parametro non valido: " + e.getMessage()).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(400, message.length);
+                exchange.getResponseBody().write(message);
+                return;
+            }
+            if (settings.latencyMs > 0) {
+                Thread.sleep(settings.latencyMs);
+            }
+
+            long seed = settings.etag.equals("changing") ? settings.seed + version.incrementAndGet() : settings.seed;
+            String etag = etag(shape, settings, seed);
+            if (etag != null) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if (settings.chunked) {
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 16 * 1024)) {
+                    write(out, shape, settings.rows, settings.width, seed);
+                }
+            } else {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                write(body, shape, settings.rows, settings.width, seed);
+                exchange.sendResponseHeaders(200, body.size());
+                body.writeTo(exchange.getResponseBody());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String etag(String shape, Settings settings, long seed) {
+        if (settings.etag.equals("none")) {
+            return null;
+        }
+        String tag = "\"" + Integer.toHexString(Objects.hash(shape, settings.rows, settings.width, seed)) + "\"";
+        return settings.etag.equals("weak") ? "W/" + tag : tag;
+    }
+
+    /**
+     * Confronto debole di If-None-Match (lista separata da virgole o "*")
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.strip();
+            if (value.equals("*") || (value.startsWith("W/") ? value.substring(2) : value).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return values;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Scrive l'array JSON: stessi parametri, stessi byte
+     * @param shape "users" (come jsonplaceholder) o "rows" (come i benchmark)
+     * @param width lunghezza fissa dei campi testo, 0 = valori naturali
+     */
+    public static void write(OutputStream out, String shape, int rows, int width, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (JsonGenerator json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            json.writeStartArray();
+            for (int i = 1; i <= rows; i++) {
+                if (shape.equals("rows")) {
+                    writeRow(json, random, i, rows, width);
+                } else {
+                    writeUser(json, random, i, width);
+                }
+            }
+            json.writeEndArray();
+        }
+    }
+
+    private static void writeRow(JsonGenerator json, Random random, int id, int rows, int width) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", id);
+        json.writeStringField("customer", text("Cliente " + (1 + random.nextInt(Math.max(1, rows / 10))), width));
+        json.writeStringField("city", text(pick(random, CITIES), width));
+        json.writeNumberField("quantity", 1 + random.nextInt(50));
+        json.writeNumberField("amount", BigDecimal.valueOf(random.nextInt(10_000_000), 2));
+        json.writeEndObject();
+    }
+
+    private static void writeUser(JsonGenerator json, Random random, int id, int width) throws IOException {
+        String first = pick(random, FIRST_NAMES);
+        String last = pick(random, LAST_NAMES);
+        String username = (first.charAt(0) + last.replace(" ", "")).toLowerCase(Locale.ROOT) + id;
+        String sector = pick(random, SECTORS);
+        json.writeStartObject();
+        json.writeNumberField("id", id);
+        json.writeStringField("name", text(first + " " + last, width));
+        json.writeStringField("username", text(username, width));
+        json.writeStringField("email", text(username + "@example.com", width));
+        json.writeObjectFieldStart("address");
+        json.writeStringField("street", text(pick(random, STREETS) + " " + (1 + random.nextInt(200)), width));
+        json.writeStringField("suite", text("Interno " + (1 + random.nextInt(30)), width));
+        json.writeStringField("city", text(pick(random, CITIES), width));
+        json.writeStringField("zipcode", text(String.format(Locale.ROOT, "%05d", random.nextInt(100_000)), width));
+        json.writeObjectFieldStart("geo");
+        json.writeStringField("lat", String.format(Locale.ROOT, "%.4f", 36 + random.nextDouble() * 11));
+        json.writeStringField("lng", String.format(Locale.ROOT, "%.4f", 7 + random.nextDouble() * 11));
+        json.writeEndObject();
+        json.writeEndObject();
+        json.writeStringField("phone", text(String.format(Locale.ROOT, "+39 3%02d %07d",
+            random.nextInt(100), random.nextInt(10_000_000)), width));
+        json.writeStringField("website", text(last.replace(" ", "").toLowerCase(Locale.ROOT) + ".example.com", width));
+        json.writeObjectFieldStart("company");
+        json.writeStringField("name", text(last + " " + sector + " S.r.l.", width));
+        json.writeStringField("catchPhrase", text(sector + " su misura dal " + (1950 + random.nextInt(70)), width));
+        json.writeStringField("bs", text("servizi " + sector.toLowerCase(Locale.ROOT) + " " + CITIES.get(id % CITIES.size()), width));
+        json.writeEndObject();
+        json.writeEndObject();
+    }
+
+    private static String pick(Random random, List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    /**
+     * Testo di esattamente width caratteri (troncato o completato), o invariato se width è 0
+     */
+    private static String text(String value, int width) {
+        if (width <= 0 || value.length() == width) {
+            return value;
+        }
+        if (value.length() > width) {
+            return value.substring(0, width);
+        }
+        StringBuilder padded = new StringBuilder(width).append(value).append(' ');
+        while (padded.length() < width) {
+            padded.append(FILLER.charAt(padded.length() % FILLER.length()));
+        }
+        return padded.substring(0, width);
+    }
+}
@@ -0,0 +1,35 @@
+#!/bin/bash
+# Avvio BIRT Report Server (server HTTP Java, senza Python)
+# Linux / macOS
+
+echo "================================================================"
+echo "  BIRT REPORT SERVER (Java)"
+echo "================================================================"
+echo ""
+
+# Vai alla directory del progetto
+cd "$(dirname "$0")"
+
+# Verifica prerequisiti
+if [ ! -f "bin/com/report/model/BirtReportEngine.class" ]; then
+    echo "================================================================"
+    echo "  ERRORE: Codice Java non compilato!"
+    echo "================================================================"
+    echo ""
+    echo "  Esegui prima: ./compile.sh"
+    echo ""
+    exit 1
+fi
+
+# Verifica Java nel PATH
+if ! command -v java &> /dev/null; then
+    echo "================================================================"
+    echo "  ERRORE: Java non trovato nel PATH!"
+    echo "================================================================"
+    echo ""
+    echo "  Installa Java 21+ e aggiungilo al PATH"
+    exit 1
+fi
+
+# Porta configurabile con REPORT_PORT (default 5000)
+java $JAVA_OPTS -cp "bin:lib/*" com.report.model.BirtReportEngine --server
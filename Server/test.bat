@@ -0,0 +1,57 @@
+@echo off
+title Test BIRT Report Server
+color 0B
+
+REM Test JUnit delle classi del server (test\)
+REM Uso: test.bat [opzioni JUnit], es. test.bat --select-class com.report.model.MultipartFormTest
+
+echo ================================================================
+echo   TEST REPORT SERVER (JUnit)
+echo ================================================================
+echo.
+
+cd /d "%~dp0"
+
+set JUNIT_VERSION=1.11.4
+set MAVEN_REPO=https://repo1.maven.org/maven2
+
+REM Verifica Java
+where javac >nul 2>nul
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] javac non trovato! Serve Java JDK 21+
+    exit /b 1
+)
+
+REM JUnit in test\lib (scaricato la prima volta)
+if not exist "test\lib" mkdir "test\lib"
+call :download org/junit/platform/junit-platform-console-standalone/%JUNIT_VERSION% junit-platform-console-standalone-%JUNIT_VERSION%.jar || exit /b 1
+
+REM Compila server e test insieme: i test sono negli stessi package delle classi
+echo [1/2] Compilazione...
+if exist "test\bin" rmdir /s /q "test\bin"
+mkdir "test\bin"
+dir /s /b src\*.java test\*.java > test\sources.txt
+javac -d test\bin -cp "lib\*;test\lib\*" @test\sources.txt
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] Compilazione fallita
+    del test\sources.txt
+    exit /b 1
+)
+del test\sources.txt
+
+echo [2/2] Esecuzione test...
+echo.
+set TEST_ARGS=%*
+if "%~1"=="" set TEST_ARGS=--scan-classpath test\bin
+java %JAVA_OPTS% -cp "test\bin;lib\*;test\lib\*" org.junit.platform.console.ConsoleLauncher execute --disable-banner %TEST_ARGS%
+exit /b %ERRORLEVEL%
+
+:download
+if exist "test\lib\%2" exit /b 0
+echo [DOWN] %2
+powershell -NoProfile -Command "Invoke-WebRequest -Uri '%MAVEN_REPO%/%1/%2' -OutFile 'test\lib\%2'"
+if %ERRORLEVEL% NEQ 0 (
+    echo [FAIL] %2 non scaricato: copialo a mano in test\lib\
+    exit /b 1
+)
+exit /b 0
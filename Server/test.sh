@@ -0,0 +1,58 @@
+#!/bin/bash
+# Test JUnit delle classi del server (test/)
+# Linux / macOS
+#
+# Uso: ./test.sh [opzioni JUnit]
+#   ./test.sh                                         tutti i test
+#   ./test.sh --select-class com.report.model.MultipartFormTest
+#                                                     solo una classe
+
+echo "================================================================"
+echo "  TEST REPORT SERVER (JUnit)"
+echo "================================================================"
+echo ""
+
+# Vai alla directory del progetto
+cd "$(dirname "$0")"
+
+JUNIT_VERSION=1.11.4
+MAVEN_REPO=https://repo1.maven.org/maven2
+
+# Verifica Java
+if ! command -v javac &> /dev/null; then
+    echo "[FAIL] javac non trovato! Serve Java JDK 21+"
+    exit 1
+fi
+
+# JUnit in test/lib (scaricato la prima volta)
+mkdir -p test/lib
+download() {
+    local path=$1
+    local jar=$(basename "$path")
+    if [ ! -f "test/lib/$jar" ]; then
+        echo "[DOWN] $jar"
+        if ! curl -sfL -o "test/lib/$jar" "$MAVEN_REPO/$path"; then
+            echo "[FAIL] $jar non scaricato: copialo a mano in test/lib/"
+            rm -f "test/lib/$jar"
+            exit 1
+        fi
+    fi
+}
+download "org/junit/platform/junit-platform-console-standalone/$JUNIT_VERSION/junit-platform-console-standalone-$JUNIT_VERSION.jar"
+
+# Compila server e test insieme: i test sono negli stessi package delle classi
+echo "[1/2] Compilazione..."
+rm -rf test/bin
+mkdir -p test/bin
+if ! javac -d test/bin -cp "lib/*:test/lib/*" $(find src test -name "*.java"); then
+    echo "[FAIL] Compilazione fallita"
+    exit 1
+fi
+
+echo "[2/2] Esecuzione test..."
+echo ""
+if [ $# -eq 0 ]; then
+    set -- --scan-classpath test/bin
+fi
+java $JAVA_OPTS -cp "test/bin:lib/*:test/lib/*" org.junit.platform.console.ConsoleLauncher execute \
+    --disable-banner "$@"
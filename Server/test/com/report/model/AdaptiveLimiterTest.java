@@ -0,0 +1,117 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimiterTest {
+
+    private static int limit(AdaptiveLimiter limiter, String key) {
+        return (Integer) limiter.snapshot().get(key).get("limit");
+    }
+
+    private static List<AdaptiveLimiter.Permit> acquire(AdaptiveLimiter limiter, String key, int count)
+            throws Exception {
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(limiter.acquire(key, 0));
+        }
+        return permits;
+    }
+
+    @Test
+    void testBlocksAtLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 4, 1, 2.0);
+        AdaptiveLimiter.Permit permit = limiter.acquire("PDF", 0);
+        assertThrows(TimeoutException.class, () -> limiter.acquire("PDF", 20));
+        // Ogni formato ha il suo limite
+        limiter.acquire("HTML", 0).cancel();
+
+        permit.cancel();
+        limiter.acquire("PDF", 0).cancel();
+        assertEquals(1, limit(limiter, "PDF"));
+    }
+
+    @Test
+    void testSlowStartWhenFull() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 2, 2.0);
+        List<AdaptiveLimiter.Permit> permits = acquire(limiter, "PDF", 2);
+        permits.remove(0).complete(100, 0);
+        // Limite tutto occupato, latenza stabile: +1 per job
+        assertEquals(3, limit(limiter, "PDF"));
+        permits.addAll(acquire(limiter, "PDF", 2));
+        permits.remove(0).complete(100, 0);
+        assertEquals(4, limit(limiter, "PDF"));
+        for (AdaptiveLimiter.Permit permit : permits) {
+            permit.cancel();
+        }
+    }
+
+    @Test
+    void testNoIncreaseWhenNotFull() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 4, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire("PDF", 0).complete(100, 0);
+        }
+        assertEquals(4, limit(limiter, "PDF"));
+    }
+
+    @Test
+    void testMultiplicativeDecreaseOnLatency() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 8, 2.0);
+        limiter.acquire("PDF", 0).complete(100, 0);
+        assertEquals(8, limit(limiter, "PDF"));
+
+        // Latenza oltre tolerance x riferimento: limite ridotto in proporzione, al massimo del 50%
+        limiter.acquire("PDF", 0).complete(1000, 0);
+        int decreased = limit(limiter, "PDF");
+        assertTrue(decreased >= 4 && decreased < 8, "limite " + decreased);
+
+        // Al massimo una riduzione per durata media di un job
+        limiter.acquire("PDF", 0).complete(1000, 0);
+        assertEquals(decreased, limit(limiter, "PDF"));
+    }
+
+    @Test
+    void testDecreaseOnPoolQueueDelay() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 8, 2.0);
+        limiter.acquire("PDF", 0).complete(100, 0);
+        limiter.acquire("PDF", 0).complete(100, 500);
+        // Latenza invariata: riduzione minima (-10%)
+        assertEquals(7, limit(limiter, "PDF"));
+    }
+
+    @Test
+    void testAdditiveIncreaseAfterDecrease() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 8, 2.0);
+        limiter.acquire("PDF", 0).complete(100, 0);
+        limiter.acquire("PDF", 0).complete(100, 500);
+        assertEquals(7, limit(limiter, "PDF"));
+
+        // Dopo una riduzione +1/limite per job: serve circa un job per posto
+        List<AdaptiveLimiter.Permit> permits = acquire(limiter, "PDF", 7);
+        permits.remove(0).complete(100, 0);
+        assertEquals(7, limit(limiter, "PDF"));
+        for (int i = 0; i < 20; i++) {
+            permits.add(limiter.acquire("PDF", 0));
+            permits.remove(0).complete(100, 0);
+        }
+        // Mai oltre la capacità del pool
+        assertEquals(8, limit(limiter, "PDF"));
+        for (AdaptiveLimiter.Permit permit : permits) {
+            permit.cancel();
+        }
+    }
+
+    @Test
+    void testNeverBelowMin() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 8, 2, 2.0);
+        limiter.acquire("PDF", 0).complete(10, 0);
+        limiter.acquire("PDF", 0).complete(10_000, 10_000);
+        assertEquals(2, limit(limiter, "PDF"));
+    }
+}
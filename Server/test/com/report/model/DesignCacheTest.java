@@ -0,0 +1,95 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.birt.report.engine.api.IReportEngine;
+import org.eclipse.birt.report.engine.api.IReportRunnable;
+
+import org.junit.jupiter.api.Test;
+
+class DesignCacheTest {
+
+    private static final byte[] DESIGN = "<report/>".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Engine finto: openReportDesign restituisce un runnable nuovo a ogni apertura
+     */
+    private static IReportEngine engine(AtomicInteger opened) {
+        return (IReportEngine) Proxy.newProxyInstance(DesignCacheTest.class.getClassLoader(),
+            new Class<?>[] {IReportEngine.class}, (proxy, method, args) -> {
+                if (method.getName().equals("openReportDesign")
+                        && args.length == 2 && args[1] instanceof InputStream) {
+                    opened.incrementAndGet();
+                    return Proxy.newProxyInstance(DesignCacheTest.class.getClassLoader(),
+                        new Class<?>[] {IReportRunnable.class}, (r, m, a) -> null);
+                }
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return null;
+            });
+    }
+
+    @Test
+    void testOneEntryPerEngine() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        IReportEngine first = engine(opened);
+        IReportEngine second = engine(opened);
+        DesignCache cache = new DesignCache(10, 1024);
+
+        DesignCache.Entry a = cache.get(first, "a.rptdesign", DESIGN);
+        DesignCache.Entry b = cache.get(second, "b.rptdesign", DESIGN);
+
+        // Stesso design, engine diversi: ognuno ha il suo runnable
+        assertSame(first, a.engine);
+        assertSame(second, b.engine);
+        assertNotSame(a.runnable, b.runnable);
+        assertEquals(a.hash, b.hash);
+        assertEquals(2, opened.get());
+        assertEquals(2, cache.size());
+
+        // Stesso engine: voce riutilizzata anche con un altro nome
+        assertSame(a, cache.get(first, "copia.rptdesign", DESIGN));
+        assertEquals(2, opened.get());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    void testEvictEngineKeepsOtherEngines() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        IReportEngine first = engine(opened);
+        IReportEngine second = engine(opened);
+        DesignCache cache = new DesignCache(10, 1024);
+        cache.get(first, "a.rptdesign", DESIGN);
+        DesignCache.Entry kept = cache.get(second, "a.rptdesign", DESIGN);
+
+        cache.evictEngine(first);
+
+        assertEquals(1, cache.size());
+        assertSame(kept, cache.get(second, "a.rptdesign", DESIGN));
+        assertNotSame(kept, cache.get(first, "a.rptdesign", DESIGN));
+        assertEquals(3, opened.get());
+    }
+
+    @Test
+    void testLruLimit() throws Exception {
+        IReportEngine engine = engine(new AtomicInteger());
+        DesignCache cache = new DesignCache(2, 1024);
+        DesignCache.Entry a = cache.get(engine, "a", "<a/>".getBytes(StandardCharsets.UTF_8));
+        cache.get(engine, "b", "<b/>".getBytes(StandardCharsets.UTF_8));
+        cache.get(engine, "a", "<a/>".getBytes(StandardCharsets.UTF_8));
+        cache.get(engine, "c", "<c/>".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get(engine, "a", "<a/>".getBytes(StandardCharsets.UTF_8)));
+    }
+}
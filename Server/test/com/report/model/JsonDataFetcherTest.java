@@ -0,0 +1,152 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class JsonDataFetcherTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile int status = 200;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Sorgente lenta: risponde solo dopo release.countDown()
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data", exchange -> {
+            requests.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = bytes("[{\"id\":1}]");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(null);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data";
+    }
+
+    private static List<CompletableFuture<JsonDataFetcher.JsonData>> fetchAll(JsonDataFetcher fetcher, String url,
+                                                                            int count) {
+        List<CompletableFuture<JsonDataFetcher.JsonData>> pending = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            pending.add(fetcher.fetchAsync(url));
+        }
+        return pending;
+    }
+
+    @Test
+    void testConcurrentMissesShareOneDownload() throws Exception {
+        JsonDataFetcher fetcher = new JsonDataFetcher(0, 0, 10);
+        List<CompletableFuture<JsonDataFetcher.JsonData>> pending = fetchAll(fetcher, url(), 5);
+        release.countDown();
+
+        JsonDataFetcher.JsonData first = JsonDataFetcher.await(pending.get(0));
+        for (CompletableFuture<JsonDataFetcher.JsonData> data : pending) {
+            assertSame(first, JsonDataFetcher.await(data));
+        }
+        assertEquals(1, requests.get());
+        assertEquals(1, fetcher.downloads());
+        assertEquals(4, fetcher.coalesced());
+
+        // Lettura terminata: senza cache la richiesta successiva scarica di nuovo
+        JsonDataFetcher.await(fetcher.fetchAsync(url()));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testCancelDoesNotAffectOthers() throws Exception {
+        JsonDataFetcher fetcher = new JsonDataFetcher(0, 0, 10);
+        List<CompletableFuture<JsonDataFetcher.JsonData>> pending = fetchAll(fetcher, url(), 2);
+        pending.get(0).cancel(true);
+        release.countDown();
+
+        assertNotNull(JsonDataFetcher.await(pending.get(1)));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testErrorReachesEveryWaiter() throws Exception {
+        status = 500;
+        JsonDataFetcher fetcher = new JsonDataFetcher(60, 1024, 10);
+        List<CompletableFuture<JsonDataFetcher.JsonData>> pending = fetchAll(fetcher, url(), 3);
+        release.countDown();
+
+        for (CompletableFuture<JsonDataFetcher.JsonData> data : pending) {
+            IOException e = assertThrows(IOException.class, () -> JsonDataFetcher.await(data));
+            assertTrue(e.getMessage().contains("500"), e.getMessage());
+        }
+        assertEquals(1, requests.get());
+
+        // Dopo l'errore si riprova
+        status = 200;
+        assertNotNull(JsonDataFetcher.await(fetcher.fetchAsync(url())));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testCacheHitWithinTtl() throws Exception {
+        JsonDataFetcher fetcher = new JsonDataFetcher(60, 1024, 10);
+        release.countDown();
+        JsonDataFetcher.JsonData data = fetcher.fetch(url());
+
+        assertSame(data, fetcher.fetch(url()));
+        assertEquals(1, requests.get());
+        assertEquals(1, fetcher.hits());
+    }
+
+    @Test
+    void testInvalidUrl() {
+        JsonDataFetcher fetcher = new JsonDataFetcher(0, 0, 10);
+        assertThrows(IOException.class, () -> fetcher.fetch("http://[non valido"));
+        assertThrows(IOException.class, () -> fetcher.fetch("http://[non valido"));
+    }
+
+    @Test
+    void testFingerprintUsesStrongETagOnly() {
+        JsonDataFetcher.JsonData strong = new JsonDataFetcher.JsonData("u", bytes("[1]"), "\"v1\"", null);
+        JsonDataFetcher.JsonData weak = new JsonDataFetcher.JsonData("u", bytes("[1]"), "W/\"v1\"", null);
+        JsonDataFetcher.JsonData none = new JsonDataFetcher.JsonData("u", bytes("[1]"), null, null);
+        JsonDataFetcher.JsonData changed = new JsonDataFetcher.JsonData("u", bytes("[2]"), "W/\"v1\"", null);
+
+        assertEquals("etag:\"v1\"", strong.fingerprint());
+        // ETag debole: vale il contenuto
+        assertEquals(none.fingerprint(), weak.fingerprint());
+        assertNotEquals(weak.fingerprint(), changed.fingerprint());
+    }
+}
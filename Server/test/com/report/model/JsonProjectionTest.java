@@ -0,0 +1,38 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class JsonProjectionTest {
+
+    @Test
+    void testLiteralFields() {
+        Set<String> fields = new TreeSet<>();
+        assertTrue(JsonProjection.addScriptFields(fields,
+            "row[\"id\"] = r.get(\"name\"); row[\"city\"] = r[\"address.city\"]; row[\"n\"] = r.amount;"));
+        assertTrue(fields.containsAll(Set.of("id", "name", "address", "amount")));
+        // r.get("name") è una chiamata, non il campo "get"
+        assertFalse(fields.contains("get"));
+    }
+
+    @Test
+    void testHelperWithComputedName() {
+        // Helper definito in initialize e chiamato dal fetch: il campo non si può ricavare
+        Set<String> fields = new TreeSet<>();
+        assertFalse(JsonProjection.addScriptFields(fields, "function v(r,f){return r[f];}"));
+        assertFalse(JsonProjection.addScriptFields(fields, "var x = r.get(name);"));
+        assertFalse(JsonProjection.addScriptFields(fields, "for (var k in r) { }"));
+        assertFalse(JsonProjection.addScriptFields(fields, "Object.keys(r).length"));
+    }
+
+    @Test
+    void testNullScript() {
+        Set<String> fields = new TreeSet<>();
+        assertTrue(JsonProjection.addScriptFields(fields, null));
+        assertTrue(fields.isEmpty());
+    }
+}
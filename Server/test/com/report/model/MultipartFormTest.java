@@ -0,0 +1,80 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class MultipartFormTest {
+
+    private static final String CONTENT_TYPE = "multipart/form-data; boundary=\"----confine\"";
+
+    private static MultipartForm parse(String body, long maxBytes) throws IOException {
+        return MultipartForm.parse(CONTENT_TYPE,
+            new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), maxBytes);
+    }
+
+    private static String body() {
+        return "------confine\r\n"
+            + "Content-Disposition: form-data; name=\"formats\"\r\n"
+            + "\r\n"
+            + "PDF,XLSX\r\n"
+            + "------confine\r\n"
+            + "Content-Disposition: form-data; name=\"design\"; filename=\"vendite.rptdesign\"\r\n"
+            + "Content-Type: application/xml\r\n"
+            + "\r\n"
+            + "<report>\r\n--non un delimitatore\r\n</report>\r\n"
+            + "------confine\r\n"
+            + "content-disposition: form-data; name=\"nota\"\r\n"
+            + "\r\n"
+            + "città\r\n"
+            + "------confine--\r\n";
+    }
+
+    @Test
+    void testFieldsAndFiles() throws Exception {
+        MultipartForm form = parse(body(), 1024);
+
+        assertEquals("PDF,XLSX", form.field("formats"));
+        assertEquals("città", form.field("nota"));
+        assertNull(form.field("assente"));
+        // Un campo di testo non è un file
+        assertNull(form.file("formats"));
+
+        MultipartForm.Part design = form.file("design");
+        assertNotNull(design);
+        assertEquals("vendite.rptdesign", design.filename);
+        assertEquals("<report>\r\n--non un delimitatore\r\n</report>", design.text());
+    }
+
+    @Test
+    void testEmptyField() throws Exception {
+        MultipartForm form = parse("--b\r\nContent-Disposition: form-data; name=\"vuoto\"\r\n\r\n\r\n--b--\r\n"
+            .replace("--b", "------confine"), 1024);
+        assertEquals("", form.field("vuoto"));
+    }
+
+    @Test
+    void testTooLarge() {
+        String body = body();
+        assertThrows(MultipartForm.TooLargeException.class, () -> parse(body, body.length() - 10));
+    }
+
+    @Test
+    void testMissingBoundary() {
+        IOException e = assertThrows(IOException.class, () -> MultipartForm.parse("multipart/form-data",
+            new ByteArrayInputStream(new byte[0]), 1024));
+        assertFalse(e instanceof MultipartForm.TooLargeException);
+        assertThrows(IOException.class, () -> MultipartForm.parse("application/json",
+            new ByteArrayInputStream(new byte[0]), 1024));
+    }
+
+    @Test
+    void testTruncatedBody() {
+        String body = body();
+        assertThrows(IOException.class, () -> parse(body.substring(0, body.indexOf("PDF,XLSX")), 1024));
+    }
+}
@@ -0,0 +1,142 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutputCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long count(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static String store(OutputCache cache, String key, String content) throws Exception {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        OutputCache.Writer writer = cache.writer(key, "pdf", target);
+        writer.write(bytes(content));
+        writer.close();
+        writer.commit();
+        return target.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testKeyIgnoresParameterOrder() {
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("anno", "2024");
+        first.put("cliente", "A");
+        Map<String, String> second = new LinkedHashMap<>();
+        second.put("cliente", "A");
+        second.put("anno", "2024");
+
+        String key = OutputCache.key("design", "sha256:dati", first, "PDF");
+        assertTrue(key.matches("[0-9a-f]{64}"));
+        assertEquals(key, OutputCache.key("design", "sha256:dati", second, "PDF"));
+    }
+
+    @Test
+    void testKeyChangesWithEachPart() {
+        Map<String, String> params = Map.of("anno", "2024");
+        String key = OutputCache.key("design", "sha256:dati", params, "PDF");
+
+        assertNotEquals(key, OutputCache.key("design2", "sha256:dati", params, "PDF"));
+        assertNotEquals(key, OutputCache.key("design", "sha256:altri", params, "PDF"));
+        assertNotEquals(key, OutputCache.key("design", "sha256:dati", Map.of("anno", "2025"), "PDF"));
+        assertNotEquals(key, OutputCache.key("design", "sha256:dati", params, "XLSX"));
+        assertNotEquals(key, OutputCache.key("design", "sha256:dati", Map.of(), "PDF"));
+    }
+
+    @Test
+    void testCommitThenLookup() throws Exception {
+        OutputCache cache = new OutputCache(dir, 1024, 600);
+        String key = OutputCache.key("design", "sha256:dati", Map.of(), "PDF");
+        assertNull(cache.lookup(key));
+
+        assertEquals("report", store(cache, key, "report"));
+
+        OutputCache.Entry entry = cache.lookup(key);
+        assertNotNull(entry);
+        assertEquals(dir.resolve(key + ".pdf"), entry.path);
+        assertEquals(6, entry.sizeBytes);
+        assertEquals("report", Files.readString(entry.path));
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.bytes());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        // Nessun file temporaneo rimasto
+        assertEquals(1, count(dir));
+    }
+
+    @Test
+    void testAbortLeavesNothing() throws Exception {
+        OutputCache cache = new OutputCache(dir, 1024, 600);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        OutputCache.Writer writer = cache.writer("abc", "pdf", target);
+        writer.write(bytes("parziale"));
+        writer.abort();
+        // Dopo abort() commit() non fa nulla
+        writer.commit();
+
+        assertEquals("parziale", target.toString(StandardCharsets.UTF_8));
+        assertNull(cache.lookup("abc"));
+        assertEquals(0, cache.size());
+        assertEquals(0, count(dir));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() throws Exception {
+        OutputCache cache = new OutputCache(dir, 10, 600);
+        String first = OutputCache.key("a", "f", Map.of(), "PDF");
+        String second = OutputCache.key("b", "f", Map.of(), "PDF");
+        String third = OutputCache.key("c", "f", Map.of(), "PDF");
+
+        store(cache, first, "1234");
+        store(cache, second, "5678");
+        assertNotNull(cache.lookup(first));
+        store(cache, third, "9012");
+
+        assertNotNull(cache.lookup(first));
+        assertNull(cache.lookup(second));
+        assertNotNull(cache.lookup(third));
+        assertEquals(8, cache.bytes());
+        assertFalse(Files.exists(dir.resolve(second + ".pdf")));
+    }
+
+    @Test
+    void testLoadIndexesFilesAndDropsPartial() throws Exception {
+        String key = OutputCache.key("design", "f", Map.of(), "PDF");
+        store(new OutputCache(dir, 1024, 600), key, "report");
+        Files.write(dir.resolve(key + "123.tmp"), bytes("parziale"));
+
+        OutputCache cache = new OutputCache(dir, 1024, 600);
+        cache.load();
+
+        assertNotNull(cache.lookup(key));
+        assertEquals(6, cache.bytes());
+        assertEquals(1, count(dir));
+    }
+
+    @Test
+    void testDisabled() {
+        assertFalse(new OutputCache(dir, 0, 600).enabled());
+        assertFalse(new OutputCache(dir, 1024, 0).enabled());
+        assertTrue(new OutputCache(dir, 1024, 600).enabled());
+    }
+}
@@ -0,0 +1,56 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ReportEnginePoolTest {
+
+    // Un task in tutto e una richiesta in coda; nessun engine creato
+    private static ReportEnginePool pool(int maxQueue) {
+        return new ReportEnginePool(null, new ReportEnginePool.Settings(1, 1, 0, 0.9, 1000, maxQueue));
+    }
+
+    @Test
+    void testAdmitReservesSlot() throws Exception {
+        ReportEnginePool pool = pool(1);
+        // Ammesse ma ancora a leggere il body: nessuna in coda sul semaforo
+        ReportEnginePool.Admission first = pool.admit();
+        ReportEnginePool.Admission second = pool.admit();
+        assertEquals(2, pool.admitted());
+        assertEquals(1, pool.waiting());
+
+        assertThrows(ReportEnginePool.OverloadedException.class, pool::admit);
+        assertEquals(1, pool.rejected());
+
+        first.close();
+        assertEquals(1, pool.admitted());
+        pool.admit().close();
+        second.close();
+        assertEquals(0, pool.admitted());
+        assertEquals(0, pool.waiting());
+    }
+
+    @Test
+    void testCloseIsIdempotent() throws Exception {
+        ReportEnginePool pool = pool(0);
+        ReportEnginePool.Admission admission = pool.admit();
+        assertThrows(ReportEnginePool.OverloadedException.class, pool::admit);
+        // Chiuso da acquire() e poi all'uscita della richiesta
+        admission.close();
+        admission.close();
+        assertEquals(0, pool.admitted());
+        pool.admit();
+        assertEquals(1, pool.admitted());
+    }
+
+    @Test
+    void testNegativeMaxQueueDisablesAdmission() throws Exception {
+        ReportEnginePool pool = pool(-1);
+        for (int i = 0; i < 10; i++) {
+            pool.admit();
+        }
+        assertEquals(10, pool.admitted());
+        assertEquals(0, pool.rejected());
+    }
+}
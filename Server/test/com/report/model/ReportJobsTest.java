@@ -0,0 +1,169 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReportJobsTest {
+
+    private static final long RETENTION = 3600_000;
+
+    @TempDir
+    Path dir;
+
+    // Senza start(): nessun worker, i job restano in coda
+    private ReportJobs jobs(int maxQueued) throws Exception {
+        ReportJobs jobs = new ReportJobs(null, dir, 1, maxQueued, RETENTION, 3);
+        jobs.load();
+        return jobs;
+    }
+
+    private static ReportJobs.Entry submit(ReportJobs jobs, String design) throws Exception {
+        return jobs.submit(design, "<report/>".getBytes(StandardCharsets.UTF_8), "hash-" + design,
+            "http://localhost/data", List.of("PDF"), Map.of("anno", "2024"));
+    }
+
+    private static void setState(Path jobDir, String state) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Path metadata = jobDir.resolve("job.json");
+        ObjectNode node = (ObjectNode) mapper.readTree(metadata.toFile());
+        long now = System.currentTimeMillis();
+        node.put("state", state);
+        node.put("started", now);
+        if (state.equals(ReportJobs.DONE)) {
+            // Terminato adesso: dentro report.jobs.retentionHours
+            node.put("finished", now);
+        }
+        mapper.writeValue(metadata.toFile(), node);
+    }
+
+    private static void setAttempts(Path jobDir, int attempts) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Path metadata = jobDir.resolve("job.json");
+        ObjectNode node = (ObjectNode) mapper.readTree(metadata.toFile());
+        node.put("attempts", attempts);
+        mapper.writeValue(metadata.toFile(), node);
+    }
+
+    @Test
+    void testSubmitPersistsJob() throws Exception {
+        ReportJobs jobs = jobs(10);
+        ReportJobs.Entry entry = submit(jobs, "vendite");
+
+        assertTrue(Files.isRegularFile(entry.directory.resolve("job.json")));
+        assertEquals("<report/>", Files.readString(entry.directory.resolve("design.rptdesign")));
+        assertSame(entry, jobs.get(entry.id));
+        Map<String, Object> status = jobs.status(entry);
+        assertEquals(ReportJobs.QUEUED, status.get("status"));
+        assertEquals(1, status.get("position"));
+        assertEquals(1, jobs.counts().get(ReportJobs.QUEUED));
+    }
+
+    @Test
+    void testReloadKeepsOrderAndRequest() throws Exception {
+        ReportJobs first = jobs(10);
+        ReportJobs.Entry a = submit(first, "a");
+        Thread.sleep(2);
+        ReportJobs.Entry b = submit(first, "b");
+
+        ReportJobs reloaded = jobs(10);
+        ReportJobs.Entry loaded = reloaded.get(b.id);
+        assertNotNull(loaded);
+        assertEquals("b", loaded.designName);
+        assertEquals("hash-b", loaded.designHash);
+        assertEquals("http://localhost/data", loaded.jsonApiUrl);
+        assertEquals(List.of("PDF"), loaded.formats);
+        assertEquals(Map.of("anno", "2024"), loaded.parameters);
+        assertEquals(b.submitted, loaded.submitted);
+        assertEquals(List.of(a.id, b.id), reloaded.list().stream().map(e -> e.id).toList());
+        assertEquals(1, reloaded.status(reloaded.get(a.id)).get("position"));
+        assertEquals(2, reloaded.status(loaded).get("position"));
+    }
+
+    @Test
+    void testInterruptedJobIsRequeued() throws Exception {
+        ReportJobs first = jobs(10);
+        ReportJobs.Entry running = submit(first, "running");
+        ReportJobs.Entry done = submit(first, "done");
+        // Server fermato durante la generazione del primo; il secondo era già terminato
+        setState(running.directory, ReportJobs.RUNNING);
+        setState(done.directory, ReportJobs.DONE);
+
+        ReportJobs reloaded = jobs(10);
+        ReportJobs.Entry requeued = reloaded.get(running.id);
+        assertEquals(ReportJobs.QUEUED, requeued.state);
+        assertEquals(0, requeued.started);
+        assertEquals(1, reloaded.status(requeued).get("position"));
+        assertEquals(ReportJobs.DONE, reloaded.get(done.id).state);
+        assertEquals(1, reloaded.counts().get(ReportJobs.QUEUED));
+        assertEquals(1, reloaded.counts().get(ReportJobs.DONE));
+    }
+
+    @Test
+    void testTooManyAttemptsFailsOnReload() throws Exception {
+        ReportJobs first = jobs(10);
+        ReportJobs.Entry crashing = submit(first, "crashing");
+        ReportJobs.Entry retried = submit(first, "retried");
+        // Il primo ha già fermato il server a ogni tentativo (maxAttempts 3)
+        setState(crashing.directory, ReportJobs.RUNNING);
+        setAttempts(crashing.directory, 3);
+        setState(retried.directory, ReportJobs.RUNNING);
+        setAttempts(retried.directory, 2);
+
+        ReportJobs reloaded = jobs(10);
+        ReportJobs.Entry failed = reloaded.get(crashing.id);
+        assertEquals(ReportJobs.FAILED, failed.state);
+        assertTrue(failed.error.contains("3 tentativi"));
+        assertTrue(failed.finished > 0);
+        assertEquals(ReportJobs.QUEUED, reloaded.get(retried.id).state);
+        assertEquals(1, reloaded.counts().get(ReportJobs.QUEUED));
+
+        // Lo stato "failed" è salvato: al riavvio successivo non torna in coda
+        assertEquals(ReportJobs.FAILED, jobs(10).get(crashing.id).state);
+    }
+
+    @Test
+    void testIgnoresUnreadableJobs() throws Exception {
+        Path broken = dir.resolve("00000000-0000-0000-0000-000000000000");
+        Files.createDirectories(broken);
+        Files.writeString(broken.resolve("job.json"), "{non json");
+        Files.createDirectories(dir.resolve("altro"));
+
+        ReportJobs jobs = jobs(10);
+        assertTrue(jobs.list().isEmpty());
+        assertNull(jobs.get("altro"));
+    }
+
+    @Test
+    void testQueueFull() throws Exception {
+        ReportJobs jobs = jobs(1);
+        submit(jobs, "a");
+        assertThrows(ReportJobs.QueueFullException.class, () -> submit(jobs, "b"));
+        assertEquals(1, jobs.list().size());
+    }
+
+    @Test
+    void testDelete() throws Exception {
+        ReportJobs jobs = jobs(10);
+        ReportJobs.Entry queued = submit(jobs, "a");
+        assertTrue(jobs.delete(queued.id));
+        assertFalse(Files.exists(queued.directory));
+        assertNull(jobs.get(queued.id));
+        assertFalse(jobs.delete(queued.id));
+
+        ReportJobs.Entry running = submit(jobs, "b");
+        running.state = ReportJobs.RUNNING;
+        assertThrows(ReportJobs.JobRunningException.class, () -> jobs.delete(running.id));
+        assertTrue(Files.exists(running.directory));
+    }
+}
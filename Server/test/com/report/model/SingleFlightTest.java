@@ -0,0 +1,191 @@
+package com.report.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] report(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Follower: attende l'inizio e copia il report come farebbe la risposta HTTP
+     */
+    private Future<byte[]> follow(SingleFlight.Flight flight) {
+        return executor.submit(() -> {
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                flight.awaitStart();
+                flight.copyTo(out);
+                return out.toByteArray();
+            } finally {
+                flight.release();
+            }
+        });
+    }
+
+    private static void generate(SingleFlight.Flight flight, byte[] data, OutputStream target) throws IOException {
+        try (OutputStream out = flight.tee(target)) {
+            for (int off = 0; off < data.length; off += 10_000) {
+                out.write(data, off, Math.min(10_000, data.length - off));
+            }
+        }
+        flight.complete();
+    }
+
+    @Test
+    void testFollowerReceivesLeaderBytes() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Ticket leader = flights.join("k");
+        SingleFlight.Ticket follower = flights.join("k");
+        assertTrue(leader.leader);
+        assertFalse(follower.leader);
+        assertSame(leader.flight, follower.flight);
+        assertEquals(1, flights.coalesced());
+
+        Future<byte[]> received = follow(follower.flight);
+        byte[] data = report(300_000);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        generate(leader.flight, data, target);
+        leader.flight.release();
+
+        assertArrayEquals(data, target.toByteArray());
+        assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+        assertNull(leader.flight.targetError());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    void testFollowerStreamsBeforeCompletion() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Flight leader = flights.join("k").flight;
+        SingleFlight.Flight follower = flights.join("k").flight;
+        Future<byte[]> received = follow(follower);
+
+        byte[] data = report(200_000);
+        OutputStream out = leader.tee(new ByteArrayOutputStream());
+        out.write(data, 0, 100_000);
+        // Oltre la soglia di pubblicazione il follower riceve i primi byte prima della fine
+        follower.awaitStart();
+        out.write(data, 100_000, 100_000);
+        out.close();
+        leader.complete();
+        leader.release();
+
+        assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailureBeforeStartReachesFollower() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Flight leader = flights.join("k").flight;
+        SingleFlight.Flight follower = flights.join("k").flight;
+
+        leader.fail(429, "Pool occupato");
+        leader.release();
+
+        SingleFlight.FlightFailedException e =
+            assertThrows(SingleFlight.FlightFailedException.class, follower::awaitStart);
+        assertEquals(429, e.status);
+        assertEquals("Pool occupato", e.getMessage());
+        follower.release();
+
+        // Dopo un errore la richiesta successiva genera di nuovo
+        assertTrue(flights.join("k").leader);
+    }
+
+    @Test
+    void testFailureMidwayInterruptsCopy() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Flight leader = flights.join("k").flight;
+        SingleFlight.Flight follower = flights.join("k").flight;
+        Future<byte[]> received = follow(follower);
+
+        OutputStream out = leader.tee(new ByteArrayOutputStream());
+        out.write(report(100_000));
+        out.flush();
+        leader.fail(500, "Errore di render");
+        out.close();
+        leader.release();
+
+        Exception e = assertThrows(Exception.class, () -> received.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+
+    @Test
+    void testLeaderDisconnectKeepsFollowers() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Flight leader = flights.join("k").flight;
+        SingleFlight.Flight follower = flights.join("k").flight;
+        Future<byte[]> received = follow(follower);
+
+        IOException broken = new IOException("Broken pipe");
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw broken;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw broken;
+            }
+        };
+        byte[] data = report(150_000);
+        generate(leader, data, disconnected);
+        leader.release();
+
+        assertSame(broken, leader.targetError());
+        assertArrayEquals(data, received.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testStartTimeout() throws Exception {
+        SingleFlight flights = new SingleFlight(50);
+        SingleFlight.Flight leader = flights.join("k").flight;
+        SingleFlight.Flight follower = flights.join("k").flight;
+
+        SingleFlight.FlightFailedException e =
+            assertThrows(SingleFlight.FlightFailedException.class, follower::awaitStart);
+        assertEquals(503, e.status);
+        follower.release();
+        leader.fail(500, "fine test");
+        leader.release();
+    }
+
+    @Test
+    void testDifferentKeysDoNotCoalesce() throws Exception {
+        SingleFlight flights = new SingleFlight(10_000);
+        SingleFlight.Ticket first = flights.join("a");
+        SingleFlight.Ticket second = flights.join("b");
+        assertTrue(first.leader);
+        assertTrue(second.leader);
+        assertEquals(2, flights.inFlight());
+        assertEquals(0, flights.coalesced());
+        for (SingleFlight.Ticket ticket : new SingleFlight.Ticket[] {first, second}) {
+            ticket.flight.fail(500, "fine test");
+            ticket.flight.release();
+        }
+    }
+}
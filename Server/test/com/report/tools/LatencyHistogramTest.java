@@ -0,0 +1,76 @@
+package com.report.tools;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    private static final int BUCKETS = 2048;
+
+    @Test
+    void testExactBelowLinearRange() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.upper((int) value));
+        }
+    }
+
+    @Test
+    void testBucketBoundsAreContiguous() {
+        // Ogni bucket inizia subito dopo la fine del precedente
+        for (int i = 1; i < BUCKETS; i++) {
+            long lower = LatencyHistogram.upper(i - 1) + 1;
+            assertEquals(i, LatencyHistogram.index(lower), "inizio del bucket " + i);
+            assertEquals(i, LatencyHistogram.index(LatencyHistogram.upper(i)), "fine del bucket " + i);
+        }
+        assertEquals((1L << 37) - 1, LatencyHistogram.upper(BUCKETS - 1));
+    }
+
+    @Test
+    void testUpperBoundWithinRelativeError() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(1L << (1 + random.nextInt(37)));
+            long upper = LatencyHistogram.upper(LatencyHistogram.index(value));
+            assertTrue(upper >= value, value + " -> " + upper);
+            assertTrue(upper - value <= value / 64, value + " -> " + upper);
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(99));
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.count());
+        for (double p : new double[] {50, 90, 99, 99.9}) {
+            long exact = (long) Math.ceil(p * 10) * 1000;
+            long value = histogram.percentile(p);
+            // Mai sotto il valore reale, al più l'errore del bucket sopra
+            assertTrue(value >= exact && value - exact <= exact / 64, "p" + p + " = " + value);
+        }
+        // Il massimo è esatto
+        assertEquals(1_000_000, histogram.percentile(100));
+    }
+
+    @Test
+    void testSummaryAndClamping() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(2500);
+        histogram.record(Long.MAX_VALUE);
+
+        Map<String, Double> summary = histogram.summaryMillis();
+        assertEquals(0.0, summary.get("min"));
+        assertEquals(((1L << 37) - 1) / 1000.0, summary.get("max"), 0.01);
+        assertEquals(3, histogram.bucketsMillis().size());
+        assertEquals(2.5, histogram.percentile(50) / 1000.0, 2.5 / 64);
+    }
+}